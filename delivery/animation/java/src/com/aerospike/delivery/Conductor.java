@@ -18,6 +18,7 @@
 package com.aerospike.delivery;
 
 import com.aerospike.delivery.db.base.Database;
+import com.aerospike.delivery.db.base.Geofences;
 import com.aerospike.delivery.db.base.Jobs;
 import com.aerospike.delivery.util.OurExecutor;
 
@@ -70,6 +71,8 @@ public class Conductor implements Runnable {
   private void runInner () throws InterruptedException {
     delayMs(1000);
 
+    addGeofences();
+
     int nbJobsToStart = backlogExcess(1);
     for (int i = 0; i < nbJobsToStart; ++i) {
       Job job = options.database.getJobs().newJob(Job.State.Waiting);
@@ -97,6 +100,16 @@ public class Conductor implements Runnable {
     }
   }
 
+  private void addGeofences() {
+    Geofences geofences = options.database.getGeofences();
+    for (int i = 0; i < options.nbDistricts; ++i) {
+      geofences.newGeofence(Geofence.Kind.District);
+    }
+    for (int i = 0; i < options.nbNoFlyZones; ++i) {
+      geofences.newGeofence(Geofence.Kind.NoFly);
+    }
+  }
+
   // Activate all drones, including possibly n-pew ones,
   // and wait for them all to go off duty.
   private void activateAndWait(int totalDrones, int nbExamples, int maxTrips, long durationNs, boolean isDrawingCirclesAndLines) throws InterruptedException {
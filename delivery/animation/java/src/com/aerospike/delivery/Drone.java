@@ -20,6 +20,7 @@ package com.aerospike.delivery;
 
 import com.aerospike.delivery.db.base.Database;
 import com.aerospike.delivery.db.base.Drones;
+import com.aerospike.delivery.db.base.Geofences;
 import com.aerospike.delivery.db.base.Jobs;
 import com.aerospike.delivery.util.OurExecutor;
 
@@ -29,6 +30,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
@@ -80,6 +82,9 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
   public Location jobDestination;
   public double   currentRadius; // for display
   public boolean  isExample;
+  //--- geofences, as of the last animation step ----------
+  public volatile boolean isInNoFlyZone;
+  public static final AtomicInteger noFlyIncursions = new AtomicInteger();
 
   private Location waypoint; // where we'll be after a delay
   private double radiusEnlargementFactor = 2;
@@ -87,6 +92,10 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
   // For delayed submit in case we want to cancel
   private ScheduledFuture<?> future;
 
+  // Made once, so checkGeofences() allocates nothing per step.
+  private Predicate<Geofence> noFlyCheck;
+  private boolean isNoFlyFound;
+
 
   //-----------------------------------------------------------------------------------
 
@@ -113,6 +122,10 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
     waypoint = getLocation(); // todo Should this be here?
     this.id = this.drones.nextID++;
     candidates = new ArrayList<>();
+    noFlyCheck = geofence -> {
+      isNoFlyFound = geofence.kind == Geofence.Kind.NoFly;
+      return !isNoFlyFound;
+    };
   }
 
   public Drone() {
@@ -123,6 +136,7 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
 
   public Drone copy() {
     Drone result = new Drone(drones, id, state, getLocation(), jobId, isExample, currentRadius, startLocation, jobOrigin, jobDestination);
+    result.isInNoFlyZone = isInNoFlyZone;
     return result;
   }
 
@@ -272,7 +286,7 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
             if (stillInMotion(job.getDestination())) {
               return;
             }
-            job.previousLocation = job.getLocation();
+            job.setPreviousLocation(job.getLocation());
 
           // Delivered
             if (delayInState(deliveredDelay(), Delivered))
@@ -380,6 +394,7 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
 //      System.out.format("%s %s %1.3f   %1.3f   %1.3f   %s\n", waypoint, getLocation(), distance, thisSegment, intervalPortion, waypoint);
       result = true;
     }
+    checkGeofences();
     if (state == Delivering) {
       Database.withWriteLock(job.lock, () -> {
         Location droneLocation = getLocation();
@@ -392,6 +407,26 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
     return result;
   }
 
+  /**
+   * Notes whether we're in a no-fly zone now, and counts the times we fly
+   * into one.  This runs on every animation step of every drone, so it
+   * normally goes through the local geofence cache rather than to the
+   * database.  Renderer draws the drone from the flag we store.
+   */
+  private void checkGeofences() {
+    isNoFlyFound = false;
+    Geofences geofences = OurOptions.instance.database.getGeofences();
+    if (OurOptions.instance.isCachingGeofences) {
+      geofences.foreachContaining(getLocation(), noFlyCheck);
+    } else {
+      geofences.queryContaining(getLocation(), noFlyCheck);
+    }
+    if (isNoFlyFound && !isInNoFlyZone) {
+      noFlyIncursions.incrementAndGet();
+    }
+    isInNoFlyZone = isNoFlyFound;
+  }
+
   private boolean stillLookingForJob() {
     setJob(findNearbyJob());
     return job == null;
@@ -423,11 +458,7 @@ public class Drone extends Movable implements Runnable, Comparable<Drone> {
     Collections.sort(candidates, new Job.DistanceComparator(getLocation()));
     for (Job job : candidates) {
       if (!job.getLocation().equals(getLocation())) {
-        if (Database.withWriteLock(job.lock, () -> {
-          job.setTimePickedUp(Instant.now());
-          job.setTimeDelivered(null);
-          return job.changeStateAndPut(Job.State.Waiting, Job.State.InProcess);
-        })) {
+        if (job.claim(id)) {
           isSearchContinuing = false;
           return job;
         }
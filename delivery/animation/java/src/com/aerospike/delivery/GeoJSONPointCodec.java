@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery;
+
+
+/**
+ * Writes and reads the GeoJSON points that Location is stored as,
+ * {"type":"Point","coordinates":[x,y]}, without Gson.
+ * <p>
+ * Formatting appends to a per-thread StringBuilder, so the only allocation is the
+ * String that Bin.asGeoJSON() needs.  It writes the same text Gson did;
+ * GeoJSONPointCodecBenchmark compares the two.
+ * Parsing finds the coordinates array and reads each number in place.  A number with
+ * at most 15 significant digits and a small exponent is one exact multiply or divide
+ * away from its double; longer ones, which partWay() produces, go to Double.parseDouble.
+ */
+class GeoJSONPointCodec {
+
+  private static final String prefix = "{\"type\":\"Point\",\"coordinates\":[";
+  private static final String coordinatesKey = "\"coordinates\"";
+  private static final long maxExactMantissa = 1L << 53;
+  private static final double[] powersOfTen = {
+      1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+  };
+
+  private static final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+
+  static String format(double x, double y) {
+    StringBuilder builder = builders.get();
+    builder.setLength(0);
+    builder.append(prefix).append(x).append(',').append(y).append("]}");
+    return builder.toString();
+  }
+
+
+  static Location parse(String geoJSON) {
+    int key = geoJSON.indexOf(coordinatesKey);
+    if (key < 0) {
+      throw new IllegalArgumentException("no coordinates in " + geoJSON);
+    }
+    int open  = geoJSON.indexOf('[', key + coordinatesKey.length());
+    int comma = open  < 0 ? -1 : geoJSON.indexOf(',', open);
+    int close = comma < 0 ? -1 : geoJSON.indexOf(']', comma);
+    if (close < 0) {
+      throw new IllegalArgumentException("bad point " + geoJSON);
+    }
+    return new Location(parseNumber(geoJSON, open + 1, comma), parseNumber(geoJSON, comma + 1, close));
+  }
+
+
+  // Parses a JSON number between start and end, ignoring surrounding whitespace.
+  static double parseNumber(String s, int start, int end) {
+    while (start < end && Character.isWhitespace(s.charAt(start)))   ++start;
+    while (end > start && Character.isWhitespace(s.charAt(end - 1))) --end;
+    int i = start;
+    boolean isNegative = i < end && s.charAt(i) == '-';
+    if (isNegative) {
+      ++i;
+    }
+    long mantissa = 0;
+    int significantDigits = 0;
+    int exponent = 0;
+    boolean isInFraction = false;
+    boolean hasDigits = false;
+    for ( ; i < end ; ++i) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        hasDigits = true;
+        if (mantissa != 0 || c != '0') {
+          if (++significantDigits > 15) {
+            return slowParse(s, start, end);
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (isInFraction) {
+          --exponent;
+        }
+      } else if (c == '.' && !isInFraction) {
+        isInFraction = true;
+      } else {
+        break;
+      }
+    }
+    if (!hasDigits) {
+      return slowParse(s, start, end);
+    }
+    if (i < end) {
+      char c = s.charAt(i);
+      if (c != 'e' && c != 'E' || ++i == end) {
+        return slowParse(s, start, end);
+      }
+      boolean isExponentNegative = s.charAt(i) == '-';
+      if (isExponentNegative || s.charAt(i) == '+') {
+        ++i;
+      }
+      int explicitExponent = 0;
+      for ( ; i < end ; ++i) {
+        c = s.charAt(i);
+        if (c < '0' || c > '9' || explicitExponent > 1000) {
+          return slowParse(s, start, end);
+        }
+        explicitExponent = explicitExponent * 10 + (c - '0');
+      }
+      exponent += isExponentNegative ? -explicitExponent : explicitExponent;
+    }
+    double result;
+    if (mantissa == 0) {
+      result = 0;
+    } else if (mantissa < maxExactMantissa && exponent >= 0 && exponent < powersOfTen.length) {
+      result = mantissa * powersOfTen[exponent];
+    } else if (mantissa < maxExactMantissa && exponent < 0 && -exponent < powersOfTen.length) {
+      result = mantissa / powersOfTen[-exponent];
+    } else {
+      return slowParse(s, start, end);
+    }
+    return isNegative ? -result : result;
+  }
+
+
+  private static double slowParse(String s, int start, int end) {
+    return Double.parseDouble(s.substring(start, end));
+  }
+
+}
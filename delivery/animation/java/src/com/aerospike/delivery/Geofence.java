@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery;
+
+
+import com.aerospike.delivery.util.OurRandom;
+
+/**
+ * A circular zone on the map: a no-fly zone that drones report flying
+ * through, or a delivery district.  Distances are in map units, like
+ * Location and the drones' search radius.
+ */
+public class Geofence {
+
+  // https://en.wikipedia.org/wiki/Decimal_degrees
+  public static final int metersPerDegreeAtTheEquator = 111_320;
+
+  public final int id;
+  public final Kind kind;
+  public final Location center;
+  public final double radius;
+
+  public enum Kind {
+    NoFly,
+    District;
+
+    public static Kind kindForName(Object name) {
+      for (Kind kind : Kind.values()) {
+        if (kind.name().equals(name)) return kind;
+      }
+      return null;
+    }
+  }
+
+  public Geofence(int id, Kind kind, Location center, double radius) {
+    this.id     = id;
+    this.kind   = kind;
+    this.center = center;
+    this.radius = radius;
+  }
+
+  public static Geofence makeRandom(int id, Kind kind) {
+    double radius = kind == Kind.NoFly
+        ? .03 + .04 * OurRandom.instance.nextDouble()
+        : .10 + .10 * OurRandom.instance.nextDouble();
+    return new Geofence(id, kind, Location.makeRandom(), radius);
+  }
+
+  public boolean contains(Location location) {
+    return center.distanceTo(location) <= radius;
+  }
+
+  // Whether any part of the box is inside.
+  public boolean overlaps(double minX, double minY, double maxX, double maxY) {
+    double dx = Math.max(minX - center.x, Math.max(0, center.x - maxX));
+    double dy = Math.max(minY - center.y, Math.max(0, center.y - maxY));
+    return dx * dx + dy * dy <= radius * radius;
+  }
+
+  // The region as stored in the database, with the radius in meters.
+  public String toGeoJSONAeroCircle() {
+    return String.format("{\"type\": \"AeroCircle\", \"coordinates\": [[%.8f, %.8f], %f]}",
+        center.x, center.y, radius * metersPerDegreeAtTheEquator);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d %s %s %1.3f", id, kind, center, radius);
+  }
+
+}
@@ -23,8 +23,10 @@ import com.aerospike.delivery.db.base.Jobs;
 
 import java.time.Instant;
 import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static com.aerospike.delivery.Job.State.InProcess;
 import static com.aerospike.delivery.Job.State.Waiting;
 
 
@@ -47,6 +49,22 @@ public class Job extends Movable implements Comparable<Job> {
   public Instant timePickedUp;
   public Instant timeDelivered;
 
+  // The state and, once claimed, the claiming drone's id, packed so that a claim
+  // is a single compare-and-set.  See claim().
+  private volatile int stateWord;
+  private static final AtomicIntegerFieldUpdater<Job> stateWordUpdater =
+      AtomicIntegerFieldUpdater.newUpdater(Job.class, "stateWord");
+
+  // The fields changed since the last put, for a database that writes only those.
+  // The state isn't one of them; Jobs.putWithNewState() knows when that changes.
+  public static final int OriginField      = 1;
+  public static final int DestinationField = 1 << 1;
+  public static final int LocationField    = 1 << 2; // and previousLocation
+  public static final int CandidateField   = 1 << 3;
+  public static final int TimesField       = 1 << 4;
+  public static final int AllFields        = (1 << 5) - 1;
+  private int dirtyFields = AllFields;
+
   public Job(Jobs jobs) {
     super();
     this.jobs = jobs;
@@ -56,6 +74,7 @@ public class Job extends Movable implements Comparable<Job> {
     destination = Location.makeRandom();
     previousLocation = getLocation();
     jobs.initMetadata(this);
+    stateWord = makeStateWord(state, NullID);
     lock = new ReentrantReadWriteLock(true);
   }
 
@@ -76,6 +95,8 @@ public class Job extends Movable implements Comparable<Job> {
     this.timeDelivered = timeDelivered;
     super.setLocation(location);
     this.previousLocation = previousLocation;
+    stateWord = makeStateWord(state, state == InProcess ? droneId : NullID);
+    dirtyFields = 0;
     lock = new ReentrantReadWriteLock(true);
   }
 
@@ -103,6 +124,12 @@ public class Job extends Movable implements Comparable<Job> {
     Database.assertWriteLocked(lock);
     previousLocation = getLocation();
     super.setLocation(newValue);
+    dirtyFields |= LocationField;
+  }
+
+  void setPreviousLocation(Location newValue) {
+    previousLocation = newValue;
+    dirtyFields |= LocationField;
   }
 
   public Location getOrigin() {
@@ -112,14 +139,17 @@ public class Job extends Movable implements Comparable<Job> {
   private void setOrigin(Location origin) {
     Database.assertWriteLocked(lock);
     this.origin = origin;
+    dirtyFields |= OriginField;
   }
 
   void setTimePickedUp(Instant newValue) {
     this.timePickedUp = newValue;
+    dirtyFields |= TimesField;
   }
 
   void setTimeDelivered(Instant newValue) {
     this.timeDelivered = newValue;
+    dirtyFields |= TimesField;
   }
 
   public enum State {
@@ -143,6 +173,7 @@ public class Job extends Movable implements Comparable<Job> {
   private void setDestination(Location newValue) {
     Database.assertWriteLocked(lock);
     destination = newValue;
+    dirtyFields |= DestinationField;
   }
 
   public State getState() {
@@ -159,13 +190,73 @@ public class Job extends Movable implements Comparable<Job> {
 
   public boolean changeStateAndPut(State from, State to) {
     Database.assertWriteLocked(lock);
-    if (to != Waiting) {
+    if (to != Waiting && isCandidate) {
       isCandidate = false;
+      dirtyFields |= CandidateField;
     }
     boolean result = jobs.putWithNewState(this, from, to);
+    if (result && to != InProcess) {
+      stateWord = makeStateWord(to, NullID);
+    }
     return result;
   }
 
+
+  /**
+   * Moves a waiting job to InProcess on behalf of a drone.
+   * When the Jobs implementation allows it, drones race for the job with one
+   * compare-and-set on the state word, and only the winner takes the write lock.
+   * A drone that loses pays for the failed compare-and-set and nothing else.
+   */
+  boolean claim(int droneId) {
+    boolean isWordClaimed = jobs.claimsWithoutLocking();
+    if (isWordClaimed) {
+      int expected = makeStateWord(Waiting, NullID);
+      if (!stateWordUpdater.compareAndSet(this, expected, makeStateWord(InProcess, droneId))) {
+        jobs.claimsLost.increment();
+        return false;
+      }
+    }
+    boolean result = Database.withWriteLock(lock, () -> {
+      boolean isClaimed = false;
+      try {
+        setTimePickedUp(Instant.now());
+        setTimeDelivered(null);
+        isClaimed = changeStateAndPut(Waiting, InProcess);
+        if (isClaimed) {
+          stateWord = makeStateWord(InProcess, droneId);
+        }
+        return isClaimed;
+      } finally {
+        if (!isClaimed && isWordClaimed) {
+          // We won the compare-and-set but not the state, so give the word back.
+          stateWord = makeStateWord(state, NullID);
+        }
+      }
+    });
+    (result ? jobs.claimsWon : jobs.claimsLost).increment();
+    return result;
+  }
+
+  /**
+   * @return the id of the drone that claimed this job, or NullID if it isn't in process.
+   */
+  public int claimedBy() {
+    return stateWord >>> 2;
+  }
+
+  private static int makeStateWord(State state, int droneId) {
+    return droneId << 2 | state.ordinal();
+  }
+
+  public int getDirtyFields() {
+    return dirtyFields;
+  }
+
+  public void clearDirtyFields() {
+    dirtyFields = 0;
+  }
+
   public boolean isCandidate() {
     return isCandidate;
   }
@@ -174,6 +265,7 @@ public class Job extends Movable implements Comparable<Job> {
     Database.assertWriteLocked(lock);
     if (isCandidate != newValue) {
       isCandidate = newValue;
+      dirtyFields |= CandidateField;
       put();
     }
   }
@@ -20,10 +20,8 @@ package com.aerospike.delivery;
 
 import com.aerospike.delivery.db.base.Database;
 import com.aerospike.delivery.util.OurRandom;
-import com.google.gson.Gson;
 
 import java.awt.Point;
-import java.lang.reflect.Type;
 
 public class Location extends Point.Double {
 
@@ -38,25 +36,12 @@ public class Location extends Point.Double {
 
   public Location(Point.Double point) { super(point.x, point.y); }
 
-  static class GeoJSONPointDouble {
-    String type = "Point";
-    double[] coordinates;
-  }
-
   public String toGeoJSONPointDouble() {
-    GeoJSONPointDouble geo = new GeoJSONPointDouble();
-    geo.coordinates = new double[] { x, y };
-    String result = new Gson().toJson(geo);
-    return result;
+    return GeoJSONPointCodec.format(x, y);
   }
 
   public static Location makeFromGeoJSONPointDouble(String geoJSON) {
-    Location result = null;
-    if (geoJSON != null) {
-      GeoJSONPointDouble geo = new Gson().fromJson(geoJSON, (Type) GeoJSONPointDouble.class);
-      result = new Location(geo.coordinates[0], geo.coordinates[1]);
-    }
-    return result;
+    return geoJSON == null ? null : GeoJSONPointCodec.parse(geoJSON);
   }
 
   static Location makeRandom() {
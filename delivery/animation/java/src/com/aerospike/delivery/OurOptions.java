@@ -39,6 +39,13 @@ public class OurOptions {
   int nbTrips = 5;
   double startingRadius = .005;
   double animationSpeed = 1.0;
+  int nbNoFlyZones = 3;
+  int nbDistricts = 4;
+  boolean isCachingGeofences = true;
+  public long droneWriteWindowMs = animationIntervalMs;
+  public boolean isRenderingChanges = true;
+  public boolean isRenderingLocalSnapshot;
+  public int scanWorkers = 0; // one per node
   public boolean isDrawingJobNumbers = false;
   private int seedForRepeatableRandomBehavior = 6;
   private DatabaseToUse databaseToUse;
@@ -95,6 +102,13 @@ public class OurOptions {
     cliOptions.addOption(null, "speed",      true,  "Animation speed (default 1.0)");
     cliOptions.addOption(null, "radius",     true,  "Starting radius (default " + startingRadius + ")");
     cliOptions.addOption(null, "reset",      false, "Reset database to empty.");
+    cliOptions.addOption(null, "no-fly-zones", true, "Number of no-fly zones (default " + nbNoFlyZones + ")");
+    cliOptions.addOption(null, "districts",  true,  "Number of delivery districts (default " + nbDistricts + ")");
+    cliOptions.addOption(null, "uncached-geofences", false, "Query the database for geofences on every drone step.");
+    cliOptions.addOption(null, "scan-workers", true, "Number of nodes to scan at once (default all of them)");
+    cliOptions.addOption(null, "verify-rendering", false, "In full mode, render what is read back from the database rather than what was written.");
+    cliOptions.addOption(null, "full-scans", false, "Scan the drones and jobs every frame instead of querying what changed.");
+    cliOptions.addOption(null, "drone-write-window", true, "Milliseconds over which to coalesce drone writes, 0 to write each one (default " + droneWriteWindowMs + ")");
 
     // Doesn't complain if the parser sees things other than the options above
     CommandLineParser parser = new PosixParser();
@@ -203,6 +217,31 @@ public class OurOptions {
       String str = cl.getOptionValue("radius");
       startingRadius = Double.parseDouble(str);
     }
+
+    if (cl.hasOption("no-fly-zones")) {
+      String str = cl.getOptionValue("no-fly-zones");
+      nbNoFlyZones = Integer.parseInt(str);
+    }
+
+    if (cl.hasOption("districts")) {
+      String str = cl.getOptionValue("districts");
+      nbDistricts = Integer.parseInt(str);
+    }
+
+    isCachingGeofences = !cl.hasOption("uncached-geofences");
+
+    isRenderingChanges = !cl.hasOption("full-scans");
+
+    if (cl.hasOption("scan-workers")) {
+      String str = cl.getOptionValue("scan-workers");
+      scanWorkers = Integer.parseInt(str);
+    }
+    isRenderingLocalSnapshot = animationMode == AnimationMode.Full && !cl.hasOption("verify-rendering");
+
+    if (cl.hasOption("drone-write-window")) {
+      String str = cl.getOptionValue("drone-write-window");
+      droneWriteWindowMs = Long.parseLong(str);
+    }
     return false;
   }
 
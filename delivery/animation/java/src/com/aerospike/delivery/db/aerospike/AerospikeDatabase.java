@@ -19,6 +19,7 @@ package com.aerospike.delivery.db.aerospike;
 
 
 import com.aerospike.client.*;
+import com.aerospike.client.cluster.Node;
 import com.aerospike.client.policy.ClientPolicy;
 import com.aerospike.client.policy.ScanPolicy;
 import com.aerospike.delivery.*;
@@ -27,6 +28,15 @@ import com.aerospike.delivery.util.OurExecutor;
 import org.apache.commons.cli.CommandLine;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AerospikeDatabase extends Database {
 
@@ -34,12 +44,21 @@ public class AerospikeDatabase extends Database {
   public String namespace;
   public AerospikeClient client;
   private final ClientPolicy clientPolicy;
+  // The per-node scans.  Not OurExecutor: scan() is called from its threads and waits
+  // for them, so with every thread of that bounded pool waiting they'd never start.
+  private final ExecutorService scanExecutor;
 
 
   public AerospikeDatabase() {
     namespace = "test"; //default
     clientPolicy = new ClientPolicy();
     clientPolicy.failIfNotConnected = true;
+    AtomicInteger scanThreads = new AtomicInteger();
+    scanExecutor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "scan-" + scanThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   public boolean parseOptions(CommandLine commandLine) {
@@ -61,6 +80,7 @@ public class AerospikeDatabase extends Database {
       System.out.println(clientPolicy.maxThreads + " client threads.");
       drones = new AerospikeDrones(this);
       jobs = new AerospikeJobs(this);
+      geofences = new AerospikeGeofences(this);
       Metering.start();
       return true;
     } else {
@@ -76,6 +96,10 @@ public class AerospikeDatabase extends Database {
   @Override
   public void close() {
     super.close();
+    if (drones != null) {
+      ((AerospikeDrones) drones).close();
+    }
+    scanExecutor.shutdown();
     if (client.isConnected()) {
       System.out.println("Closing the connection.");
       client.close();
@@ -89,6 +113,7 @@ public class AerospikeDatabase extends Database {
     System.out.println("Clearing the Aerospike database.");
     jobs.clear();
     drones.clear();
+    geofences.clear();
   }
 
   @Override
@@ -101,21 +126,22 @@ public class AerospikeDatabase extends Database {
   void clearSet(String setName) {
     ScanPolicy scanPolicy = new ScanPolicy();
     scanPolicy.timeout = 100;
+    scanPolicy.includeBinData = false; // the keys will do
     try {
-      // Scan the entire Set using scanAll(). This will scan each node
+      // Scan the entire Set. This will scan each node
       // in the cluster and return the record Digest to the call back object
       ClearScanCallback callback = new ClearScanCallback();
-      scanAllWorkaround(scanPolicy, namespace, setName, callback);
+      scan(scanPolicy, setName, callback);
       System.out.println("Deleted " + callback.count + " records from set " + setName);
     } catch (AerospikeException e) {
       int resultCode = e.getResultCode();
-      System.err.format("scanAll to clear set: %s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+      System.err.format("scan to clear set: %s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
     }
   }
 
 
   private class ClearScanCallback implements ScanCallback {
-    int count;
+    final AtomicInteger count = new AtomicInteger();
 
     public void scanCallback(Key key, Record record) {
       try {
@@ -124,23 +150,78 @@ public class AerospikeDatabase extends Database {
         int resultCode = e.getResultCode();
         System.err.format("delete %s %s\n", ResultCode.getResultString(resultCode), e);
       }
-      count++;
+      count.incrementAndGet();
     }
   }
 
   // ------------------------------------------------------------------------------------------------
 
+  // How long scans of each node take, for Metering.
+  static class NodeScanTimes {
+    final LongAdder scans = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+  }
+
+  final ConcurrentHashMap<String, NodeScanTimes> scanTimesByNode = new ConcurrentHashMap<>();
+
+  /**
+   * Scans a set, fetching only the named bins, or all of them if none are named.
+   * Each node scans the partitions it owns, and the nodes are split among
+   * OurOptions.scanWorkers workers that run at once, one per node by default,
+   * on threads of their own.  The callback is called from all of them.
+   */
+  final void scan(ScanPolicy policy, String setName, ScanCallback callback, String... bins)
+      throws AerospikeException {
+    Node[] nodes = client.getNodes();
+    if (nodes.length == 0) {
+      throw new AerospikeException(ResultCode.SERVER_NOT_AVAILABLE, "Scan failed because cluster is empty.");
+    }
+    int nbWorkers = OurOptions.instance.scanWorkers > 0 ? Math.min(OurOptions.instance.scanWorkers, nodes.length) : nodes.length;
+    List<Future<?>> futures = new ArrayList<>();
+    // The last worker is this thread.
+    for (int worker = 0 ; worker < nbWorkers - 1 ; ++worker) {
+      final int first = worker;
+      futures.add(scanExecutor.submit(() -> {
+        scanNodes(nodes, first, nbWorkers, policy, setName, callback, bins);
+      }));
+    }
+    scanNodes(nodes, nbWorkers - 1, nbWorkers, policy, setName, callback, bins);
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AerospikeException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof AerospikeException) {
+          throw (AerospikeException) e.getCause();
+        }
+        throw new AerospikeException(e.getCause());
+      }
+    }
+  }
+
+  private void scanNodes(Node[] nodes, int first, int step, ScanPolicy policy, String setName, ScanCallback callback, String[] bins) {
+    for (int i = first ; i < nodes.length ; i += step) {
+      long startTime = System.nanoTime();
+      scanNodeWorkaround(policy, nodes[i], setName, callback, bins);
+      NodeScanTimes times = scanTimesByNode.computeIfAbsent(nodes[i].getName(), name -> new NodeScanTimes());
+      times.scans.increment();
+      times.nanos.add(System.nanoTime() - startTime);
+    }
+  }
+
   // This app does something very unusual that hits a bug in the Java 3.1.8 client.
-  // We do two scanAll calls very close together, causing their transaction IDs collide.
-  final void scanAllWorkaround(ScanPolicy policy, String namespace, String setName, ScanCallback callback, String... bins)
+  // We do two scans very close together, causing their transaction IDs collide.
+  private void scanNodeWorkaround(ScanPolicy policy, Node node, String setName, ScanCallback callback, String[] bins)
       throws AerospikeException {
     while (true) {
       try {
-        client.scanAll(policy, namespace, setName, callback, bins);
+        client.scanNode(policy, node, namespace, setName, callback, bins);
         break;
       } catch (AerospikeException e) {
         int resultCode = e.getResultCode();
-//        System.err.format("Retrying scanAll of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+//        System.err.format("Retrying scan of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
         if (resultCode != ResultCode.PARAMETER_ERROR) {
           throw e;
         }
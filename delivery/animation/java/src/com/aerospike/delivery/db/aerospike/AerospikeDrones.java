@@ -24,6 +24,7 @@ import com.aerospike.client.policy.ScanPolicy;
 import com.aerospike.client.policy.WritePolicy;
 import com.aerospike.delivery.*;
 import com.aerospike.delivery.db.base.Drones;
+import com.aerospike.delivery.db.base.IdRegistry;
 import com.aerospike.delivery.util.OurExecutor;
 
 import java.util.ArrayList;
@@ -38,21 +39,31 @@ class AerospikeDrones extends Drones {
 
   private final AerospikeDatabase database;
   private String setName;
-  private List<Drone> cache; // a List so we can iterate in id order.
+  private final IdRegistry<Drone> cache; // iterates in id order
   private WritePolicy writePolicy;
+  final DroneWriteBehind writeBehind;
+  final ChangeFeed<Drone> changes;
+  private static final int maxDirtyDrones = 10000;
+  // The bins Renderer needs from a scan.  It gets the examples' paths with getDroneWhereIdIs.
+  static final String[] renderedBinNames = { "id", "state", "location", "jobID", "example", "noFly" };
 
 
   AerospikeDrones(AerospikeDatabase database) {
     this.database = database;
     setName = "drones";
-    cache = new ArrayList<>();
+    cache = new IdRegistry<>();
     makeWritePolicy();
+    writeBehind = new DroneWriteBehind(this::write, OurOptions.instance.droneWriteWindowMs, maxDirtyDrones);
+    changes = new ChangeFeed<>(database, setName, this::get, drone -> drone.id, Drone.NullDrone, renderedBinNames);
   }
 
   //-----------------------------
   @Override
   public void clear() {
     super.clear();
+    cache.clear();
+    writeBehind.clear();
+    changes.clear();
     database.clearSet("drones");
   }
 
@@ -65,7 +76,8 @@ class AerospikeDrones extends Drones {
 
   @Override
   public void add(Drone drone) {
-    put(drone);
+    cache.put(drone.id, drone);
+    write(drone);
   }
 
   // There is no concurrency issue here, currently.
@@ -83,7 +95,8 @@ class AerospikeDrones extends Drones {
       return false;
     }
     drone.state = to;
-    return put(drone);
+    cache.put(drone.id, drone);
+    return writeBehind.putWithNewState(drone);
   }
 
 
@@ -97,6 +110,17 @@ class AerospikeDrones extends Drones {
 
   @Override
   public BlockingQueue<Drone> makeQueueForRendering() {
+    if (OurOptions.instance.isRenderingLocalSnapshot) {
+      // The cache has every drone we've written, and whatever is still waiting to be.
+      // Copy them, as InMemoryDrones does, so Renderer doesn't see them move mid-frame.
+      BlockingQueue<Drone> result = new LinkedBlockingQueue<>();
+      cache.foreach(drone -> result.add(drone.copy()));
+      result.add(Drone.NullDrone);
+      return result;
+    }
+    if (OurOptions.instance.isRenderingChanges) {
+      return changes.makeQueueForRendering();
+    }
     BlockingQueue<Drone> result = new LinkedBlockingQueue<>();
     OurExecutor.instance.execute(new Runnable() {
       @Override
@@ -104,16 +128,16 @@ class AerospikeDrones extends Drones {
         ScanPolicy scanPolicy = new ScanPolicy();
         try {
       /*
-       * Scan the entire Set using scannAll(). This will scan each node
+       * Scan the entire Set. This will scan each node
        * in the cluster and return the record Digest to the call back object
        */
           if (database.client.isConnected()) {
             ++Metering.droneScans;
-            database.scanAllWorkaround(scanPolicy, database.namespace, setName, new OurScanCallback(result));
+            database.scan(scanPolicy, setName, new OurScanCallback(result), renderedBinNames);
           }
         } catch (AerospikeException e) {
           int resultCode = e.getResultCode();
-          System.err.format("scanAll of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+          System.err.format("scan of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
         }
         result.add(Drone.NullDrone);
       }
@@ -138,26 +162,32 @@ class AerospikeDrones extends Drones {
 
   @Override
   public void foreachCached(Predicate<? super Drone> action) {
-    for (Drone drone : cache) {
-      if (!action.test(drone)) {
-        break;
-      }
-    }
+    cache.foreach(action);
   }
 
   //-----------------------------------------------------------------------------------
 
-  // Store only what is needed by Renderer.
+  // Written behind; see DroneWriteBehind.
   public boolean put(Drone drone) {
+    cache.put(drone.id, drone);
+    return writeBehind.put(drone);
+  }
+
+  void close() {
+    writeBehind.close();
+  }
+
+  // Store only what is needed by Renderer.
+  private boolean write(Drone drone) {
     Key key = new Key(database.namespace, setName, drone.id);
-    putIntoCache(drone);
     Bin idBin          = new Bin("id", drone.id);
     Bin stateBin       = new Bin("state", drone.state.name());
     Bin locationBin    =     Bin.asGeoJSON("location", drone.getLocation().toGeoJSONPointDouble());
     Bin jobIdBin       = new Bin("jobID", drone.jobId);
     Bin exampleBin     = new Bin("example", drone.isExample);
     Bin radiusBin      = new Bin("radius", drone.currentRadius);
-    List<Bin> binsList = new ArrayList<>(Arrays.asList(idBin, stateBin, locationBin, jobIdBin, exampleBin, radiusBin));
+    Bin noFlyBin       = new Bin("noFly", drone.isInNoFlyZone);
+    List<Bin> binsList = new ArrayList<>(Arrays.asList(idBin, stateBin, locationBin, jobIdBin, exampleBin, radiusBin, noFlyBin, ChangeFeed.modifiedBin()));
     if (drone.startLocation != null) {
       binsList.add(Bin.asGeoJSON("start", drone.startLocation.toGeoJSONPointDouble()));
     }
@@ -177,25 +207,12 @@ class AerospikeDrones extends Drones {
     }
   }
 
-  private void putIntoCache(Drone drone) {
-    // id 1 goes into cache[0]
-    while (true) {
-      int index = drone.id - 1;
-      if (index < cache.size()) {
-        cache.set(index, drone);
-        break;
-      } else if (index == cache.size()) {
-        cache.add(drone);
-        break;
-      } else {
-        cache.add(null); // placeholder
-      }
-    }
-  }
-
   // Used only when Renderer draws circles and path.
   @Override
   public Drone getDroneWhereIdIs(int id) {
+    if (OurOptions.instance.isRenderingLocalSnapshot) {
+      return cache.get(id);
+    }
     Key key = new Key(database.namespace, setName, id);
     Policy readPolicy = new Policy();
     ++Metering.droneGets;
@@ -224,6 +241,7 @@ class AerospikeDrones extends Drones {
         jobOrigin,
         jobDestination
     );
+    drone.isInNoFlyZone = record.getBoolean("noFly");
     return drone;
   }
 
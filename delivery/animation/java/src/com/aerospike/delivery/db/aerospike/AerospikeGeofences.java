@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.aerospike;
+
+import com.aerospike.client.*;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.ScanPolicy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.Statement;
+import com.aerospike.client.task.IndexTask;
+import com.aerospike.delivery.Geofence;
+import com.aerospike.delivery.Location;
+import com.aerospike.delivery.db.base.Geofences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+
+// aql -c create index geofenceRegions on demo1.geofences (region) GEO2DSPHERE
+
+
+/**
+ * Geofences as AeroCircle region bins, one record each, plus a version
+ * record that every change increments.  Other processes sharing the
+ * cluster see a change when they next read the version, at most
+ * versionCheckMs later.
+ */
+class AerospikeGeofences extends Geofences {
+
+  private static final long versionCheckMs = 1000;
+
+  private final AerospikeDatabase database;
+  private final String setName;
+  private final Key versionKey;
+  private final WritePolicy writePolicy;
+  private volatile long knownVersion;
+  private volatile long versionCheckedAtMs;
+
+
+  AerospikeGeofences(AerospikeDatabase database) {
+    this.database = database;
+    setName = "geofences";
+    // In a set of its own so that scans of the geofences don't see it.
+    versionKey = new Key(database.namespace, "geofenceVersion", "version");
+    writePolicy = new WritePolicy();
+    writePolicy.recordExistsAction = RecordExistsAction.REPLACE;
+    createIndex();
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  // Doesn't complain if index is already there.
+  private void createIndex() {
+    Policy policy = new Policy();
+    policy.timeout = 0; // Do not timeout on index create.
+    try {
+      IndexTask task = database.client.createIndex(policy, database.namespace, setName, "geofenceRegions", "region", IndexType.GEO2DSPHERE);
+      task.waitTillComplete();
+    } catch (AerospikeException e) {
+      e.printStackTrace();
+    }
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  @Override
+  public void clear() {
+    super.clear();
+    // The version record stays; it only ever goes up.
+    database.clearSet(setName);
+    bumpVersion();
+  }
+
+  @Override
+  public boolean put(Geofence geofence) {
+    Key key = new Key(database.namespace, setName, geofence.id);
+    Bin idBin     = new Bin("id",   geofence.id);
+    Bin kindBin   = new Bin("kind", geofence.kind.name());
+    Bin radiusBin = new Bin("radius", geofence.radius);
+    Bin regionBin =     Bin.asGeoJSON("region", geofence.toGeoJSONAeroCircle());
+    try {
+      ++Metering.geofencePuts;
+      database.client.put(writePolicy, key, idBin, kindBin, radiusBin, regionBin);
+    } catch (AerospikeException e) {
+      int resultCode = e.getResultCode();
+      System.err.format("put to %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+      return false;
+    }
+    bumpVersion();
+    return true;
+  }
+
+  @Override
+  public boolean remove(int id) {
+    boolean result;
+    try {
+      result = database.client.delete(null, new Key(database.namespace, setName, id));
+    } catch (AerospikeException e) {
+      int resultCode = e.getResultCode();
+      System.err.format("delete from %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+      return false;
+    }
+    bumpVersion();
+    return result;
+  }
+
+  //-----------------------------------------------------------------------------------
+  // versions
+
+  @Override
+  public long version() {
+    long now = System.currentTimeMillis();
+    if (now - versionCheckedAtMs >= versionCheckMs) {
+      versionCheckedAtMs = now;
+      try {
+        ++Metering.geofenceVersionGets;
+        Record record = database.client.get(null, versionKey, "version");
+        knownVersion = Math.max(knownVersion, record == null ? 0 : record.getLong("version"));
+      } catch (AerospikeException e) {
+        // Keep using what we have; the cache stays as it is.
+        int resultCode = e.getResultCode();
+        System.err.format("get geofence version %s %s\n", ResultCode.getResultString(resultCode), e);
+      }
+    }
+    return knownVersion;
+  }
+
+  private void bumpVersion() {
+    WritePolicy policy = new WritePolicy();
+    policy.recordExistsAction = RecordExistsAction.UPDATE;
+    try {
+      Record record = database.client.operate(policy, versionKey,
+          Operation.add(new Bin("version", 1)),
+          Operation.get("version"));
+      // Our own changes take effect here at once.
+      knownVersion = Math.max(knownVersion, record.getLong("version"));
+      versionCheckedAtMs = System.currentTimeMillis();
+    } catch (AerospikeException e) {
+      int resultCode = e.getResultCode();
+      System.err.format("bump geofence version %s %s\n", ResultCode.getResultString(resultCode), e);
+    }
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  @Override
+  public List<Geofence> readAll() {
+    List<Geofence> result = Collections.synchronizedList(new ArrayList<>());
+    ScanPolicy scanPolicy = new ScanPolicy();
+    try {
+      ++Metering.geofenceScans;
+      database.scan(scanPolicy, setName, (key, record) -> {
+        Geofence geofence = get(record);
+        if (geofence != null) {
+          result.add(geofence);
+        }
+      });
+    } catch (AerospikeException e) {
+      int resultCode = e.getResultCode();
+      System.err.format("scan of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+    }
+    return new ArrayList<>(result);
+  }
+
+  // Regions containing the point, by the index.
+  @Override
+  public void queryContaining(Location location, Predicate<Geofence> action) {
+    Statement stmt = new Statement();
+    stmt.setNamespace(database.namespace);
+    stmt.setSetName(setName);
+    stmt.setFilters(Filter.geoContains("region", location.toGeoJSONPointDouble()));
+
+    QueryPolicy policy = new QueryPolicy();
+    ++Metering.geofenceQueries;
+    try (RecordSet rs = database.client.query(policy, stmt)) {
+      while (rs.next()) {
+        Geofence geofence = get(rs.getRecord());
+        if (geofence != null && !action.test(geofence)) {
+          break;
+        }
+      }
+    }
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  private Geofence get(Record record) {
+    Geofence.Kind kind     = Geofence.Kind.kindForName(record.getValue("kind"));
+    Location      center   = centerOf(record.getGeoJSON("region"));
+    if (kind == null || center == null) {
+      return null;
+    }
+    return new Geofence(record.getInt("id"), kind, center, record.getDouble("radius"));
+  }
+
+  // The center of an AeroCircle.
+  private static Location centerOf(String region) {
+    if (region == null) {
+      return null;
+    }
+    int open = region.indexOf("[[");
+    int close = open < 0 ? -1 : region.indexOf(']', open);
+    if (close < 0) {
+      return null;
+    }
+    String[] parts = region.substring(open + 2, close).split(",");
+    return new Location(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+  }
+
+}
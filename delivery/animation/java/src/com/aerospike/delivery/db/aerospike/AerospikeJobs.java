@@ -26,12 +26,12 @@ import com.aerospike.client.query.Statement;
 import com.aerospike.client.task.IndexTask;
 import com.aerospike.delivery.*;
 import com.aerospike.delivery.db.base.Database;
+import com.aerospike.delivery.db.base.IdRegistry;
 import com.aerospike.delivery.db.base.Jobs;
 import com.aerospike.delivery.util.OurExecutor;
 
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
@@ -48,6 +48,10 @@ class AerospikeJobs extends Jobs {
   private final AerospikeDatabase database;
   private final String setName;
   private final Set<Job> jobsOnHoldCache;
+  final ChangeFeed<Job> changes;
+  // The bins Renderer needs from a scan.
+  static final String[] renderedBinNames = { "id", "state", "location", "previous", "candidate" };
+  private final IdRegistry<Job> written; // the last job written for each id, for rendering in full mode
 
   // One of these is attached to every job.
   private class Metadata extends Jobs.Metadata {
@@ -62,6 +66,8 @@ class AerospikeJobs extends Jobs {
     setName = "jobs";
     jobsOnHoldCache = ConcurrentHashMap.newKeySet();
     createIndex();
+    changes = new ChangeFeed<>(database, setName, this::get, job -> job.id, Job.NullJob, renderedBinNames);
+    written = new IdRegistry<>();
   }
 
   //-----------------------------------------------------------------------------------
@@ -109,6 +115,8 @@ class AerospikeJobs extends Jobs {
   @Override
   public void clear() {
     super.clear();
+    changes.clear();
+    written.clear();
     database.clearSet("jobs");
   }
 
@@ -211,11 +219,11 @@ class AerospikeJobs extends Jobs {
        */
       ++Metering.jobScans;
       if (database.client.isConnected()) {
-        database.scanAllWorkaround(scanPolicy, database.namespace, setName, new ForeachScanCallback(action));
+        database.scan(scanPolicy, setName, new ForeachScanCallback(action));
       }
     } catch (AerospikeException e) {
       int resultCode = e.getResultCode();
-      System.err.format("scanAll of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+      System.err.format("scan of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
     }
   }
 
@@ -232,7 +240,7 @@ class AerospikeJobs extends Jobs {
       ++Metering.jobScanResults;
       Job job = get(key, record);
       // action.test() returns false if the caller doesn't need any more.
-      // We ignore that because scanAll can't deal with it.
+      // We ignore that because a scan can't deal with it.
       // ScanCallback could provide a cancel() method, maybe someday.
       action.test(job);
     }
@@ -242,6 +250,16 @@ class AerospikeJobs extends Jobs {
 
   @Override
   public BlockingQueue<Job> makeQueueForRendering() {
+    if (OurOptions.instance.isRenderingLocalSnapshot) {
+      // We wrote them, so there's no need to read them back.
+      BlockingQueue<Job> result = new LinkedBlockingQueue<>();
+      written.foreach(result::add);
+      result.add(Job.NullJob);
+      return result;
+    }
+    if (OurOptions.instance.isRenderingChanges) {
+      return changes.makeQueueForRendering();
+    }
     final BlockingQueue<Job> result = new LinkedBlockingQueue<>();
     OurExecutor.instance.execute(new Runnable() {
       @Override
@@ -249,16 +267,16 @@ class AerospikeJobs extends Jobs {
         ScanPolicy scanPolicy = new ScanPolicy();
         try {
           /*
-           * Scan the entire Set using scannAll(). This will scan each node
+           * Scan the entire Set. This will scan each node
            * in the cluster and return the record Digest to the call back object
            */
           ++Metering.jobScans;
           if (database.client.isConnected()) {
-            database.scanAllWorkaround(scanPolicy, database.namespace, setName, new RefreshRenderCacheScanCallback(result));
+            database.scan(scanPolicy, setName, new RefreshRenderCacheScanCallback(result), renderedBinNames);
           }
         } catch (AerospikeException e) {
           int resultCode = e.getResultCode();
-          System.err.format("scanAll of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+          System.err.format("scan of %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
         }
         result.add(Job.NullJob);
       }
@@ -310,7 +328,7 @@ class AerospikeJobs extends Jobs {
     }
     ((Metadata) job.metadata).previousState = job.state;
     job.state = to;
-    boolean success = put(job);
+    boolean success = write(job, from);
     if (!success) {
       job.state = from;
     } else {
@@ -327,33 +345,66 @@ class AerospikeJobs extends Jobs {
   //-----------------------------------------------------------------------------------
 
   public boolean put(Job job) {
+    return write(job, null);
+  }
+
+  // Writes only the bins whose fields have changed, plus the state bins when it changes.
+  // The origin lives in a bin named for the state, so a state change moves it there and
+  // deletes the one named for the old state, which takes the job out of the Waiting index.
+  // Only state changes check the generation, since that's where drones race.
+  private boolean write(Job job, Job.State from) {
     Database.assertWriteLocked(job.lock);
+    Metadata metadata = (Metadata) job.metadata;
+    boolean isNew = metadata.generation == 0;
+    boolean isStateChange = isNew || from != null;
+    int dirty = isNew ? Job.AllFields : job.getDirtyFields();
+    if (!isStateChange && dirty == 0) {
+      return true;
+    }
     Key key = new Key(database.namespace, setName, job.id);
     String originBinName = job.state.name(); // location is stored in a bin by this name
-    Bin idBin            = new Bin("id",        job.id);
-    Bin stateBin         = new Bin("state",     originBinName);
-    Bin originBin        =     Bin.asGeoJSON(originBinName,   job.getOrigin()     .toGeoJSONPointDouble());
-    Bin destinationBin   =     Bin.asGeoJSON("destination",   job.getDestination().toGeoJSONPointDouble());
-    Bin locationBin      =     Bin.asGeoJSON("location",      job.getLocation()   .toGeoJSONPointDouble());
-    Bin prevLocationBin  =     Bin.asGeoJSON("previous",      job.previousLocation.toGeoJSONPointDouble());
-    Bin isCandidateBin   = new Bin("candidate", job.isCandidate());
-    Bin droneIdBin       = new Bin("droneid",   job.droneid);
-    List<Bin> binsList = new ArrayList<>(Arrays.asList(idBin, stateBin, originBin, destinationBin, locationBin, prevLocationBin, isCandidateBin, droneIdBin));
-    long[] timePickedUpAsLongs  = AerospikeDatabase.instantToLongs(job.timePickedUp);
-    if (timePickedUpAsLongs != null) {
-      binsList.add(new Bin("pickedUp", timePickedUpAsLongs));
+    List<Operation> operations = new ArrayList<>();
+    if (isNew) {
+      operations.add(Operation.put(new Bin("id", job.id)));
+    }
+    if (isStateChange) {
+      operations.add(Operation.put(new Bin("state",   originBinName)));
+      operations.add(Operation.put(new Bin("droneid", job.droneid)));
+      if (from != null && from != Job.State.Init && from != job.state) {
+        operations.add(Operation.put(Bin.asNull(from.name())));
+      }
+      dirty |= Job.OriginField;
     }
-    long[] timeDeliveredAsLongs = AerospikeDatabase.instantToLongs(job.timeDelivered);
-    if (timeDeliveredAsLongs != null) {
-      binsList.add(new Bin("delivered", timeDeliveredAsLongs));
+    if ((dirty & Job.OriginField) != 0) {
+      operations.add(Operation.put(Bin.asGeoJSON(originBinName, job.getOrigin().toGeoJSONPointDouble())));
     }
-    Bin[] bins = binsList.toArray(new Bin[] {});
+    if ((dirty & Job.DestinationField) != 0) {
+      operations.add(Operation.put(Bin.asGeoJSON("destination", job.getDestination().toGeoJSONPointDouble())));
+    }
+    if ((dirty & Job.LocationField) != 0) {
+      operations.add(Operation.put(Bin.asGeoJSON("location", job.getLocation()   .toGeoJSONPointDouble())));
+      operations.add(Operation.put(Bin.asGeoJSON("previous", job.previousLocation.toGeoJSONPointDouble())));
+    }
+    if ((dirty & Job.CandidateField) != 0) {
+      operations.add(Operation.put(new Bin("candidate", job.isCandidate())));
+    }
+    if ((dirty & Job.TimesField) != 0) {
+      operations.add(Operation.put(instantBin("pickedUp",  job.timePickedUp)));
+      operations.add(Operation.put(instantBin("delivered", job.timeDelivered)));
+    }
+    operations.add(Operation.put(ChangeFeed.modifiedBin()));
 //    System.out.printf("put %s\n", job);
-    WritePolicy writePolicy = makePutWritePolicy(job);
+    WritePolicy writePolicy = makePutWritePolicy(job, isStateChange);
     try {
       ++Metering.jobPuts;
-      database.client.put(writePolicy, key, bins);
-      ++((Metadata)job.metadata).generation;
+      Record record = database.client.operate(writePolicy, key, operations.toArray(new Operation[operations.size()]));
+      if (record != null) {
+        metadata.generation = record.generation;
+      } else {
+        ++metadata.generation;
+      }
+      job.clearDirtyFields();
+      written.put(job.id, job);
 //      database.log.info(String.format("changed %s to %s %s %d", ((Metadata)job.metadata).previousState, job.state, job, ((Metadata)job.metadata).generation));
       return true;
     } catch (AerospikeException e) {
@@ -368,12 +419,15 @@ class AerospikeJobs extends Jobs {
     }
   }
 
-  private WritePolicy makePutWritePolicy(Job job) {
+  // A null instant deletes the bin.
+  private static Bin instantBin(String name, Instant instant) {
+    long[] longs = AerospikeDatabase.instantToLongs(instant);
+    return longs == null ? Bin.asNull(name) : new Bin(name, longs);
+  }
+
+  private WritePolicy makePutWritePolicy(Job job, boolean isStateChange) {
     WritePolicy writePolicy = new WritePolicy();
-    writePolicy.recordExistsAction = RecordExistsAction.REPLACE;
-    if (((Metadata)job.metadata).generation != 0) {
-      // We care only when we're changing the job's state,
-      // but it doesn't hurt to leave this enabled.
+    if (isStateChange && ((Metadata)job.metadata).generation != 0) {
       writePolicy.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
       writePolicy.generation = ((Metadata)job.metadata).generation;
     }
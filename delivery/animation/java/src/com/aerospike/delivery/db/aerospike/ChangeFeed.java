@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.aerospike;
+
+import com.aerospike.client.*;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.policy.ScanPolicy;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.Statement;
+import com.aerospike.client.task.IndexTask;
+import com.aerospike.delivery.db.base.IdRegistry;
+import com.aerospike.delivery.util.OurExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+
+// aql -c create index jobsModified on demo1.jobs (modified) NUMERIC
+
+
+/**
+ * What Renderer draws of a set, kept up to date from the records changed since the last frame
+ * rather than by scanning the whole set every frame.
+ * <p>
+ * Every write stamps the record's modified bin with the writer's clock, and the bin has a
+ * numeric index.  Each frame queries the index for the records modified since a little
+ * before the newest stamp seen so far and merges them into a snapshot indexed by id.
+ * The overlap covers writes that were in flight, and writers whose clocks are a little
+ * behind.  Every resyncIntervalMs the snapshot is rebuilt from a full scan, which drops
+ * records that were deleted and picks up anything the overlap missed.
+ */
+class ChangeFeed<T> {
+
+  static final String modifiedBinName = "modified";
+  private static final long overlapMs = 500;
+  private static final long resyncIntervalMs = 5000;
+
+  private final AerospikeDatabase database;
+  private final String setName;
+  private final BiFunction<Key, Record, T> maker;
+  private final ToIntFunction<T> idOf;
+  private final T end;
+  private final String[] binNames;
+  private IdRegistry<T> snapshot;
+  private final AtomicLong newestModified = new AtomicLong();
+  private long resyncedAtMs;
+  public final LongAdder queries = new LongAdder();
+  public final LongAdder changes = new LongAdder();
+  public final LongAdder resyncs = new LongAdder();
+
+
+  /**
+   * @param maker makes an object from a record
+   * @param end   is put on each queue after the last object
+   * @param binNames the bins maker needs
+   */
+  ChangeFeed(AerospikeDatabase database, String setName, BiFunction<Key, Record, T> maker, ToIntFunction<T> idOf, T end,
+             String... binNames) {
+    this.database = database;
+    this.setName = setName;
+    this.maker = maker;
+    this.idOf = idOf;
+    this.end = end;
+    this.binNames = Arrays.copyOf(binNames, binNames.length + 1);
+    this.binNames[binNames.length] = modifiedBinName;
+    snapshot = new IdRegistry<>();
+    createIndex();
+  }
+
+  // Doesn't complain if index is already there.
+  private void createIndex() {
+    Policy policy = new Policy();
+    policy.timeout = 0; // Do not timeout on index create.
+    try {
+      IndexTask task = database.client.createIndex(policy, database.namespace, setName, setName + "Modified", modifiedBinName, IndexType.NUMERIC);
+      task.waitTillComplete();
+    } catch (AerospikeException e) {
+      e.printStackTrace();
+    }
+  }
+
+  static Bin modifiedBin() {
+    return new Bin(modifiedBinName, System.currentTimeMillis());
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  BlockingQueue<T> makeQueueForRendering() {
+    BlockingQueue<T> result = new LinkedBlockingQueue<>();
+    OurExecutor.instance.execute(() -> {
+      try {
+        IdRegistry<T> current = refresh();
+        current.foreach(result::add);
+      } catch (AerospikeException e) {
+        int resultCode = e.getResultCode();
+        System.err.format("changes to %-6s %s %s\n", setName, ResultCode.getResultString(resultCode), e);
+      }
+      result.add(end);
+    });
+    return result;
+  }
+
+  synchronized void clear() {
+    snapshot = new IdRegistry<>();
+    newestModified.set(0);
+    resyncedAtMs = 0;
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  private synchronized IdRegistry<T> refresh() {
+    if (!database.client.isConnected()) {
+      return snapshot;
+    }
+    long now = System.currentTimeMillis();
+    if (now - resyncedAtMs >= resyncIntervalMs) {
+      resync();
+      resyncedAtMs = now;
+    } else {
+      queryChanges();
+    }
+    return snapshot;
+  }
+
+  private void resync() {
+    IdRegistry<T> fresh = new IdRegistry<>();
+    resyncs.increment();
+    database.scan(new ScanPolicy(), setName, (key, record) -> {
+      merge(fresh, key, record);
+    }, binNames);
+    snapshot = fresh;
+  }
+
+  private void queryChanges() {
+    Statement stmt = new Statement();
+    stmt.setNamespace(database.namespace);
+    stmt.setSetName(setName);
+    stmt.setBinNames(binNames);
+    stmt.setFilters(Filter.range(modifiedBinName, newestModified.get() - overlapMs, Long.MAX_VALUE));
+    queries.increment();
+    try (RecordSet rs = database.client.query(new QueryPolicy(), stmt)) {
+      while (rs.next()) {
+        merge(snapshot, rs.getKey(), rs.getRecord());
+      }
+    }
+  }
+
+  // Scan callbacks come from several threads.
+  private void merge(IdRegistry<T> into, Key key, Record record) {
+    changes.increment();
+    T value = maker.apply(key, record);
+    into.put(idOf.applyAsInt(value), value);
+    newestModified.accumulateAndGet(record.getLong(modifiedBinName), Math::max);
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.aerospike;
+
+import com.aerospike.delivery.Drone;
+import com.aerospike.delivery.util.OurExecutor;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+
+/**
+ * Coalesces the puts of a drone.  A drone puts itself several times per animation step,
+ * once for each field it changes, but Renderer only sees what is in the database when
+ * it next scans.  So a put just marks the drone dirty, and once per window the flusher
+ * writes each dirty drone once, with whatever its fields are by then.
+ * <p>
+ * Changes into the states Renderer draws differently are written at once, so circles and
+ * paths appear and disappear on the frame they would have without the buffer.
+ * The dirty set is bounded: past maxDirty drones a put is written through.
+ * <p>
+ * The flusher and a write-through can reach the same drone at once.  Each write holds
+ * the lock for the drone's id while it reads the fields and puts them, so whichever
+ * lands last has the newer state.
+ */
+class DroneWriteBehind implements Runnable {
+
+  private static final int lockCount = 256;
+  private static final Set<Drone.State> flushedStates = EnumSet.of(
+      Drone.State.Ready, Drone.State.GotAJob, Drone.State.Delivering, Drone.State.Done, Drone.State.OffDuty);
+
+  private final Predicate<Drone> writer;
+  private final long windowMs;
+  private final int maxDirty;
+  private final ConcurrentHashMap<Integer, Drone> dirty;
+  private final Object[] locks;
+  private volatile ScheduledFuture<?> future;
+  private volatile boolean isClosed;
+  public final LongAdder coalesced = new LongAdder();
+
+
+  DroneWriteBehind(Predicate<Drone> writer, long windowMs, int maxDirty) {
+    this.writer = writer;
+    this.windowMs = windowMs;
+    this.maxDirty = maxDirty;
+    dirty = new ConcurrentHashMap<>();
+    locks = new Object[lockCount];
+    for (int i = 0 ; i < lockCount ; ++i) {
+      locks[i] = new Object();
+    }
+    if (windowMs > 0) {
+      future = OurExecutor.instance.scheduleWithFixedDelay(this, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+
+  boolean put(Drone drone) {
+    if (future == null || isClosed || dirty.size() >= maxDirty) {
+      return write(drone);
+    }
+    if (dirty.putIfAbsent(drone.id, drone) != null) {
+      coalesced.increment();
+    }
+    return true;
+  }
+
+
+  boolean putWithNewState(Drone drone) {
+    return flushedStates.contains(drone.state) ? write(drone) : put(drone);
+  }
+
+
+  // Writes all the dirty drones.
+  @Override
+  public void run() {
+    for (Integer id : dirty.keySet()) {
+      synchronized (lockFor(id)) {
+        Drone drone = dirty.remove(id);
+        if (drone != null) {
+          writer.test(drone);
+        }
+      }
+    }
+  }
+
+
+  // Forgets the dirty drones, for when the set is being emptied.
+  void clear() {
+    dirty.clear();
+  }
+
+
+  // Stops the flusher and writes what is left.
+  void close() {
+    isClosed = true;
+    ScheduledFuture<?> f = future;
+    if (f != null) {
+      f.cancel(false);
+      future = null;
+    }
+    run();
+  }
+
+
+  private boolean write(Drone drone) {
+    synchronized (lockFor(drone.id)) {
+      dirty.remove(drone.id);
+      return writer.test(drone);
+    }
+  }
+
+
+  private Object lockFor(int id) {
+    return locks[(id & Integer.MAX_VALUE) % lockCount];
+  }
+
+}
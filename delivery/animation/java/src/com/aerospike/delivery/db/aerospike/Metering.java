@@ -17,9 +17,15 @@
 
 package com.aerospike.delivery.db.aerospike;
 
+import com.aerospike.delivery.Drone;
 import com.aerospike.delivery.OurOptions;
+import com.aerospike.delivery.db.base.GeofenceCache;
+import com.aerospike.delivery.db.base.Jobs;
 import com.aerospike.delivery.util.OurExecutor;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +43,10 @@ public class Metering implements Runnable {
   static volatile int droneScanResults;
   static volatile int dronePuts;
   static volatile int droneGets;
+  static volatile int geofencePuts;
+  static volatile int geofenceScans;
+  static volatile int geofenceQueries;
+  static volatile int geofenceVersionGets;
 
   private final int nbSeconds = 3;
   public volatile long renders;
@@ -65,20 +75,33 @@ public class Metering implements Runnable {
     future = null;
     printJobStats();
     printDroneStats();
+    printGeofenceStats();
+    printChangeStats();
+    printScanStats();
     System.out.println(InfoParser.getClusterLatencyInfo(((AerospikeDatabase)OurOptions.instance.database).client));
     future = OurExecutor.instance.schedule(this, nbSeconds * 1000, TimeUnit.MILLISECONDS);
   }
 
+  private long jobClaimsWon;
+  private long jobClaimsLost;
+
   private void printJobStats() {
-    System.out.format("%d jobs: circle %3d:%4d   puts %4d   gets %2d   scans %2d:%4d\n",
+    Jobs jobs = OurOptions.instance.database.getJobs();
+    long claimsWon  = jobs.claimsWon .sum();
+    long claimsLost = jobs.claimsLost.sum();
+    System.out.format("%d jobs: circle %3d:%4d   puts %4d   gets %2d   scans %2d:%4d   claims %3d:%3d\n",
         renders,
         jobQueryWithinRadius / nbSeconds,
         jobRadiusResults     / nbSeconds,
         jobPuts              / nbSeconds,
         jobGets              / nbSeconds,
         jobScans             / nbSeconds,
-        jobScanResults       / nbSeconds
+        jobScanResults       / nbSeconds,
+        (claimsWon  - jobClaimsWon)  / nbSeconds,
+        (claimsLost - jobClaimsLost) / nbSeconds
     );
+    jobClaimsWon  = claimsWon;
+    jobClaimsLost = claimsLost;
     jobQueryWithinRadius = 0;
     jobRadiusResults = 0;
     jobPuts = 0;
@@ -87,18 +110,93 @@ public class Metering implements Runnable {
     jobScanResults = 0;
   }
 
+  private long droneCoalesced;
+  private long droneNoFlyIncursions;
+
   private void printDroneStats() {
-    System.out.format("%d drones:                 puts %4d   gets %2d   scans %2d:%4d\n",
+    AerospikeDrones drones = (AerospikeDrones) OurOptions.instance.database.getDrones();
+    long coalesced = drones.writeBehind.coalesced.sum();
+    long noFlyIncursions = Drone.noFlyIncursions.get();
+    System.out.format("%d drones:                 puts %4d   gets %2d   scans %2d:%4d   coalesced %4d   no-fly %3d\n",
         renders,
         dronePuts              / nbSeconds,
         droneGets              / nbSeconds,
         droneScans             / nbSeconds,
-        droneScanResults       / nbSeconds
+        droneScanResults       / nbSeconds,
+        (coalesced - droneCoalesced) / nbSeconds,
+        (noFlyIncursions - droneNoFlyIncursions) / nbSeconds
     );
+    droneCoalesced = coalesced;
+    droneNoFlyIncursions = noFlyIncursions;
     dronePuts = 0;
     droneGets = 0;
     droneScans = 0;
     droneScanResults = 0;
   }
 
+  private final long[] previousChangeCounts = new long[6];
+
+  // Zero unless rendering from the change feeds.
+  private void printChangeStats() {
+    ChangeFeed<?> jobChanges   = ((AerospikeJobs)   OurOptions.instance.database.getJobs())  .changes;
+    ChangeFeed<?> droneChanges = ((AerospikeDrones) OurOptions.instance.database.getDrones()).changes;
+    long[] counts = {
+        jobChanges  .queries.sum(), jobChanges  .changes.sum(), jobChanges  .resyncs.sum(),
+        droneChanges.queries.sum(), droneChanges.changes.sum(), droneChanges.resyncs.sum(),
+    };
+    System.out.format("%d changes: jobs %2d:%4d resyncs %d   drones %2d:%4d resyncs %d\n",
+        renders,
+        (counts[0] - previousChangeCounts[0]) / nbSeconds,
+        (counts[1] - previousChangeCounts[1]) / nbSeconds,
+        (counts[2] - previousChangeCounts[2]),
+        (counts[3] - previousChangeCounts[3]) / nbSeconds,
+        (counts[4] - previousChangeCounts[4]) / nbSeconds,
+        (counts[5] - previousChangeCounts[5])
+    );
+    System.arraycopy(counts, 0, previousChangeCounts, 0, counts.length);
+  }
+
+  private final Map<String, long[]> previousScanTimes = new HashMap<>();
+
+  // Per node: scans per second and the average time each took.
+  private void printScanStats() {
+    AerospikeDatabase database = (AerospikeDatabase) OurOptions.instance.database;
+    StringBuilder line = new StringBuilder(String.format("%d scans:", renders));
+    for (Map.Entry<String, AerospikeDatabase.NodeScanTimes> entry : new TreeMap<>(database.scanTimesByNode).entrySet()) {
+      long scans = entry.getValue().scans.sum();
+      long nanos = entry.getValue().nanos.sum();
+      long[] previous = previousScanTimes.computeIfAbsent(entry.getKey(), name -> new long[2]);
+      long nbScans = scans - previous[0];
+      line.append(String.format("   %s %2d:%5.1fms", entry.getKey(), nbScans / nbSeconds,
+          nbScans == 0 ? 0. : (nanos - previous[1]) / 1e6 / nbScans));
+      previous[0] = scans;
+      previous[1] = nanos;
+    }
+    System.out.println(line);
+  }
+
+  private long geofenceLookups;
+  private long geofenceCellFills;
+
+  private void printGeofenceStats() {
+    GeofenceCache cache = OurOptions.instance.database.getGeofences().getCache();
+    long lookups   = cache.lookups  .sum();
+    long cellFills = cache.cellFills.sum();
+    System.out.format("%d geofences: lookups %5d   fills %3d   puts %2d   version gets %2d   scans %2d   queries %2d\n",
+        renders,
+        (lookups   - geofenceLookups)   / nbSeconds,
+        (cellFills - geofenceCellFills) / nbSeconds,
+        geofencePuts                    / nbSeconds,
+        geofenceVersionGets             / nbSeconds,
+        geofenceScans                   / nbSeconds,
+        geofenceQueries                 / nbSeconds
+    );
+    geofenceLookups   = lookups;
+    geofenceCellFills = cellFills;
+    geofencePuts = 0;
+    geofenceVersionGets = 0;
+    geofenceScans = 0;
+    geofenceQueries = 0;
+  }
+
 }
@@ -29,6 +29,7 @@ public abstract class Database {
 
   protected Drones drones;
   protected Jobs    jobs;
+  protected Geofences geofences;
 
   private static Database sharedInstance; // Used only for InMemory
 
@@ -86,6 +87,10 @@ public abstract class Database {
     return jobs;
   }
 
+  public Geofences getGeofences() {
+    return geofences;
+  }
+
   public abstract String databaseType();
 
   //----------------------------------------------------------------------------------
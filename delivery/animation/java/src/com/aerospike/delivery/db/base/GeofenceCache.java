@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.base;
+
+
+import com.aerospike.delivery.Geofence;
+import com.aerospike.delivery.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Answers "which geofences contain this point" locally.
+ *
+ * The map is cut into a grid of cells, and each cell keeps the few
+ * geofences that overlap it, so a lookup is an array index and a distance
+ * check per candidate, usually none or one.  Cells are filled on first use
+ * from a snapshot of all the geofences.
+ *
+ * The snapshot and every cell are stamped with the store's version.  When
+ * the version moves on, the next lookup in a cell refills it, and the
+ * first of those rereads the snapshot, once for everybody.  So the store
+ * is read once per change rather than once per drone per animation step.
+ */
+public class GeofenceCache {
+
+  public static final int cellsPerSide = 64;
+  private static final double cellSize = 1.0 / cellsPerSide; // The map spans -.5 to .5 both ways.
+
+  private final Geofences geofences;
+  private final AtomicReferenceArray<Cell> cells;
+  private volatile Snapshot snapshot;
+
+  public final LongAdder lookups   = new LongAdder();
+  public final LongAdder cellFills = new LongAdder();
+  public final LongAdder reloads   = new LongAdder();
+
+  private static class Cell {
+    final long version;
+    final Geofence[] candidates;
+
+    Cell(long version, Geofence[] candidates) {
+      this.version    = version;
+      this.candidates = candidates;
+    }
+  }
+
+  private static class Snapshot {
+    final long version;
+    final List<Geofence> all;
+
+    Snapshot(long version, List<Geofence> all) {
+      this.version = version;
+      this.all     = all;
+    }
+  }
+
+  GeofenceCache(Geofences geofences) {
+    this.geofences = geofences;
+    cells = new AtomicReferenceArray<>(cellsPerSide * cellsPerSide);
+    snapshot = new Snapshot(Long.MIN_VALUE, Collections.emptyList());
+  }
+
+  //-----------------------------------------------------------------------------------
+
+  public void foreachContaining(Location location, Predicate<Geofence> action) {
+    lookups.increment();
+    long version = geofences.version();
+    int column = cellIndex(location.x);
+    int row    = cellIndex(location.y);
+    int index  = row * cellsPerSide + column;
+    Cell cell = cells.get(index);
+    if (cell == null || cell.version < version) {
+      cell = fill(index, row, column, version);
+    }
+    for (Geofence geofence : cell.candidates) {
+      if (geofence.contains(location) && !action.test(geofence)) {
+        break;
+      }
+    }
+  }
+
+  public List<Geofence> getAll() {
+    return snapshotFor(geofences.version()).all;
+  }
+
+  //-----------------------------------------------------------------------------------
+  // our private stuff
+
+  private static int cellIndex(double coordinate) {
+    int index = (int) Math.floor((coordinate + .5) / cellSize);
+    return Math.max(0, Math.min(cellsPerSide - 1, index));
+  }
+
+  private Cell fill(int index, int row, int column, long version) {
+    Snapshot snap = snapshotFor(version);
+    // Points off the map are clamped into the edge cells, so those
+    // reach out to infinity.
+    double minX = column == 0                ? Double.NEGATIVE_INFINITY : column * cellSize - .5;
+    double minY = row    == 0                ? Double.NEGATIVE_INFINITY : row    * cellSize - .5;
+    double maxX = column == cellsPerSide - 1 ? Double.POSITIVE_INFINITY : (column + 1) * cellSize - .5;
+    double maxY = row    == cellsPerSide - 1 ? Double.POSITIVE_INFINITY : (row    + 1) * cellSize - .5;
+    List<Geofence> candidates = new ArrayList<>();
+    for (Geofence geofence : snap.all) {
+      if (geofence.overlaps(minX, minY, maxX, maxY)) {
+        candidates.add(geofence);
+      }
+    }
+    Cell cell = new Cell(snap.version, candidates.toArray(new Geofence[candidates.size()]));
+    cells.set(index, cell);
+    cellFills.increment();
+    return cell;
+  }
+
+  private Snapshot snapshotFor(long version) {
+    Snapshot snap = snapshot;
+    if (snap.version < version) {
+      synchronized (this) {
+        snap = snapshot;
+        if (snap.version < version) {
+          // The version was read before the contents, so a change made
+          // during the read shows up as a newer version next time.
+          snap = new Snapshot(version, Collections.unmodifiableList(geofences.readAll()));
+          snapshot = snap;
+          reloads.increment();
+        }
+      }
+    }
+    return snap;
+  }
+
+}
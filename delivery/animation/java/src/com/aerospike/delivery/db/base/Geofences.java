@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.base;
+
+
+import com.aerospike.delivery.Geofence;
+import com.aerospike.delivery.Location;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Where geofences are stored.
+ *
+ * Drones check their position against the geofences on every animation
+ * step, so lookups go through a GeofenceCache instead of the store.  Every
+ * change bumps the store's version, which the cache compares to decide
+ * whether what it holds is still good.
+ */
+public abstract class Geofences {
+
+  public int nextID;
+  protected final GeofenceCache cache;
+
+  public Geofences() {
+    nextID = 1;
+    cache = new GeofenceCache(this);
+  }
+
+  public final Geofence newGeofence(Geofence.Kind kind) {
+    Geofence geofence = Geofence.makeRandom(nextID++, kind);
+    return put(geofence) ? geofence : null;
+  }
+
+  public void clear() {
+    nextID = 1;
+  }
+
+  /**
+   * Calls the action for each geofence containing the location, using the
+   * cache.  Stops when the action returns false.
+   */
+  public void foreachContaining(Location location, Predicate<Geofence> action) {
+    cache.foreachContaining(location, action);
+  }
+
+  // All of them, as of the cache's latest reload.
+  public List<Geofence> getCached() {
+    return cache.getAll();
+  }
+
+  public GeofenceCache getCache() {
+    return cache;
+  }
+
+  //-----------------------------------------------------------------------------------
+  // stuff to override
+
+  public abstract boolean put(Geofence geofence);
+
+  public abstract boolean remove(int id);
+
+  /**
+   * Increases whenever a geofence is added, changed or removed.  Called on
+   * every lookup, so it must be cheap.
+   */
+  public abstract long version();
+
+  // Reads all of them from the store; the cache calls this after a version change.
+  public abstract List<Geofence> readAll();
+
+  // Uncached lookup, straight to the store.
+  public abstract void queryContaining(Location location, Predicate<Geofence> action);
+
+}
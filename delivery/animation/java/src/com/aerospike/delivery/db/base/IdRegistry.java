@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Drones or jobs indexed by their int ids, which are small and dense.
+ *
+ * The slots are in fixed-size chunks hung off a fixed-size directory, so
+ * growing means publishing a new chunk with a compare-and-set, and nothing
+ * is ever copied or locked.  Lookups are a couple of volatile reads, and
+ * iteration runs in id order without blocking the threads that are
+ * putting.
+ */
+public class IdRegistry<T> {
+
+  private static final int chunkBits = 10;
+  private static final int chunkSize = 1 << chunkBits;
+  private static final int maxChunks = 1 << 12; // room for four million
+
+  private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks;
+  private final AtomicInteger highestId;
+
+  public IdRegistry() {
+    chunks    = new AtomicReferenceArray<>(maxChunks);
+    highestId = new AtomicInteger(-1);
+  }
+
+  public void put(int id, T value) {
+    chunkFor(id).set(id & (chunkSize - 1), value);
+    highestId.accumulateAndGet(id, Math::max);
+  }
+
+  // null if there is none with that id
+  public T get(int id) {
+    AtomicReferenceArray<T> chunk = id < 0 ? null : chunks.get(id >>> chunkBits);
+    return chunk == null ? null : chunk.get(id & (chunkSize - 1));
+  }
+
+  /**
+   * Calls the action for each value in id order until it returns false.
+   * Values put while this runs may or may not be seen.
+   */
+  public void foreach(Predicate<? super T> action) {
+    int highest = highestId.get();
+    for (int c = 0; c <= highest >> chunkBits; ++c) {
+      AtomicReferenceArray<T> chunk = chunks.get(c);
+      if (chunk == null) {
+        continue;
+      }
+      int end = Math.min(chunkSize, highest - (c << chunkBits) + 1);
+      for (int i = 0; i < end; ++i) {
+        T value = chunk.get(i);
+        if (value != null && !action.test(value)) {
+          return;
+        }
+      }
+    }
+  }
+
+  // Not for use while the animation is running.
+  public void clear() {
+    for (int c = 0; c < maxChunks; ++c) {
+      chunks.set(c, null);
+    }
+    highestId.set(-1);
+  }
+
+  //-----------------------------------------------------------------------------------
+  // our private stuff
+
+  private AtomicReferenceArray<T> chunkFor(int id) {
+    int c = id >>> chunkBits;
+    if (c >= maxChunks) {
+      throw new IllegalArgumentException("id out of range: " + id);
+    }
+    AtomicReferenceArray<T> chunk = chunks.get(c);
+    if (chunk == null) {
+      chunks.compareAndSet(c, null, new AtomicReferenceArray<>(chunkSize));
+      chunk = chunks.get(c);
+    }
+    return chunk;
+  }
+
+}
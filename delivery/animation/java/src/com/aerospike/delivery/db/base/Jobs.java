@@ -21,12 +21,15 @@ package com.aerospike.delivery.db.base;
 import com.aerospike.delivery.*;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 public abstract class Jobs {
 
   public int nextID;
   private int size;
+  public final LongAdder claimsWon  = new LongAdder();
+  public final LongAdder claimsLost = new LongAdder();
 
   public class Metadata { }
 
@@ -80,6 +83,12 @@ public abstract class Jobs {
 
   public abstract boolean putWithNewState(Job job, Job.State from, Job.State to);
 
+  // True if drones may claim a waiting job by compare-and-set on the Job itself,
+  // which needs every drone to see the same Job object for an id.
+  public boolean claimsWithoutLocking() {
+    return false;
+  }
+
   public abstract Job getJobWhereIdIs(int id);
 
 
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.inmemory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * A concurrent set of small non-negative ints, one bit each.
+ *
+ * Adding and removing are a compare-and-set on one word, and say whether
+ * they changed anything, so two threads racing to remove the same id can
+ * tell which of them won.  Nothing is boxed or allocated, except a new
+ * chunk of words the first time an id lands in it.
+ */
+class IdBitSet {
+
+  private static final int chunkBits = 16; // ids per chunk
+  private static final int wordsPerChunk = (1 << chunkBits) / 64;
+  private static final int maxChunks = 1 << 6; // room for four million
+
+  private final AtomicReferenceArray<AtomicLongArray> chunks;
+  private final AtomicInteger size;
+
+  IdBitSet() {
+    chunks = new AtomicReferenceArray<>(maxChunks);
+    size   = new AtomicInteger();
+  }
+
+  // true if it wasn't there before
+  boolean add(int id) {
+    AtomicLongArray words = chunkFor(id);
+    int index = (id >>> 6) & (wordsPerChunk - 1);
+    long bit = 1L << id; // the shift uses the low six bits
+    while (true) {
+      long word = words.get(index);
+      if ((word & bit) != 0) {
+        return false;
+      }
+      if (words.compareAndSet(index, word, word | bit)) {
+        size.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  // true if it was there
+  boolean remove(int id) {
+    AtomicLongArray words = id < 0 ? null : chunks.get(id >>> chunkBits);
+    if (words == null) {
+      return false;
+    }
+    int index = (id >>> 6) & (wordsPerChunk - 1);
+    long bit = 1L << id;
+    while (true) {
+      long word = words.get(index);
+      if ((word & bit) == 0) {
+        return false;
+      }
+      if (words.compareAndSet(index, word, word & ~bit)) {
+        size.decrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  boolean contains(int id) {
+    AtomicLongArray words = id < 0 ? null : chunks.get(id >>> chunkBits);
+    return words != null && (words.get((id >>> 6) & (wordsPerChunk - 1)) & (1L << id)) != 0;
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * Calls the action for each id in order until it returns false.  Ids
+   * added or removed while this runs may or may not be seen.
+   */
+  void foreach(IntPredicate action) {
+    for (int c = 0; c < maxChunks; ++c) {
+      AtomicLongArray words = chunks.get(c);
+      if (words == null) {
+        continue;
+      }
+      for (int i = 0; i < wordsPerChunk; ++i) {
+        long word = words.get(i);
+        while (word != 0) {
+          int id = (c << chunkBits) + (i << 6) + Long.numberOfTrailingZeros(word);
+          if (!action.test(id)) {
+            return;
+          }
+          word &= word - 1;
+        }
+      }
+    }
+  }
+
+  // Not for use while the animation is running.
+  void clear() {
+    for (int c = 0; c < maxChunks; ++c) {
+      chunks.set(c, null);
+    }
+    size.set(0);
+  }
+
+  //-----------------------------------------------------------------------------------
+  // our private stuff
+
+  private AtomicLongArray chunkFor(int id) {
+    int c = id >>> chunkBits;
+    if (c >= maxChunks) {
+      throw new IllegalArgumentException("id out of range: " + id);
+    }
+    AtomicLongArray words = chunks.get(c);
+    if (words == null) {
+      chunks.compareAndSet(c, null, new AtomicLongArray(wordsPerChunk));
+      words = chunks.get(c);
+    }
+    return words;
+  }
+
+}
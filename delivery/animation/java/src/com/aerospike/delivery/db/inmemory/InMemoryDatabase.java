@@ -22,9 +22,25 @@ import com.aerospike.delivery.db.base.Database;
 
 public class InMemoryDatabase extends Database {
 
+  private final InMemoryMetering metering;
+
   public InMemoryDatabase() {
     drones = new InMemoryDrones();
     jobs    = new InMemoryJobs();
+    geofences = new InMemoryGeofences();
+    metering = new InMemoryMetering(this);
+  }
+
+  @Override
+  public boolean connect() {
+    metering.start();
+    return true;
+  }
+
+  @Override
+  public void close() {
+    metering.stop();
+    super.close();
   }
 
   @Override
@@ -36,6 +52,7 @@ public class InMemoryDatabase extends Database {
   public void clear() {
     jobs   .clear();
     drones.clear();
+    geofences.clear();
   }
 
   @Override
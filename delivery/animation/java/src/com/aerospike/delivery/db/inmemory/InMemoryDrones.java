@@ -19,12 +19,9 @@ package com.aerospike.delivery.db.inmemory;
 
 import com.aerospike.delivery.Drone;
 import com.aerospike.delivery.db.base.Drones;
+import com.aerospike.delivery.db.base.IdRegistry;
 import com.aerospike.delivery.util.OurExecutor;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Predicate;
@@ -32,10 +29,10 @@ import java.util.function.Predicate;
 
 class InMemoryDrones extends Drones {
 
-  private final Map<Integer, Drone> contents;
+  private final IdRegistry<Drone> contents;
 
   InMemoryDrones() {
-    contents = Collections.synchronizedMap(new HashMap<>());
+    contents = new IdRegistry<>();
   }
 
   public void add(Drone drone) {
@@ -91,14 +88,7 @@ class InMemoryDrones extends Drones {
 
   @Override
   public void foreachCached(Predicate<? super Drone> action) {
-    Collection<Drone> values;
-    synchronized (contents) {
-      values = contents.values();
-    }
-    for (Drone drone : values) {
-      if (!action.test(drone))
-        break;
-    }
+    contents.foreach(action);
   }
 
 
@@ -107,13 +97,7 @@ class InMemoryDrones extends Drones {
     BlockingQueue<Drone> result = new LinkedBlockingQueue<>();
     OurExecutor.instance.execute(() -> {
       try {
-        Collection<Drone> values;
-        synchronized (contents) {
-          values = contents.values();
-        }
-        for (Drone drone : values) {
-          result.add(drone.copy());
-        }
+        contents.foreach(drone -> result.add(drone.copy()));
         result.add(Drone.NullDrone);
       } catch (Exception e) {
         e.printStackTrace();
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.inmemory;
+
+import com.aerospike.delivery.Geofence;
+import com.aerospike.delivery.Location;
+import com.aerospike.delivery.db.base.Geofences;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+
+class InMemoryGeofences extends Geofences {
+
+  private final ConcurrentHashMap<Integer, Geofence> contents;
+  private final AtomicLong version;
+
+  InMemoryGeofences() {
+    contents = new ConcurrentHashMap<>();
+    version  = new AtomicLong();
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    contents.clear();
+    version.incrementAndGet();
+  }
+
+  @Override
+  public boolean put(Geofence geofence) {
+    contents.put(geofence.id, geofence);
+    version.incrementAndGet();
+    return true;
+  }
+
+  @Override
+  public boolean remove(int id) {
+    boolean result = contents.remove(id) != null;
+    version.incrementAndGet();
+    return result;
+  }
+
+  @Override
+  public long version() {
+    return version.get();
+  }
+
+  @Override
+  public List<Geofence> readAll() {
+    return new ArrayList<>(contents.values());
+  }
+
+  // brute force
+  @Override
+  public void queryContaining(Location location, Predicate<Geofence> action) {
+    for (Geofence geofence : contents.values()) {
+      if (geofence.contains(location) && !action.test(geofence)) {
+        break;
+      }
+    }
+  }
+
+}
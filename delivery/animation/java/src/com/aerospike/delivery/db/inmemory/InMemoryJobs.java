@@ -19,27 +19,36 @@ package com.aerospike.delivery.db.inmemory;
 
 import com.aerospike.delivery.*;
 import com.aerospike.delivery.db.base.Database;
+import com.aerospike.delivery.db.base.IdRegistry;
 import com.aerospike.delivery.db.base.Jobs;
 import com.aerospike.delivery.util.OurExecutor;
 
-import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Predicate;
 
 
+/**
+ * Every job is in one table indexed by id, and which state it's in is a bit
+ * in one of three id sets.  Changing state is a compare-and-set to clear
+ * the old bit and another to set the new one, without boxing the id or
+ * allocating a map node.
+ */
 class InMemoryJobs extends Jobs {
 
-  private ConcurrentHashMap<Integer, Job> jobsWaiting;
-  private ConcurrentHashMap<Integer, Job> jobsInProcess;
-  private ConcurrentHashMap<Integer, Job> jobsOnHold;
+  private final IdRegistry<Job> jobs;
+  private final IdBitSet jobsWaiting;
+  private final IdBitSet jobsInProcess;
+  private final IdBitSet jobsOnHold;
+  private final JobGrid waitingOrigins; // the jobs in jobsWaiting, by origin
 
 
   InMemoryJobs() {
-    jobsWaiting   = new ConcurrentHashMap<>();
-    jobsInProcess = new ConcurrentHashMap<>();
-    jobsOnHold    = new ConcurrentHashMap<>();
+    jobs          = new IdRegistry<>();
+    jobsWaiting   = new IdBitSet();
+    jobsInProcess = new IdBitSet();
+    jobsOnHold    = new IdBitSet();
+    waitingOrigins = new JobGrid();
   }
 
   @Override
@@ -52,6 +61,7 @@ class InMemoryJobs extends Jobs {
   public Job newJob(Job.State state) {
     incrementSize();
     Job job = new Job(this);
+    jobs.put(job.id, job);
     boolean success = Database.withWriteLock(job.lock, () -> {
       return job.setStateAndPut(state);
     });
@@ -65,40 +75,33 @@ class InMemoryJobs extends Jobs {
   @Override
   public void clear() {
     super.clear();
+    jobs         .clear();
     jobsWaiting  .clear();
     jobsInProcess.clear();
     jobsOnHold   .clear();
+    waitingOrigins.clear();
   }
 
 
   @Override
   public int size(Job.State state) {
-    return getMap(state).size();
+    return getSet(state).size();
   }
 
 
-  // brute force, no geo tricks.
+  // Only the grid cells the circle overlaps are visited.
   // We need only 2, so we can discard the first one if it is the same one we just dropped off.
   //
   @Override
   public void foreachJobNearestTo(Location location, double radius, Predicate<Job> action) {
     super.foreachJobNearestTo(location, radius, action);
-    foreach(Job.State.Waiting, job -> {
-      double distance = location.distanceTo(job.getOrigin());
-      if (distance <= radius) {
-        return action.test(job);
-      }
-      return true;
-    });
+    waitingOrigins.foreachWithin(location, radius, action);
   }
 
 
   @Override
   public void foreach(Job.State state, Predicate<? super Job> action) {
-    for (Job job : getMap(state).values()) {
-      if (!action.test(job))
-        break;
-    }
+    getSet(state).foreach(id -> action.test(jobs.get(id)));
   }
 
 
@@ -111,14 +114,10 @@ class InMemoryJobs extends Jobs {
 
   @Override
   public BlockingQueue<Job> makeQueueForRendering() {
-    // todo Is there something that that takes a sequence of collections and returns an iterable?
-    // That would be better.
     BlockingQueue<Job> result = new LinkedBlockingQueue<>();
     OurExecutor.instance.execute(() -> {
       try {
-        result.addAll(jobsWaiting.values());
-        result.addAll(jobsInProcess.values());
-        result.addAll(jobsOnHold.values());
+        foreach(result::add);
         result.add(Job.NullJob);
       } catch (Exception e) {
         e.printStackTrace();
@@ -152,30 +151,36 @@ class InMemoryJobs extends Jobs {
     if (job.getState() != from) {
       return false;
     }
-    if (from != Job.State.Init && getMap(from).remove(job.id) == null) {
+    if (from != Job.State.Init && !getSet(from).remove(job.id)) {
       // Some other drone beat us to it.
       return false;
     }
+    if (from == Job.State.Waiting) {
+      waitingOrigins.remove(job);
+    }
     job.state = to;
 //    if (to == Job.State.OnHold) {
 //      job.touch();
 //    }
-    Map<Integer, Job> toSet = getMap(to);
+    IdBitSet toSet = getSet(to);
     if (toSet != null) {
-      toSet.put(job.id, job);
+      toSet.add(job.id);
     }
+    if (to == Job.State.Waiting) {
+      waitingOrigins.add(job);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean claimsWithoutLocking() {
     return true;
   }
 
   @Override
   public Job getJobWhereIdIs(int id) {
-    Job result;
-    result = jobsWaiting.get(id);
-    if (result != null) return result;
-    result = jobsInProcess.get(id);
-    if (result != null) return result;
-    result = jobsOnHold.get(id);
-    return result;
+    Job result = jobs.get(id);
+    return result == null || result.state == Job.State.Init ? null : result;
   }
 
   @Override
@@ -187,7 +192,7 @@ class InMemoryJobs extends Jobs {
   //-----------------------------------------------------------------------------------
   // our private stuff
 
-  private Map<Integer, Job> getMap(Job.State state) {
+  private IdBitSet getSet(Job.State state) {
     switch (state) {
       default: throw new Error("unhandled job state");
       case Init:      return null;
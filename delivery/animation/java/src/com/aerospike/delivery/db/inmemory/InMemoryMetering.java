@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.inmemory;
+
+import com.aerospike.delivery.Drone;
+import com.aerospike.delivery.db.base.Database;
+import com.aerospike.delivery.db.base.GeofenceCache;
+import com.aerospike.delivery.db.base.Jobs;
+import com.aerospike.delivery.util.OurExecutor;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Prints, every few seconds, the counters the in-memory database keeps,
+ * as Metering does for Aerospike.  Only in memory do drones claim jobs
+ * with a compare-and-set, so this is where the lost claims show.
+ */
+class InMemoryMetering implements Runnable {
+
+  private final int nbSeconds = 3;
+  private final Database database;
+  private ScheduledFuture<?> future;
+
+  private long jobClaimsWon;
+  private long jobClaimsLost;
+  private long droneNoFlyIncursions;
+  private long geofenceLookups;
+  private long geofenceCellFills;
+
+
+  InMemoryMetering(Database database) {
+    this.database = database;
+  }
+
+
+  synchronized void start() {
+    if (future == null) {
+      future = OurExecutor.instance.scheduleWithFixedDelay(this, nbSeconds, nbSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+
+  synchronized void stop() {
+    if (future != null) {
+      future.cancel(false);
+      future = null;
+    }
+  }
+
+
+  @Override
+  public synchronized void run() {
+    printJobStats();
+    printDroneStats();
+    printGeofenceStats();
+  }
+
+
+  private void printJobStats() {
+    Jobs jobs = database.getJobs();
+    long claimsWon  = jobs.claimsWon .sum();
+    long claimsLost = jobs.claimsLost.sum();
+    System.out.format("jobs: claims %3d:%3d\n",
+        (claimsWon  - jobClaimsWon)  / nbSeconds,
+        (claimsLost - jobClaimsLost) / nbSeconds
+    );
+    jobClaimsWon  = claimsWon;
+    jobClaimsLost = claimsLost;
+  }
+
+
+  private void printDroneStats() {
+    long noFlyIncursions = Drone.noFlyIncursions.get();
+    System.out.format("drones: no-fly %3d\n",
+        (noFlyIncursions - droneNoFlyIncursions) / nbSeconds
+    );
+    droneNoFlyIncursions = noFlyIncursions;
+  }
+
+
+  private void printGeofenceStats() {
+    GeofenceCache cache = database.getGeofences().getCache();
+    long lookups   = cache.lookups  .sum();
+    long cellFills = cache.cellFills.sum();
+    System.out.format("geofences: lookups %5d   fills %3d\n",
+        (lookups   - geofenceLookups)   / nbSeconds,
+        (cellFills - geofenceCellFills) / nbSeconds
+    );
+    geofenceLookups   = lookups;
+    geofenceCellFills = cellFills;
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery.db.inmemory;
+
+import com.aerospike.delivery.Job;
+import com.aerospike.delivery.Location;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A uniform grid over the map holding the waiting jobs by origin, so that a
+ * radius search visits only the cells the circle overlaps.
+ *
+ * Each cell is a concurrent set, so adding, removing and searching need no
+ * lock of their own.  A job's origin doesn't change while it is waiting, so
+ * it is removed from the cell it was added to.
+ */
+class JobGrid {
+
+  // With 100k jobs that's about six per cell.
+  static final int cellsPerSide = 128;
+  private static final double cellSize = 1.0 / cellsPerSide; // The map spans -.5 to .5 both ways.
+
+  private final Set<Job>[] cells;
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  JobGrid() {
+    cells = new Set[cellsPerSide * cellsPerSide];
+    for (int i = 0; i < cells.length; ++i) {
+      cells[i] = ConcurrentHashMap.newKeySet();
+    }
+  }
+
+  void add(Job job) {
+    cells[cellOf(job.getOrigin())].add(job);
+  }
+
+  void remove(Job job) {
+    cells[cellOf(job.getOrigin())].remove(job);
+  }
+
+  void clear() {
+    for (Set<Job> cell : cells) {
+      cell.clear();
+    }
+  }
+
+  /**
+   * Calls the action for each job whose origin is within radius of the
+   * location, until it returns false.
+   */
+  void foreachWithin(Location location, double radius, Predicate<Job> action) {
+    int minColumn = cellIndex(location.x - radius);
+    int maxColumn = cellIndex(location.x + radius);
+    int minRow    = cellIndex(location.y - radius);
+    int maxRow    = cellIndex(location.y + radius);
+    for (int row = minRow; row <= maxRow; ++row) {
+      for (int column = minColumn; column <= maxColumn; ++column) {
+        for (Job job : cells[row * cellsPerSide + column]) {
+          if (location.distanceTo(job.getOrigin()) <= radius && !action.test(job)) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  //-----------------------------------------------------------------------------------
+  // our private stuff
+
+  private static int cellOf(Location location) {
+    return cellIndex(location.y) * cellsPerSide + cellIndex(location.x);
+  }
+
+  // Anything off the map goes into the edge cells.
+  private static int cellIndex(double coordinate) {
+    int index = (int) Math.floor((coordinate + .5) / cellSize);
+    return Math.max(0, Math.min(cellsPerSide - 1, index));
+  }
+
+}
@@ -37,7 +37,7 @@ import java.util.concurrent.TimeUnit;
  * Periodically renders drones and jobs into a BufferedImage and copies it to the GUI.
  *
  * Does its work in a thread allocated by the Timer class.
- * Each time it renders it uses the Aerospike scanAll method, which delivers results in multiple threads.
+ * Each time it renders it scans the Aerospike nodes in parallel, which delivers results in multiple threads.
  * The calls to Graphics2D drawing methods are serialized via the synchronized keyword.
  *
  * todo Convert from Swing to JavaFX
@@ -138,7 +138,7 @@ public class Renderer {
 
     private boolean render() {
       if (database.isConnected()) {
-        // The Aerospike client's scanAll method feeds these queues from multiple threads.
+        // Scans of the Aerospike nodes feed these queues from multiple threads.
         BlockingQueue<Job>   jobsToDraw   = jobs  .makeQueueForRendering();
         BlockingQueue<Drone> dronesToDraw = drones.makeQueueForRendering();
         try {
@@ -206,6 +206,10 @@ public class Renderer {
     Color background = new Color(0, 0, 0);
     Color circleFill = new Color(93, 93, 93, 128);
     Color circleLine = new Color(133, 133, 133);
+    Color noFlyFill    = new Color(255, 40, 40, 60);
+    Color noFlyLine    = new Color(255, 40, 40);
+    Color districtLine = new Color(80, 80, 80);
+    final Color noFlyDrone = new Color(255, 40, 40);
 
     Color defaultJob    = new Color(255, 170, 0);
     Color candidateJob  = new Color(220, 0, 255);
@@ -252,6 +256,7 @@ public class Renderer {
     // layered from back to front
     // Longitude increases leftwards. Latitude increases upwards.
     g2.translate(-Database.mapWidthPx / 2, -Database.mapHeightPx / 2);
+    drawGeofences(g2);
     drawCirclesAndPath(g2);
     drawJobs  (g2, jobsToDraw);
     drawDrones(g2, dronesToDraw);
@@ -314,6 +319,28 @@ public class Renderer {
     }
   }
 
+  private void drawGeofences(Graphics2D g) {
+    g.setStroke(new BasicStroke(1));
+    for (Geofence geofence : database.getGeofences().getCached()) {
+      int x = transformX(geofence.center.x);
+      int y = transformY(geofence.center.y);
+      int radius = transformDistance(geofence.radius);
+      int diameter = 2 * radius;
+      switch (geofence.kind) {
+        case NoFly:
+          g.setColor(colors.noFlyFill);
+          g.fillOval(x - radius, y - radius, diameter, diameter);
+          g.setColor(colors.noFlyLine);
+          g.drawOval(x - radius, y - radius, diameter, diameter);
+          break;
+        case District:
+          g.setColor(colors.districtLine);
+          g.drawOval(x - radius, y - radius, diameter, diameter);
+          break;
+      }
+    }
+  }
+
   private void drawSearchCircle(Graphics2D g, Drone drone) {
     if (drone.currentRadius != 0) {
       int x = transformX(drone.startLocation.x);
@@ -518,6 +545,9 @@ public class Renderer {
     int x = transformX(location.x);
     int y = transformY(location.y);
     g.setColor(drone.isExample ? color : colors.exampleDrone);
+    if (drone.isInNoFlyZone) {
+      g.setColor(colors.noFlyDrone);
+    }
     fillDiamond(g, x, y, r);
   }
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares GeoJSONPointCodec with the Gson code Location used before it.
+ * Run with mvn -P bench test-compile exec:exec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoJSONPointCodecBenchmark {
+
+  private static class GsonPoint {
+    String type = "Point";
+    double[] coordinates;
+  }
+
+  private static final int count = 1024;
+
+  // Pixel steps, as Location.makeRandom() makes, or full length, as partWay() makes.
+  @Param({ "pixel", "partWay" })
+  public String precision;
+
+  private final Gson gson = new Gson();
+  private Location[] locations;
+  private String[] geoJSONs;
+  private int next;
+
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(61);
+    locations = new Location[count];
+    geoJSONs = new String[count];
+    for (int i = 0 ; i < count ; ++i) {
+      Location location = precision.equals("pixel")
+          ? new Location(random.nextInt(1000) / 1000.0 - 0.5, random.nextInt(1000) / 1000.0 - 0.5)
+          : new Location(random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+      locations[i] = location;
+      geoJSONs[i] = location.toGeoJSONPointDouble();
+    }
+  }
+
+
+  private int nextIndex() {
+    next = (next + 1) & (count - 1);
+    return next;
+  }
+
+
+  @Benchmark
+  public String gsonFormat() {
+    Location location = locations[nextIndex()];
+    GsonPoint point = new GsonPoint();
+    point.coordinates = new double[] { location.x, location.y };
+    return gson.toJson(point);
+  }
+
+  @Benchmark
+  public String codecFormat() {
+    Location location = locations[nextIndex()];
+    return GeoJSONPointCodec.format(location.x, location.y);
+  }
+
+  @Benchmark
+  public Location gsonParse() {
+    GsonPoint point = gson.fromJson(geoJSONs[nextIndex()], GsonPoint.class);
+    return new Location(point.coordinates[0], point.coordinates[1]);
+  }
+
+  @Benchmark
+  public Location codecParse() {
+    return GeoJSONPointCodec.parse(geoJSONs[nextIndex()]);
+  }
+
+}
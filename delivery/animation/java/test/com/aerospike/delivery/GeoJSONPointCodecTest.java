@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.delivery;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class GeoJSONPointCodecTest {
+
+  // What Location wrote with Gson before GeoJSONPointCodec.
+  private static class GsonPoint {
+    String type = "Point";
+    double[] coordinates;
+  }
+
+  private static final Gson gson = new Gson();
+
+
+  private static double parseNumber(String s) {
+    return GeoJSONPointCodec.parseNumber(s, 0, s.length());
+  }
+
+  private static void assertParsesLikeJava(String s) {
+    double expected = Double.parseDouble(s.trim());
+    double actual   = parseNumber(s);
+    assertEquals(s, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+  }
+
+
+  @Test
+  public void parsesPlainNumbers() {
+    for (String s : new String[] { "0", "1", "-1", "0.5", "-0.5", "0.001953125", "123456789012345", "-0.1", "0.3" }) {
+      assertParsesLikeJava(s);
+    }
+  }
+
+  @Test
+  public void parsesExponents() {
+    for (String s : new String[] {
+        "1.0E-5", "-1.25e3", "1e22", "1e23", "1E+2", "2.5e-22", "2.5e-23",
+        "4.9E-324", "2.2250738585072014E-308", "1.7976931348623157E308", "1e400", "-1e-400" }) {
+      assertParsesLikeJava(s);
+    }
+  }
+
+  @Test
+  public void keepsTheSignOfZero() {
+    for (String s : new String[] { "-0", "-0.0", "-0.0E0", "-0e-5" }) {
+      assertEquals(s, Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(parseNumber(s)));
+    }
+    for (String s : new String[] { "0", "0.0", "0e5" }) {
+      assertEquals(s, Double.doubleToRawLongBits(0.0), Double.doubleToRawLongBits(parseNumber(s)));
+    }
+  }
+
+  @Test
+  public void parsesMoreThanFifteenDigits() {
+    for (String s : new String[] {
+        "0.30000000000000004", "-0.4999999999999999", "1234567890123456", "12345678901234567890",
+        "0.1234567890123456789", "9007199254740993", "-0.00000000000000000001234567890123456" }) {
+      assertParsesLikeJava(s);
+    }
+  }
+
+  @Test
+  public void ignoresWhitespace() {
+    assertParsesLikeJava(" 0.5 ");
+    assertParsesLikeJava("\t-1.25e3\n");
+    assertParsesLikeJava("  0.30000000000000004  ");
+    Location location = GeoJSONPointCodec.parse("{ \"type\" : \"Point\", \"coordinates\" : [ 0.1 , -0.2 ] }");
+    assertEquals(new Location(0.1, -0.2), location);
+  }
+
+  @Test
+  public void parsesOnlyItsRange() {
+    String s = "[12.5,-3e2]";
+    assertEquals(12.5, GeoJSONPointCodec.parseNumber(s, 1, 5), 0.0);
+    assertEquals(-300.0, GeoJSONPointCodec.parseNumber(s, 6, 10), 0.0);
+  }
+
+  @Test
+  public void parsesRandomNumbersLikeJava() {
+    Random random = new Random(47);
+    for (int i = 0 ; i < 200_000 ; ++i) {
+      double d;
+      switch (i % 4) {
+        case 0:  d = random.nextDouble() - 0.5;                                   break;
+        case 1:  d = random.nextInt(1000) / 1000.0 - 0.5;                         break;
+        case 2:  d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(60) - 30); break;
+        default: d = Double.longBitsToDouble(random.nextLong());                   break;
+      }
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        continue;
+      }
+      assertParsesLikeJava(Double.toString(d));
+      assertParsesLikeJava(String.format("%.12e", d));
+    }
+  }
+
+  @Test
+  public void formatsLikeGson() {
+    Random random = new Random(53);
+    for (int i = 0 ; i < 10_000 ; ++i) {
+      double x = random.nextDouble() - 0.5;
+      double y = random.nextInt(1000) / 1000.0 - 0.5;
+      GsonPoint point = new GsonPoint();
+      point.coordinates = new double[] { x, y };
+      assertEquals(gson.toJson(point), GeoJSONPointCodec.format(x, y));
+    }
+  }
+
+  @Test
+  public void roundTrips() {
+    Random random = new Random(59);
+    for (int i = 0 ; i < 100_000 ; ++i) {
+      Location location = new Location(random.nextDouble() - 0.5, random.nextInt(1000) / 1000.0 - 0.5);
+      String json = location.toGeoJSONPointDouble();
+      assertEquals(json, location, Location.makeFromGeoJSONPointDouble(json));
+      GsonPoint parsed = gson.fromJson(json, GsonPoint.class);
+      assertTrue(json, parsed.coordinates[0] == location.x && parsed.coordinates[1] == location.y);
+    }
+  }
+
+}
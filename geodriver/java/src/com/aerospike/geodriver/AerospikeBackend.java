@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Value;
+import com.aerospike.client.policy.ClientPolicy;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.ResultSet;
+import com.aerospike.client.query.Statement;
+
+/**
+ * Queries the cluster the way Around does: a circle on the location
+ * index returning the val bins, or with a category, the UDF filter
+ * returning the matching vals.
+ *
+ * The UDF module isn't registered here; running Around with a filter
+ * once does that.
+ */
+public class AerospikeBackend implements Backend {
+
+	private final AerospikeClient client;
+	private final String namespace;
+	private final String set;
+	private final String locbin;
+	private final String module;
+
+	public AerospikeBackend(AerospikeClient client, String namespace, String set,
+							String locbin, String module) {
+		this.client = client;
+		this.namespace = namespace;
+		this.set = set;
+		this.locbin = locbin;
+		this.module = module;
+	}
+
+	public static AerospikeClient connect(String host, int port, String user,
+										  String password, int maxThreads) {
+		ClientPolicy clipolicy = new ClientPolicy();
+		clipolicy.user = user;
+		clipolicy.password = password;
+		clipolicy.failIfNotConnected = true;
+		clipolicy.maxThreads = maxThreads;
+		return new AerospikeClient(clipolicy, host, port);
+	}
+
+	public long query(Query query) throws Exception {
+		Statement stmt = new Statement();
+		stmt.setNamespace(namespace);
+		stmt.setSetName(set);
+		stmt.setBinNames("val");
+		stmt.setFilters(Filter.geoWithin(locbin, query.region()));
+
+		long nrecs = 0;
+		if (query.category != null) {
+			stmt.setAggregateFunction(module, "apply_filter",
+									  Value.get(query.category));
+			ResultSet rs = client.queryAggregate(null, stmt);
+			try {
+				while (rs.next()) {
+					++nrecs;
+				}
+			}
+			finally {
+				rs.close();
+			}
+		}
+		else {
+			RecordSet rs = client.query(null, stmt);
+			try {
+				while (rs.next()) {
+					++nrecs;
+				}
+			}
+			finally {
+				rs.close();
+			}
+		}
+		return nrecs;
+	}
+
+	public void close() {
+		client.close();
+	}
+}
@@ -0,0 +1,665 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.policy.ScanPolicy;
+
+/**
+ * A load generator for the Around query path.
+ *
+ * Queries are either synthetic, from a QueryMix over a sample of the
+ * loaded points, or replayed from a query log with their recorded
+ * spacing, sped up or slowed down by --speed.
+ *
+ * The load is open loop: every query has an intended start time, from
+ * --qps or from the log, and its latency is measured from then.  A
+ * stall therefore also charges the queries that should have started
+ * during it, instead of quietly issuing fewer (no coordinated
+ * omission).  Latencies are kept per query class, radius and category.
+ */
+public class GeoDriver {
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		String locbin;
+		String module;
+		String pointsFile;
+		int nsamples;
+		String replay;
+		double speed;		// 0 replays as fast as possible
+		int hotspots;
+		double zipf;
+		double spread;
+		String radii;
+		String categories;
+		long seed;
+		double qps;			// 0 is unthrottled
+		double duration;	// seconds
+		double warmup;		// seconds
+		int threads;
+		boolean standIn;
+		String record;
+		String jsonfile;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "yelp";
+			this.locbin = "loc";
+			this.module = "filter_by_category";
+			this.pointsFile = null;
+			this.nsamples = 100000;
+			this.replay = null;
+			this.speed = 1.0;
+			this.hotspots = 1000;
+			this.zipf = 1.0;
+			this.spread = 500.0;
+			this.radii = "300:0.5,2000:0.4,10000:0.1";
+			this.categories = null;
+			this.seed = 1;
+			this.qps = 100.0;
+			this.duration = 60.0;
+			this.warmup = 0.0;
+			this.threads = 64;
+			this.standIn = false;
+			this.record = null;
+			this.jsonfile = null;
+		}
+	}
+
+	/**
+	 * Keeps a uniform random sample of at most capacity points out of
+	 * however many are offered.
+	 */
+	private static class Reservoir {
+		final List<double[]> points = new ArrayList<double[]>();
+		final int capacity;
+		final Random rand;
+		long seen = 0;
+
+		Reservoir(int capacity, long seed) {
+			this.capacity = capacity;
+			this.rand = new Random(seed);
+		}
+
+		synchronized void offer(double lat, double lng) {
+			++seen;
+			if (points.size() < capacity) {
+				points.add(new double[] { lat, lng });
+			}
+			else {
+				long slot = (long) (rand.nextDouble() * seen);
+				if (slot < capacity) {
+					points.set((int) slot, new double[] { lat, lng });
+				}
+			}
+		}
+	}
+
+	// One JSON value per line with latitude and longitude fields, like
+	// the Yelp business file or the val bins.
+	private static List<double[]> samplePointsFile(Parameters params) throws IOException {
+		Reservoir sample = new Reservoir(params.nsamples, params.seed);
+		JsonParser parser = new JsonParser();
+		BufferedReader br = new BufferedReader(
+			new InputStreamReader(new FileInputStream(params.pointsFile), "UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0) {
+					continue;
+				}
+				JsonObject obj = parser.parse(line).getAsJsonObject();
+				sample.offer(obj.get("latitude").getAsDouble(),
+							 obj.get("longitude").getAsDouble());
+			}
+		}
+		finally {
+			br.close();
+		}
+		return sample.points;
+	}
+
+	// Scans the location bins of the set.
+	private static List<double[]> samplePointsScan(final Parameters params,
+												   AerospikeClient client) {
+		final Reservoir sample = new Reservoir(params.nsamples, params.seed);
+		ScanPolicy policy = new ScanPolicy();
+		client.scanAll(policy, params.namespace, params.set, new ScanCallback() {
+				public void scanCallback(Key key, Record record) throws AerospikeException {
+					String loc = record.getGeoJSON(params.locbin);
+					if (loc == null) {
+						return;
+					}
+					JsonElement coords = new JsonParser().parse(loc)
+						.getAsJsonObject().get("coordinates");
+					if (coords == null || !coords.isJsonArray()) {
+						return;
+					}
+					JsonArray arr = coords.getAsJsonArray();
+					if (arr.size() != 2 || !arr.get(0).isJsonPrimitive()) {
+						// Not a point, likely a region.
+						return;
+					}
+					sample.offer(arr.get(1).getAsDouble(), arr.get(0).getAsDouble());
+				}
+			}, params.locbin);
+		return sample.points;
+	}
+
+	private static List<Query> readLog(String path) throws IOException {
+		List<Query> log = new ArrayList<Query>();
+		BufferedReader br = new BufferedReader(
+			new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() != 0) {
+					log.add(Query.parse(line));
+				}
+			}
+		}
+		finally {
+			br.close();
+		}
+		if (log.isEmpty()) {
+			throw new IOException("empty query log: " + path);
+		}
+		// Offsets count from the first query.
+		long origin = log.get(0).offset;
+		for (int ii = 0; ii < log.size(); ++ii) {
+			Query qq = log.get(ii);
+			if (qq.offset < origin) {
+				throw new IOException("query log isn't in time order at line " + (ii + 1));
+			}
+			log.set(ii, new Query(qq.lat, qq.lng, qq.radius, qq.category,
+								  qq.offset - origin));
+		}
+		return log;
+	}
+
+	/**
+	 * The shared schedule.  Queries are numbered in issue order; query N
+	 * is the Nth of the log or of the mix, and is intended to start at
+	 * start + its offset.
+	 */
+	private static class Schedule {
+		final long start;
+		final long warmupEnd;
+		final long end;			// Long.MAX_VALUE for a replay
+		final long interval;	// synthetic nanoseconds between queries, 0 when unthrottled
+		final double speed;		// replay speed, 0 when unthrottled
+		final QueryMix mix;
+		final List<Query> log;
+		final AtomicLong next = new AtomicLong();
+
+		Schedule(Parameters params, QueryMix mix, List<Query> log) {
+			this.start = System.nanoTime();
+			this.warmupEnd = start + (long) (params.warmup * 1e9);
+			this.end = log != null
+				? Long.MAX_VALUE
+				: warmupEnd + (long) (params.duration * 1e9);
+			this.interval = params.qps > 0.0 ? (long) (1e9 / params.qps) : 0;
+			this.speed = params.speed;
+			this.mix = mix;
+			this.log = log;
+		}
+
+		boolean throttled() {
+			return log != null ? speed > 0.0 : interval > 0;
+		}
+
+		// The query numbered seq, or null when the log is done.
+		Query query(long seq) {
+			if (log != null) {
+				return seq < log.size() ? log.get((int) seq) : null;
+			}
+			return mix.next(seq, seq * interval);
+		}
+
+		long intended(Query query) {
+			return log != null
+				? start + (long) (query.offset / speed)
+				: start + query.offset;
+		}
+	}
+
+	private static class ClassStats {
+		final LatencyHistogram hist = new LatencyHistogram();
+		long errors = 0;
+		long records = 0;
+
+		void merge(ClassStats other) {
+			hist.merge(other.hist);
+			errors += other.errors;
+			records += other.records;
+		}
+	}
+
+	private static class QueryWorker implements Runnable {
+		private final Backend backend;
+		private final Schedule sched;
+		private final PrintStream recorder;
+		private final AtomicReference<Exception> failure;
+		final Map<String, ClassStats> stats = new TreeMap<String, ClassStats>();
+		long maxLag = 0;
+		long late = 0;
+		long measuredEnd = 0;
+		Exception lastError = null;
+
+		QueryWorker(Backend backend, Schedule sched, PrintStream recorder,
+					AtomicReference<Exception> failure) {
+			this.backend = backend;
+			this.sched = sched;
+			this.recorder = recorder;
+			this.failure = failure;
+		}
+
+		public void run() {
+			try {
+				while (failure.get() == null) {
+					long seq = sched.next.getAndIncrement();
+					Query query = sched.query(seq);
+					if (query == null) {
+						break;
+					}
+
+					long t0 = System.nanoTime();
+					long lag = 0;
+					if (sched.throttled()) {
+						long intended = sched.intended(query);
+						while (t0 < intended) {
+							LockSupport.parkNanos(intended - t0);
+							t0 = System.nanoTime();
+						}
+						// Charge any lateness to the query.
+						lag = t0 - intended;
+						t0 = intended;
+					}
+					if (t0 >= sched.end) {
+						break;
+					}
+					if (recorder != null) {
+						Query issued = new Query(query.lat, query.lng, query.radius,
+												 query.category, t0 - sched.start);
+						synchronized (recorder) {
+							recorder.println(issued.toJSON());
+						}
+					}
+
+					long nrecs = -1;
+					try {
+						nrecs = backend.query(query);
+					}
+					catch (Exception ex) {
+						lastError = ex;
+					}
+					long t1 = System.nanoTime();
+
+					if (t0 >= sched.warmupEnd) {
+						String cls = query.queryClass();
+						ClassStats cs = stats.get(cls);
+						if (cs == null) {
+							cs = new ClassStats();
+							stats.put(cls, cs);
+						}
+						if (nrecs < 0) {
+							++cs.errors;
+						}
+						else {
+							cs.records += nrecs;
+							cs.hist.record((t1 - t0) / 1000);
+						}
+						measuredEnd = Math.max(measuredEnd, t1);
+						maxLag = Math.max(maxLag, lag);
+						if (lag > 1000000) {
+							++late;
+						}
+					}
+				}
+			}
+			catch (Exception ex) {
+				failure.compareAndSet(null, ex);
+			}
+		}
+	}
+
+	private static void printStats(PrintStream out, String name, ClassStats cs) {
+		LatencyHistogram hh = cs.hist;
+		out.printf("%-24s %8d %6d %8.1f %8.3f %8.3f %8.3f %8.3f %8.3f %8.3f\n",
+				   name, hh.getCount(), cs.errors,
+				   hh.getCount() == 0 ? 0.0 : (double) cs.records / hh.getCount(),
+				   hh.getMeanMillis(), hh.percentileMillis(50), hh.percentileMillis(90),
+				   hh.percentileMillis(99), hh.percentileMillis(99.9), hh.getMaxMillis());
+	}
+
+	private static JsonObject statsJSON(String name, ClassStats cs) {
+		LatencyHistogram hh = cs.hist;
+		JsonObject obj = new JsonObject();
+		obj.addProperty("class", name);
+		obj.addProperty("queries", hh.getCount());
+		obj.addProperty("errors", cs.errors);
+		obj.addProperty("records", cs.records);
+		obj.addProperty("mean_ms", hh.getMeanMillis());
+		obj.addProperty("p50_ms", hh.percentileMillis(50));
+		obj.addProperty("p90_ms", hh.percentileMillis(90));
+		obj.addProperty("p99_ms", hh.percentileMillis(99));
+		obj.addProperty("p999_ms", hh.percentileMillis(99.9));
+		obj.addProperty("max_ms", hh.getMaxMillis());
+		return obj;
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + GeoDriver.class.getName() + " [<options>]";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: yelp)");
+		options.addOption("L", "locbin", true, "Indexed location bin to query (default: loc)");
+		options.addOption("m", "udf-module", true,
+						  "UDF module with apply_filter, for categories (default: filter_by_category)");
+		options.addOption("f", "points", true,
+						  "Sample points from this file of JSON lines with latitude and longitude "
+						  + "(default: scan the set)");
+		options.addOption("z", "num-samples", true, "Points to sample (default: 100000)");
+		options.addOption("R", "replay", true, "Replay this query log instead of generating queries");
+		options.addOption("x", "speed", true,
+						  "Replay speed, 2 is twice as fast, 0 as fast as possible (default: 1)");
+		options.addOption("H", "hotspots", true, "Number of hot spots (default: 1000)");
+		options.addOption("Z", "zipf", true, "Zipf exponent of hot spot popularity (default: 1.0)");
+		options.addOption("D", "spread", true,
+						  "Standard deviation of query centers around a hot spot in meters (default: 500)");
+		options.addOption("r", "radii", true,
+						  "Radius mix in meters (default: 300:0.5,2000:0.4,10000:0.1)");
+		options.addOption("c", "categories", true,
+						  "Category mix, - for no filter, eg. -:0.8,Bars:0.1,Restaurants:0.1 "
+						  + "(default: no filters)");
+		options.addOption("S", "seed", true, "Random seed (default: 1)");
+		options.addOption("q", "qps", true,
+						  "Target queries per second, 0 is unthrottled (default: 100)");
+		options.addOption("d", "duration", true, "Seconds to run (default: 60)");
+		options.addOption("w", "warmup", true,
+						  "Seconds of queries to run before recording (default: 0)");
+		options.addOption("t", "threads", true, "Query threads (default: 64)");
+		options.addOption("I", "stand-in", false,
+						  "Answer queries in process from the sampled points, without a cluster");
+		options.addOption("o", "record", true, "Write the issued queries to this query log");
+		options.addOption("j", "json", true, "Write the results as JSON to this file, - for stdout");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "yelp");
+		params.locbin = cl.getOptionValue("L", "loc");
+		params.module = cl.getOptionValue("m", "filter_by_category");
+		params.pointsFile = cl.getOptionValue("f");
+		params.nsamples = Integer.parseInt(cl.getOptionValue("z", "100000"));
+		params.replay = cl.getOptionValue("R");
+		params.speed = Double.parseDouble(cl.getOptionValue("x", "1"));
+		params.hotspots = Integer.parseInt(cl.getOptionValue("H", "1000"));
+		params.zipf = Double.parseDouble(cl.getOptionValue("Z", "1.0"));
+		params.spread = Double.parseDouble(cl.getOptionValue("D", "500"));
+		params.radii = cl.getOptionValue("r", params.radii);
+		params.categories = cl.getOptionValue("c");
+		params.seed = Long.parseLong(cl.getOptionValue("S", "1"));
+		params.qps = Double.parseDouble(cl.getOptionValue("q", "100"));
+		params.duration = Double.parseDouble(cl.getOptionValue("d", "60"));
+		params.warmup = Double.parseDouble(cl.getOptionValue("w", "0"));
+		params.threads = Integer.parseInt(cl.getOptionValue("t", "64"));
+		params.standIn = cl.hasOption("I");
+		params.record = cl.getOptionValue("o");
+		params.jsonfile = cl.getOptionValue("j");
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		if (cl.getArgs().length != 0) {
+			System.out.println("unrecognized command line arguments");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.standIn && params.pointsFile == null && params.replay == null) {
+			System.out.println("--stand-in needs --points or --replay");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.threads < 1 || params.nsamples < 1 || params.hotspots < 1
+			|| params.speed < 0.0 || params.qps < 0.0) {
+			throw new ParseException("threads, num-samples and hotspots must be positive, "
+									 + "speed and qps not negative");
+		}
+
+		return params;
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		AerospikeClient client = null;
+		if (!params.standIn) {
+			client = AerospikeBackend.connect(params.host, params.port, params.user,
+											  params.password, params.threads);
+		}
+
+		PrintStream recorder = null;
+		try {
+			List<Query> log = null;
+			List<double[]> points = null;
+			QueryMix mix = null;
+			if (params.replay != null) {
+				log = readLog(params.replay);
+				System.err.printf("replaying %d queries at %sx\n", log.size(),
+								  params.speed > 0.0 ? String.valueOf(params.speed) : "full ");
+			}
+			if (params.replay == null || (params.standIn && params.pointsFile != null)) {
+				points = params.pointsFile != null
+					? samplePointsFile(params)
+					: samplePointsScan(params, client);
+				System.err.printf("sampled %d points\n", points.size());
+			}
+			if (params.replay == null) {
+				mix = new QueryMix(points, params.hotspots, params.zipf, params.spread,
+								   params.radii, params.categories, params.seed);
+			}
+			if (params.standIn && points == null) {
+				// A replay without points: stand in with the query centers.
+				points = new ArrayList<double[]>();
+				for (Query qq : log) {
+					points.add(new double[] { qq.lat, qq.lng });
+				}
+			}
+
+			Backend backend = params.standIn
+				? new StandInBackend(points)
+				: new AerospikeBackend(client, params.namespace, params.set,
+									   params.locbin, params.module);
+			if (params.record != null) {
+				recorder = new PrintStream(new FileOutputStream(params.record), false, "UTF-8");
+			}
+
+			AtomicReference<Exception> failure = new AtomicReference<Exception>();
+			Schedule sched = new Schedule(params, mix, log);
+			QueryWorker[] workers = new QueryWorker[params.threads];
+			Thread[] threads = new Thread[params.threads];
+			for (int ii = 0; ii < params.threads; ++ii) {
+				workers[ii] = new QueryWorker(backend, sched, recorder, failure);
+				threads[ii] = new Thread(workers[ii]);
+				threads[ii].start();
+			}
+
+			Map<String, ClassStats> stats = new TreeMap<String, ClassStats>();
+			ClassStats all = new ClassStats();
+			long measuredEnd = sched.warmupEnd;
+			long maxLag = 0;
+			long late = 0;
+			Exception lastError = null;
+			for (int ii = 0; ii < params.threads; ++ii) {
+				threads[ii].join();
+				for (Map.Entry<String, ClassStats> ent : workers[ii].stats.entrySet()) {
+					ClassStats cs = stats.get(ent.getKey());
+					if (cs == null) {
+						cs = new ClassStats();
+						stats.put(ent.getKey(), cs);
+					}
+					cs.merge(ent.getValue());
+					all.merge(ent.getValue());
+				}
+				measuredEnd = Math.max(measuredEnd, workers[ii].measuredEnd);
+				maxLag = Math.max(maxLag, workers[ii].maxLag);
+				late += workers[ii].late;
+				if (workers[ii].lastError != null) {
+					lastError = workers[ii].lastError;
+				}
+			}
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+
+			double secs = (measuredEnd - sched.warmupEnd) / 1e9;
+			double qps = secs > 0.0 ? all.hist.getCount() / secs : 0.0;
+			System.out.printf("%-24s %8s %6s %8s %8s %8s %8s %8s %8s %8s\n",
+							  "class", "queries", "errors", "recs/q",
+							  "mean", "p50", "p90", "p99", "p99.9", "max");
+			for (Map.Entry<String, ClassStats> ent : stats.entrySet()) {
+				printStats(System.out, ent.getKey(), ent.getValue());
+			}
+			printStats(System.out, "all", all);
+			System.out.println("(latencies in milliseconds, from each query's intended start)");
+			System.out.printf("throughput %.1f queries/sec over %.3f seconds\n", qps, secs);
+			if (sched.throttled()) {
+				System.out.printf("max start lag %.3f ms, %d queries started over 1 ms late\n",
+								  maxLag / 1e6, late);
+				if (late > (all.hist.getCount() + all.errors) / 100) {
+					System.out.println("more than 1% started late: the driver is saturated, "
+									   + "add --threads or lower the rate");
+				}
+			}
+			if (lastError != null) {
+				System.out.println("last error: " + lastError.getMessage());
+			}
+
+			if (params.jsonfile != null) {
+				JsonObject result = new JsonObject();
+				JsonArray classes = new JsonArray();
+				for (Map.Entry<String, ClassStats> ent : stats.entrySet()) {
+					classes.add(statsJSON(ent.getKey(), ent.getValue()));
+				}
+				result.add("classes", classes);
+				result.add("all", statsJSON("all", all));
+				result.addProperty("seconds", secs);
+				result.addProperty("qps", qps);
+				result.addProperty("max_lag_ms", maxLag / 1e6);
+				result.addProperty("late", late);
+				PrintStream out = params.jsonfile.equals("-")
+					? System.out
+					: new PrintStream(new FileOutputStream(params.jsonfile));
+				out.println(result.toString());
+				out.flush();
+				if (out != System.out) {
+					out.close();
+				}
+			}
+		}
+		finally {
+			if (recorder != null) {
+				recorder.close();
+			}
+			if (client != null) {
+				client.close();
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
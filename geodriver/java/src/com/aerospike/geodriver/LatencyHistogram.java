@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+/**
+ * A log-linear histogram of latencies in microseconds.
+ *
+ * Values below 64 are counted exactly; above that every power of two is
+ * split into 32 buckets, so percentiles are within about 3%.  The mean
+ * and the maximum are exact.  Not synchronized: every thread records
+ * into its own histograms and they are merged at the end.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int LINEAR = 2 * SUB_COUNT;
+	private static final int NBUCKETS = LINEAR + (63 - (SUB_BITS + 1)) * SUB_COUNT;
+
+	private final long[] counts = new long[NBUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_COUNT - 1);
+		return LINEAR + (msb - SUB_BITS - 1) * SUB_COUNT + sub;
+	}
+
+	// The middle of a bucket's range.
+	private static long value(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int msb = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+		int sub = (index - LINEAR) % SUB_COUNT;
+		int shift = msb - SUB_BITS;
+		return ((long) (SUB_COUNT + sub) << shift) + (1L << (shift - 1));
+	}
+
+	public void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts[index(micros)]++;
+		count++;
+		sum += micros;
+		max = Math.max(max, micros);
+	}
+
+	public void merge(LatencyHistogram other) {
+		for (int ii = 0; ii < NBUCKETS; ++ii) {
+			counts[ii] += other.counts[ii];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMillis() {
+		return count == 0 ? 0.0 : sum / 1000.0 / count;
+	}
+
+	public double getMaxMillis() {
+		return max / 1000.0;
+	}
+
+	// eg. percentileMillis(99.9)
+	public double percentileMillis(double percentile) {
+		if (count == 0) {
+			return 0.0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int ii = 0; ii < NBUCKETS; ++ii) {
+			seen += counts[ii];
+			if (seen >= target) {
+				return Math.min(value(ii), max) / 1000.0;
+			}
+		}
+		return getMaxMillis();
+	}
+}
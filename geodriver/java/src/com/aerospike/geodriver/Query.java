@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * One circle query, as Around would issue it.
+ *
+ * In a query log every query is a line of JSON:
+ *
+ *   {"t": 12.031, "lat": 40.4484, "lng": -80.0024, "radius": 300,
+ *    "category": "Bars"}
+ *
+ * where t is the query's start in seconds from any fixed origin, and
+ * category is optional.
+ */
+public class Query {
+
+	public final double lat;
+	public final double lng;
+	public final double radius;
+	public final String category;	// null for no filter
+	public final long offset;		// nanoseconds since the first query
+
+	public Query(double lat, double lng, double radius, String category, long offset) {
+		this.lat = lat;
+		this.lng = lng;
+		this.radius = radius;
+		this.category = category;
+		this.offset = offset;
+	}
+
+	// The class a query's latency is reported under, eg. "300m Bars".
+	public String queryClass() {
+		String cls = String.format("%.0fm", radius);
+		return category == null ? cls : cls + " " + category;
+	}
+
+	public String region() {
+		return String.format("{ \"type\": \"AeroCircle\", "
+							 + "\"coordinates\": [[%.8f, %.8f], %f] }",
+							 lng, lat, radius);
+	}
+
+	public String toJSON() {
+		JsonObject obj = new JsonObject();
+		obj.addProperty("t", offset / 1e9);
+		obj.addProperty("lat", lat);
+		obj.addProperty("lng", lng);
+		obj.addProperty("radius", radius);
+		if (category != null) {
+			obj.addProperty("category", category);
+		}
+		return obj.toString();
+	}
+
+	// Parses a log line; the offset is the raw t, in nanoseconds.
+	public static Query parse(String line) {
+		JsonObject obj = new JsonParser().parse(line).getAsJsonObject();
+		JsonElement category = obj.get("category");
+		return new Query(obj.get("lat").getAsDouble(),
+						 obj.get("lng").getAsDouble(),
+						 obj.get("radius").getAsDouble(),
+						 category == null || category.isJsonNull()
+						 ? null : category.getAsString(),
+						 (long) (obj.get("t").getAsDouble() * 1e9));
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic circle queries that follow the loaded data.
+ *
+ * Hot spots are drawn from a sample of the loaded points, so dense areas
+ * get more of them, and ranked by a Zipf distribution: the first is the
+ * most popular, the second half as popular for an exponent of 1, and so
+ * on.  Each query is centered near a hot spot, with a normal offset of
+ * spread meters, and its radius and category are drawn from weighted
+ * mixes.
+ *
+ * Query N is a function of the seed and N only, so runs are repeatable
+ * however the queries are spread over threads.
+ */
+public class QueryMix {
+
+	private static final double EARTH_RADIUS = 6371008.8;
+
+	/**
+	 * Weighted choices parsed from "300:0.6,2000:0.3,10000:0.1".  A
+	 * missing weight is 1.
+	 */
+	public static class Weighted {
+		final String[] values;
+		final double[] cdf;
+
+		Weighted(String spec) {
+			String[] items = spec.split(",");
+			values = new String[items.length];
+			cdf = new double[items.length];
+			double total = 0.0;
+			for (int ii = 0; ii < items.length; ++ii) {
+				String item = items[ii].trim();
+				int colon = item.lastIndexOf(':');
+				double weight = 1.0;
+				if (colon >= 0) {
+					weight = Double.parseDouble(item.substring(colon + 1));
+					item = item.substring(0, colon);
+				}
+				if (weight < 0.0 || item.length() == 0) {
+					throw new IllegalArgumentException("bad mix item: " + items[ii]);
+				}
+				values[ii] = item;
+				total += weight;
+				cdf[ii] = total;
+			}
+			if (total <= 0.0) {
+				throw new IllegalArgumentException("mix has no weight: " + spec);
+			}
+			for (int ii = 0; ii < cdf.length; ++ii) {
+				cdf[ii] /= total;
+			}
+		}
+
+		String pick(Random rand) {
+			return values[search(cdf, rand.nextDouble())];
+		}
+	}
+
+	private final double[] hotLats;
+	private final double[] hotLngs;
+	private final double[] zipfCdf;
+	private final double spread;
+	private final Weighted radii;
+	private final Weighted categories;	// null for no filters
+	private final long seed;
+
+	/**
+	 * @param points		sampled { lat, lng } pairs
+	 * @param hotspots		number of hot spots
+	 * @param zipf			Zipf exponent, 0 makes them all equally hot
+	 * @param spread		standard deviation of the offset from a hot
+	 *						spot, in meters
+	 * @param radii			radius mix, eg. "300:0.6,2000:0.4"
+	 * @param categories	category mix, "-" is no filter, or null for
+	 *						no filters at all
+	 */
+	public QueryMix(List<double[]> points, int hotspots, double zipf, double spread,
+					String radii, String categories, long seed) {
+		if (points.isEmpty()) {
+			throw new IllegalArgumentException("no points to place queries around");
+		}
+		this.seed = seed;
+		this.spread = spread;
+		this.radii = new Weighted(radii);
+		for (String radius : this.radii.values) {
+			Double.parseDouble(radius);
+		}
+		this.categories = categories == null ? null : new Weighted(categories);
+
+		Random rand = new Random(seed);
+		int nhot = Math.min(hotspots, points.size());
+		List<double[]> shuffled = new ArrayList<double[]>(points);
+		hotLats = new double[nhot];
+		hotLngs = new double[nhot];
+		for (int ii = 0; ii < nhot; ++ii) {
+			// Partial Fisher-Yates: no point is picked twice.
+			int jj = ii + rand.nextInt(shuffled.size() - ii);
+			double[] pt = shuffled.get(jj);
+			shuffled.set(jj, shuffled.get(ii));
+			hotLats[ii] = pt[0];
+			hotLngs[ii] = pt[1];
+		}
+
+		zipfCdf = new double[nhot];
+		double total = 0.0;
+		for (int ii = 0; ii < nhot; ++ii) {
+			total += 1.0 / Math.pow(ii + 1, zipf);
+			zipfCdf[ii] = total;
+		}
+		for (int ii = 0; ii < nhot; ++ii) {
+			zipfCdf[ii] /= total;
+		}
+	}
+
+	public Query next(long seq, long offset) {
+		Random rand = new Random(seed * 0x9e3779b97f4a7c15L + seq);
+		int hot = search(zipfCdf, rand.nextDouble());
+		double dnorth = rand.nextGaussian() * spread;
+		double deast = rand.nextGaussian() * spread;
+		double lat = hotLats[hot] + Math.toDegrees(dnorth / EARTH_RADIUS);
+		double lng = hotLngs[hot] + Math.toDegrees(
+			deast / (EARTH_RADIUS * Math.max(0.01, Math.cos(Math.toRadians(hotLats[hot])))));
+		lat = Math.max(-90.0, Math.min(90.0, lat));
+		if (lng > 180.0) {
+			lng -= 360.0;
+		}
+		else if (lng < -180.0) {
+			lng += 360.0;
+		}
+		double radius = Double.parseDouble(radii.pick(rand));
+		String category = null;
+		if (categories != null) {
+			category = categories.pick(rand);
+			if (category.equals("-")) {
+				category = null;
+			}
+		}
+		return new Query(lat, lng, radius, category, offset);
+	}
+
+	// The first index whose cumulative weight covers uu.
+	private static int search(double[] cdf, double uu) {
+		int ii = Arrays.binarySearch(cdf, uu);
+		if (ii < 0) {
+			ii = -ii - 1;
+		}
+		return Math.min(ii, cdf.length - 1);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geodriver;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An in-process stand-in for the cluster, answering circle queries from
+ * the sampled points.  It has no network, so a run against it measures
+ * the driver's own overhead and shows the rate one driver can sustain.
+ *
+ * Points are sorted by latitude; a query scans the latitude band of its
+ * circle.  Categories aren't known here, so filters are ignored.
+ */
+public class StandInBackend implements Backend {
+
+	private static final double EARTH_RADIUS = 6371008.8;
+
+	private final double[] lats;
+	private final double[] lngs;
+
+	public StandInBackend(List<double[]> points) {
+		double[][] sorted = points.toArray(new double[points.size()][]);
+		Arrays.sort(sorted, new Comparator<double[]>() {
+				public int compare(double[] aa, double[] bb) {
+					return Double.compare(aa[0], bb[0]);
+				}
+			});
+		lats = new double[sorted.length];
+		lngs = new double[sorted.length];
+		for (int ii = 0; ii < sorted.length; ++ii) {
+			lats[ii] = sorted[ii][0];
+			lngs[ii] = sorted[ii][1];
+		}
+	}
+
+	public long query(Query query) {
+		double dlat = Math.toDegrees(query.radius / EARTH_RADIUS);
+		int first = lowerBound(query.lat - dlat);
+		double north = query.lat + dlat;
+		double rlat0 = Math.toRadians(query.lat);
+		double coslat0 = Math.cos(rlat0);
+		long nrecs = 0;
+		for (int ii = first; ii < lats.length && lats[ii] <= north; ++ii) {
+			double rlat1 = Math.toRadians(lats[ii]);
+			double sdlat = Math.sin((rlat1 - rlat0) / 2);
+			double sdlng = Math.sin(Math.toRadians(lngs[ii] - query.lng) / 2);
+			double aa = sdlat * sdlat + coslat0 * Math.cos(rlat1) * sdlng * sdlng;
+			if (2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(aa))) <= query.radius) {
+				++nrecs;
+			}
+		}
+		return nrecs;
+	}
+
+	private int lowerBound(double lat) {
+		int lo = 0;
+		int hi = lats.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lats[mid] < lat) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Info;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.Statement;
+
+/**
+ * The proxy's data in an Aerospike cluster, through one shared client.
+ * Queries use the synchronous API and stream from the RecordSet; the
+ * puts of a batch are issued together with the async API.
+ */
+public class AerospikeBackend implements Backend {
+
+	private final AsyncClient client;
+	private final String namespace;
+	private final String set;
+	private final WritePolicy writePolicy;
+
+	public AerospikeBackend(String host, int port, String user, String password,
+							String namespace, String set) {
+		AsyncClientPolicy clipolicy = new AsyncClientPolicy();
+		clipolicy.user = user;
+		clipolicy.password = password;
+		clipolicy.failIfNotConnected = true;
+		this.client = new AsyncClient(clipolicy, host, port);
+		this.namespace = namespace;
+		this.set = set;
+		this.writePolicy = new WritePolicy();
+		this.writePolicy.timeout = 10 * 1000;
+		this.writePolicy.maxRetries = 10;
+
+		// Touch every node so the first requests don't pay for the
+		// connections.
+		for (Node node : client.getNodes()) {
+			Info.request(node, "build");
+		}
+	}
+
+	public void query(String region, String bin, RecordSink sink) throws Exception {
+		Statement stmt = new Statement();
+		stmt.setNamespace(namespace);
+		stmt.setSetName(set);
+		stmt.setBinNames(bin);
+		stmt.setFilters(Filter.geoWithin(LOCBIN, region));
+
+		RecordSet rs = client.query(null, stmt);
+		try {
+			while (rs.next()) {
+				String val = rs.getRecord().getString(bin);
+				if (val != null) {
+					sink.record(val);
+				}
+			}
+		}
+		finally {
+			rs.close();
+		}
+	}
+
+	public Exception[] put(List<GeoPut> puts) {
+		final Exception[] errors = new Exception[puts.size()];
+		final CountDownLatch latch = new CountDownLatch(puts.size());
+		for (int ii = 0; ii < puts.size(); ++ii) {
+			GeoPut put = puts.get(ii);
+			final int slot = ii;
+			Key key = makeKey(put.set, put.key);
+			try {
+				client.put(writePolicy, new WriteListener() {
+						public void onSuccess(Key key) {
+							latch.countDown();
+						}
+						public void onFailure(AerospikeException ex) {
+							errors[slot] = ex;
+							latch.countDown();
+						}
+					}, key, Bin.asGeoJSON(put.bin, put.geojson));
+			}
+			catch (AerospikeException ex) {
+				errors[slot] = ex;
+				latch.countDown();
+			}
+		}
+		try {
+			latch.await();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			for (int ii = 0; ii < errors.length; ++ii) {
+				if (errors[ii] == null) {
+					errors[ii] = ex;
+				}
+			}
+		}
+		return errors;
+	}
+
+	public String get(String set, Object key, String bin) {
+		Record record = client.get(null, makeKey(set, key), bin);
+		return record == null ? null : record.getGeoJSON(bin);
+	}
+
+	public void close() {
+		client.close();
+	}
+
+	private Key makeKey(String set, Object key) {
+		return key instanceof Long
+			? new Key(namespace, set, (Long) key)
+			: new Key(namespace, set, (String) key);
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where the proxy's data lives: Aerospike, or a stand-in for local
+ * testing.
+ */
+public interface Backend {
+
+	// A record's JSON value, and its location as GeoJSON.
+	String VALBIN = "val";
+	String LOCBIN = "loc";
+
+	interface RecordSink {
+		// Called with the bin of each record, as it arrives.
+		void record(String val) throws IOException;
+	}
+
+	/**
+	 * Streams a bin, VALBIN or LOCBIN, of the records whose location is
+	 * within the GeoJSON region.
+	 */
+	void query(String region, String bin, RecordSink sink) throws Exception;
+
+	/**
+	 * Writes all the puts and waits for them.  Returns an error per put,
+	 * null where the put succeeded.
+	 */
+	Exception[] put(List<GeoPut> puts);
+
+	// The GeoJSON in a bin of a record, or null if there is none.
+	String get(String set, Object key, String bin) throws Exception;
+
+	void close();
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Java version of the Python geoproxy: the same /query, /geoput and
+ * /web/ endpoints, so the html pages work unchanged.
+ *
+ * It uses the JDK's HTTP server, whose connections are handled by a
+ * selector; requests run on a fixed pool.  /query results are streamed
+ * as a chunked JSON array while the records arrive, and concurrent
+ * /geoput requests are coalesced by a PutBatcher.  /tiles/ serves
+ * cached map tiles, which the puts invalidate.
+ */
+public class GeoProxy {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// How long a /geoput waits for its batch before giving up.
+	private static final long PUT_TIMEOUT_SECONDS = 30;
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		int proxyPort;
+		String webdir;
+		int threads;
+		int maxBatch;
+		long tileCacheBytes;
+		int clusterZoom;
+		int tileMaxAge;
+		boolean memory;
+		String seed;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "osm";
+			this.proxyPort = 8888;
+			this.webdir = "html";
+			this.threads = 64;
+			this.maxBatch = 256;
+			this.tileCacheBytes = 64L << 20;
+			this.clusterZoom = 12;
+			this.tileMaxAge = 60;
+			this.memory = false;
+			this.seed = null;
+		}
+	}
+
+	private final Backend backend;
+	private final String set;
+	private final PutBatcher batcher;
+	private final TileCache tiles;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public GeoProxy(Backend backend, String set, int proxyPort, String webdir,
+					int threads, int maxBatch, long tileCacheBytes,
+					int clusterZoom, int tileMaxAge) throws IOException {
+		this.backend = backend;
+		this.set = set;
+		this.batcher = new PutBatcher(backend, maxBatch);
+		this.tiles = new TileCache(tileCacheBytes);
+		this.server = HttpServer.create(new InetSocketAddress(proxyPort), 0);
+		this.executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext("/query", new QueryHandler());
+		server.createContext("/geoput", new GeoPutHandler());
+		server.createContext("/web/", new StaticHandler(new File(webdir)));
+		server.createContext("/tiles/",
+							 new TileHandler(backend, tiles, clusterZoom, tileMaxAge));
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	// The port it listens on, which the OS picks when given 0.
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+		batcher.close();
+		backend.close();
+	}
+
+	static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int nn;
+		while ((nn = in.read(chunk)) > 0) {
+			buf.write(chunk, 0, nn);
+		}
+		return new String(buf.toByteArray(), UTF8);
+	}
+
+	static void respond(HttpExchange exchange, int status, String contentType,
+						byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	static void error(HttpExchange exchange, int status, String message)
+		throws IOException {
+		respond(exchange, status, "text/plain; charset=utf-8",
+				(message == null ? "" : message).getBytes(UTF8));
+	}
+
+	/**
+	 * Writes records as a JSON array.  The headers go out with the first
+	 * record, so a query that fails before any can still get an error
+	 * status; after that the response is chunked.
+	 */
+	static class JsonArrayStream implements Backend.RecordSink {
+		private final HttpExchange exchange;
+		private OutputStream out = null;
+
+		JsonArrayStream(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		boolean started() {
+			return out != null;
+		}
+
+		public void record(String val) throws IOException {
+			if (out == null) {
+				begin();
+				out.write('[');
+			}
+			else {
+				out.write(", ".getBytes(UTF8));
+			}
+			out.write(val.getBytes(UTF8));
+			out.flush();
+		}
+
+		private void begin() throws IOException {
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, 0);
+			out = exchange.getResponseBody();
+		}
+
+		void finish() throws IOException {
+			if (out == null) {
+				begin();
+				out.write('[');
+			}
+			out.write(']');
+			out.close();
+		}
+	}
+
+	class QueryHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					error(exchange, 405, "POST a GeoJSON region");
+					return;
+				}
+				String region = readBody(exchange);
+				JsonArrayStream stream = new JsonArrayStream(exchange);
+				try {
+					backend.query(region, Backend.VALBIN, stream);
+				}
+				catch (Exception ex) {
+					if (stream.started()) {
+						// Too late for a status, cut the response short.
+						throw new IOException(ex);
+					}
+					error(exchange, 500, ex.getMessage());
+					return;
+				}
+				stream.finish();
+			}
+			finally {
+				exchange.close();
+			}
+		}
+	}
+
+	class GeoPutHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					error(exchange, 405, "POST a put command");
+					return;
+				}
+				GeoPut put;
+				try {
+					put = GeoPut.parse(readBody(exchange));
+				}
+				catch (RuntimeException ex) {
+					error(exchange, 400, "bad put command: " + ex.getMessage());
+					return;
+				}
+				boolean isLocation = put.set.equals(set) && put.bin.equals(Backend.LOCBIN);
+				String old = null;
+				try {
+					if (isLocation) {
+						// A move must clear the tiles it leaves, too.
+						old = backend.get(put.set, put.key, put.bin);
+					}
+					batcher.submit(put).await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				}
+				catch (Exception ex) {
+					error(exchange, 500, ex.getMessage());
+					return;
+				}
+				if (isLocation) {
+					invalidate(old);
+					invalidate(put.geojson);
+				}
+				respond(exchange, 200, "text/html; charset=UTF-8", new byte[0]);
+			}
+			finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private void invalidate(String geojson) {
+		if (geojson == null) {
+			return;
+		}
+		try {
+			tiles.invalidate(geojson);
+		}
+		catch (RuntimeException ex) {
+			// Not a geometry we can place; drop every tile.
+			tiles.invalidateBox(-90.0, -180.0, 90.0, 180.0);
+		}
+	}
+
+	static class StaticHandler implements HttpHandler {
+		private final File root;
+
+		StaticHandler(File root) throws IOException {
+			this.root = root.getCanonicalFile();
+		}
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String path = exchange.getRequestURI().getPath().substring("/web/".length());
+				File file = new File(root, path).getCanonicalFile();
+				if (!file.getPath().startsWith(root.getPath() + File.separator)
+					|| !file.isFile()) {
+					error(exchange, 404, "Not Found");
+					return;
+				}
+				byte[] body = new byte[(int) file.length()];
+				FileInputStream in = new FileInputStream(file);
+				try {
+					int off = 0;
+					int nn;
+					while (off < body.length
+						   && (nn = in.read(body, off, body.length - off)) > 0) {
+						off += nn;
+					}
+				}
+				finally {
+					in.close();
+				}
+				respond(exchange, 200, contentType(file.getName()), body);
+			}
+			finally {
+				exchange.close();
+			}
+		}
+
+		private static String contentType(String name) {
+			if (name.endsWith(".html")) {
+				return "text/html; charset=UTF-8";
+			}
+			if (name.endsWith(".js")) {
+				return "application/javascript";
+			}
+			if (name.endsWith(".css")) {
+				return "text/css";
+			}
+			if (name.endsWith(".json")) {
+				return "application/json";
+			}
+			return "application/octet-stream";
+		}
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + GeoProxy.class.getName() + " [<options>]";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: osm)");
+		options.addOption("x", "proxy-port", true, "Proxy listens on port (default: 8888)");
+		options.addOption("w", "web", true, "Directory served under /web/ (default: html)");
+		options.addOption("t", "threads", true, "Request threads (default: 64)");
+		options.addOption("b", "batch", true, "Most puts written as one batch (default: 256)");
+		options.addOption("c", "tile-cache", true, "Tile cache size in MB (default: 64)");
+		options.addOption("z", "cluster-zoom", true,
+						  "Below this zoom tiles have clusters, not records (default: 12)");
+		options.addOption("a", "tile-max-age", true,
+						  "Seconds browsers and CDNs may cache tiles (default: 60)");
+		options.addOption("m", "memory", false,
+						  "Keep records in memory instead of a cluster, for testing");
+		options.addOption("S", "seed", true,
+						  "With --memory, load one JSON value per line from this file");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "osm");
+		params.proxyPort = Integer.parseInt(cl.getOptionValue("x", "8888"));
+		params.webdir = cl.getOptionValue("w", "html");
+		params.threads = Integer.parseInt(cl.getOptionValue("t", "64"));
+		params.maxBatch = Integer.parseInt(cl.getOptionValue("b", "256"));
+		params.tileCacheBytes = Long.parseLong(cl.getOptionValue("c", "64")) << 20;
+		params.clusterZoom = Integer.parseInt(cl.getOptionValue("z", "12"));
+		params.tileMaxAge = Integer.parseInt(cl.getOptionValue("a", "60"));
+		params.memory = cl.hasOption("m");
+		params.seed = cl.getOptionValue("S");
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		if (cl.getArgs().length != 0) {
+			System.out.println("unrecognized command line arguments");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.seed != null && !params.memory) {
+			throw new ParseException("--seed needs --memory");
+		}
+
+		return params;
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		Backend backend;
+		if (params.memory) {
+			MemoryBackend mb = new MemoryBackend(params.set);
+			if (params.seed != null) {
+				mb.seed(params.seed);
+			}
+			backend = mb;
+		}
+		else {
+			backend = new AerospikeBackend(params.host, params.port,
+										   params.user, params.password,
+										   params.namespace, params.set);
+		}
+
+		GeoProxy proxy = new GeoProxy(backend, params.set, params.proxyPort,
+									  params.webdir, params.threads, params.maxBatch,
+									  params.tileCacheBytes, params.clusterZoom,
+									  params.tileMaxAge);
+		proxy.start();
+		System.err.println("listening on port " + params.proxyPort);
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * One /geoput request: a GeoJSON value for a bin of a record.
+ */
+public class GeoPut {
+
+	public final String set;
+	public final Object key;		// String or Long
+	public final String bin;
+	public final String geojson;
+
+	public GeoPut(String set, Object key, String bin, String geojson) {
+		this.set = set;
+		this.key = key;
+		this.bin = bin;
+		this.geojson = geojson;
+	}
+
+	/**
+	 * Parses a request body like
+	 * { "set": "foo", "key": "nltq0v3ky", "bin": "loc", "val": { ... } }
+	 */
+	public static GeoPut parse(String body) {
+		JsonObject cmd = new JsonParser().parse(body).getAsJsonObject();
+		JsonElement val = cmd.get("val");
+		if (val == null || !val.isJsonObject()) {
+			throw new IllegalArgumentException("val must be a GeoJSON object");
+		}
+		return new GeoPut(cmd.get("set").getAsString(),
+						  parseKey(cmd.get("key").getAsJsonPrimitive()),
+						  cmd.get("bin").getAsString(),
+						  val.toString());
+	}
+
+	private static Object parseKey(JsonPrimitive key) {
+		if (key.isNumber()) {
+			double dd = key.getAsDouble();
+			if (dd == Math.rint(dd)) {
+				return key.getAsLong();
+			}
+		}
+		return key.getAsString();
+	}
+
+	// Puts with the same id write the same bin, so only the last counts.
+	public String id() {
+		return set + '\0' + (key instanceof Long ? "L" : "S") + key + '\0' + bin;
+	}
+}
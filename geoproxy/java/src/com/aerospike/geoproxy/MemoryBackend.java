@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A stand-in backend that keeps records in memory, for running the
+ * proxy without a cluster.
+ *
+ * Records can be seeded from a file with one JSON value per line, like
+ * the val bins the loaders write; its latitude and longitude fields
+ * become the loc bin.  Queries support the AeroCircle and Polygon
+ * regions the pages send and are answered by a linear scan.
+ */
+public class MemoryBackend implements Backend {
+
+	private static final double EARTH_RADIUS = 6371008.8;
+
+	private final String set;
+	// set + key -> bin -> value
+	private final Map<String, Map<String, String>> records =
+		new ConcurrentHashMap<String, Map<String, String>>();
+
+	public MemoryBackend(String set) {
+		this.set = set;
+	}
+
+	public void seed(String path) throws IOException {
+		BufferedReader br = new BufferedReader(
+			new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		try {
+			JsonParser parser = new JsonParser();
+			String line;
+			int nn = 0;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0) {
+					continue;
+				}
+				JsonObject obj = parser.parse(line).getAsJsonObject();
+				double lat = obj.get("latitude").getAsDouble();
+				double lng = obj.get("longitude").getAsDouble();
+				Map<String, String> bins = new ConcurrentHashMap<String, String>();
+				bins.put(VALBIN, line);
+				bins.put(LOCBIN, "{\"type\": \"Point\", \"coordinates\": ["
+						 + lng + ", " + lat + "]}");
+				records.put(set + '\0' + "seed" + nn++, bins);
+			}
+		}
+		finally {
+			br.close();
+		}
+	}
+
+	public void query(String region, String bin, RecordSink sink) throws Exception {
+		Region rgn = Region.parse(region);
+		String prefix = set + '\0';
+		for (Map.Entry<String, Map<String, String>> ent : records.entrySet()) {
+			if (!ent.getKey().startsWith(prefix)) {
+				continue;
+			}
+			String val = ent.getValue().get(bin);
+			String loc = ent.getValue().get(LOCBIN);
+			if (val == null || loc == null) {
+				continue;
+			}
+			double[] lnglat = parsePoint(loc);
+			if (lnglat != null && rgn.contains(lnglat[0], lnglat[1])) {
+				sink.record(val);
+			}
+		}
+	}
+
+	public Exception[] put(List<GeoPut> puts) {
+		Exception[] errors = new Exception[puts.size()];
+		for (int ii = 0; ii < puts.size(); ++ii) {
+			GeoPut put = puts.get(ii);
+			String id = put.set + '\0' + put.key;
+			Map<String, String> bins = records.get(id);
+			if (bins == null) {
+				bins = new ConcurrentHashMap<String, String>();
+				records.put(id, bins);
+			}
+			bins.put(put.bin, put.geojson);
+		}
+		return errors;
+	}
+
+	public String get(String set, Object key, String bin) {
+		Map<String, String> bins = records.get(set + '\0' + key);
+		return bins == null ? null : bins.get(bin);
+	}
+
+	public void close() {
+	}
+
+	private static double[] parsePoint(String geojson) {
+		JsonObject obj = new JsonParser().parse(geojson).getAsJsonObject();
+		if (!"Point".equals(obj.get("type").getAsString())) {
+			return null;
+		}
+		JsonArray coords = obj.getAsJsonArray("coordinates");
+		return new double[] { coords.get(0).getAsDouble(),
+							  coords.get(1).getAsDouble() };
+	}
+
+	static double distance(double lng0, double lat0, double lng1, double lat1) {
+		double rlat0 = Math.toRadians(lat0);
+		double rlat1 = Math.toRadians(lat1);
+		double sdlat = Math.sin((rlat1 - rlat0) / 2);
+		double sdlng = Math.sin(Math.toRadians(lng1 - lng0) / 2);
+		double aa = sdlat * sdlat + Math.cos(rlat0) * Math.cos(rlat1) * sdlng * sdlng;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(aa)));
+	}
+
+	/**
+	 * A query region: an AeroCircle or the outer ring of a Polygon.
+	 */
+	static abstract class Region {
+		abstract boolean contains(double lng, double lat);
+
+		static Region parse(String geojson) {
+			JsonObject obj = new JsonParser().parse(geojson).getAsJsonObject();
+			String type = obj.get("type").getAsString();
+			JsonArray coords = obj.getAsJsonArray("coordinates");
+			if (type.equals("AeroCircle")) {
+				JsonArray center = coords.get(0).getAsJsonArray();
+				final double clng = center.get(0).getAsDouble();
+				final double clat = center.get(1).getAsDouble();
+				final double radius = coords.get(1).getAsDouble();
+				return new Region() {
+					boolean contains(double lng, double lat) {
+						return distance(clng, clat, lng, lat) <= radius;
+					}
+				};
+			}
+			if (type.equals("Polygon")) {
+				JsonArray ring = coords.get(0).getAsJsonArray();
+				final List<double[]> pts = new ArrayList<double[]>();
+				for (int ii = 0; ii < ring.size(); ++ii) {
+					JsonArray pt = ring.get(ii).getAsJsonArray();
+					pts.add(new double[] { pt.get(0).getAsDouble(),
+										   pt.get(1).getAsDouble() });
+				}
+				return new Region() {
+					// Even-odd ray casting; fine away from the poles
+					// and the antimeridian.
+					boolean contains(double lng, double lat) {
+						boolean inside = false;
+						for (int ii = 0, jj = pts.size() - 1; ii < pts.size(); jj = ii++) {
+							double[] pi = pts.get(ii);
+							double[] pj = pts.get(jj);
+							if ((pi[1] > lat) != (pj[1] > lat)
+								&& lng < (pj[0] - pi[0]) * (lat - pi[1])
+								/ (pj[1] - pi[1]) + pi[0]) {
+								inside = !inside;
+							}
+						}
+						return inside;
+					}
+				};
+			}
+			throw new IllegalArgumentException("unsupported region type: " + type);
+		}
+	}
+}
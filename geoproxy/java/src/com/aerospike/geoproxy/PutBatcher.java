@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent /geoput requests into batches.
+ *
+ * A single writer thread takes whatever has queued up while the
+ * previous batch was being written, so batches grow with the load and
+ * a lone request isn't delayed.  Puts to the same bin of the same
+ * record within a batch collapse into the last one.
+ *
+ * Once closed it takes no more puts, and those still queued fail.
+ */
+public class PutBatcher implements Runnable {
+
+	public static class Pending {
+		final GeoPut put;
+		private boolean done = false;
+		private Exception error = null;
+
+		Pending(GeoPut put) {
+			this.put = put;
+		}
+
+		synchronized void complete(Exception error) {
+			this.error = error;
+			this.done = true;
+			notifyAll();
+		}
+
+		// Waits for the put to be written, throws if it failed or took too long.
+		public synchronized void await(long timeout, TimeUnit unit) throws Exception {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while (!done) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0) {
+					throw new TimeoutException("put not written within "
+											   + unit.toMillis(timeout) + " ms");
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	private final Backend backend;
+	private final int maxBatch;
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+	private final Thread thread;
+	private boolean running = true;
+
+	public PutBatcher(Backend backend, int maxBatch) {
+		this.backend = backend;
+		this.maxBatch = maxBatch;
+		this.thread = new Thread(this, "put-batcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public synchronized Pending submit(GeoPut put) {
+		if (!running) {
+			throw new IllegalStateException("put batcher is closed");
+		}
+		Pending pending = new Pending(put);
+		queue.add(pending);
+		return pending;
+	}
+
+	private synchronized boolean isRunning() {
+		return running;
+	}
+
+	public void run() {
+		List<Pending> batch = new ArrayList<Pending>();
+		while (isRunning()) {
+			try {
+				batch.add(queue.take());
+			}
+			catch (InterruptedException ex) {
+				continue;
+			}
+			queue.drainTo(batch, maxBatch - 1);
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	private void write(List<Pending> batch) {
+		// Later puts of the same bin replace earlier ones.
+		Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+		List<GeoPut> puts = new ArrayList<GeoPut>();
+		int[] slotOf = new int[batch.size()];
+		for (int ii = 0; ii < batch.size(); ++ii) {
+			GeoPut put = batch.get(ii).put;
+			Integer slot = slots.get(put.id());
+			if (slot == null) {
+				slot = puts.size();
+				slots.put(put.id(), slot);
+				puts.add(put);
+			}
+			else {
+				puts.set(slot, put);
+			}
+			slotOf[ii] = slot;
+		}
+
+		Exception[] errors;
+		try {
+			errors = backend.put(puts);
+		}
+		catch (RuntimeException ex) {
+			errors = new Exception[puts.size()];
+			for (int ii = 0; ii < errors.length; ++ii) {
+				errors[ii] = ex;
+			}
+		}
+		for (int ii = 0; ii < batch.size(); ++ii) {
+			batch.get(ii).complete(errors[slotOf[ii]]);
+		}
+	}
+
+	// Stops the writer and fails the puts it didn't get to.
+	public void close() {
+		synchronized (this) {
+			running = false;
+		}
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		List<Pending> left = new ArrayList<Pending>();
+		queue.drainTo(left);
+		Exception closed = new IllegalStateException("put batcher is closed");
+		for (Pending pending : left) {
+			pending.complete(closed);
+		}
+	}
+}
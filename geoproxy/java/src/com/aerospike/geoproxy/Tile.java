@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A slippy-map (Web Mercator) tile, z/x/y as in the usual tile URLs.
+ */
+public class Tile {
+
+	public static final int MAX_ZOOM = 22;
+	public static final double MAX_LAT = 85.0511287798;
+
+	// The server joins polygon vertices with great circles, which bow
+	// away from a parallel the farther apart they are.
+	private static final double MAX_EDGE_DEGREES = 10.0;
+	private static final double MAX_POLYGON_DEGREES = 90.0;
+
+	public final int z;
+	public final int x;
+	public final int y;
+
+	public Tile(int z, int x, int y) {
+		if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+			throw new IllegalArgumentException("no such tile: " + z + "/" + x + "/" + y);
+		}
+		this.z = z;
+		this.x = x;
+		this.y = y;
+	}
+
+	// The tile containing a point at a zoom level.
+	public static Tile containing(int z, double lat, double lng) {
+		int nn = 1 << z;
+		int tx = (int) Math.floor(tileX(z, lng));
+		int ty = (int) Math.floor(tileY(z, lat));
+		return new Tile(z, Math.max(0, Math.min(nn - 1, tx)),
+						Math.max(0, Math.min(nn - 1, ty)));
+	}
+
+	// Fractional tile coordinates.
+	public static double tileX(int z, double lng) {
+		return (lng + 180.0) / 360.0 * (1 << z);
+	}
+
+	public static double tileY(int z, double lat) {
+		double clat = Math.max(-MAX_LAT, Math.min(MAX_LAT, lat));
+		double rlat = Math.toRadians(clat);
+		return (1.0 - Math.log(Math.tan(rlat) + 1.0 / Math.cos(rlat)) / Math.PI)
+			/ 2.0 * (1 << z);
+	}
+
+	private static double lng(int z, double tx) {
+		return tx / (1 << z) * 360.0 - 180.0;
+	}
+
+	private static double lat(int z, double ty) {
+		double nn = Math.PI * (1.0 - 2.0 * ty / (1 << z));
+		return Math.toDegrees(Math.atan(0.5 * (Math.exp(nn) - Math.exp(-nn))));
+	}
+
+	public double west() {
+		return lng(z, x);
+	}
+
+	public double east() {
+		return lng(z, x + 1);
+	}
+
+	public double north() {
+		return lat(z, y);
+	}
+
+	public double south() {
+		return lat(z, y + 1);
+	}
+
+	public boolean intersects(double south, double west, double north, double east) {
+		return south <= north() && north >= south() && west <= east() && east >= west();
+	}
+
+	/**
+	 * The tile as GeoJSON Polygons, counterclockwise, that together cover
+	 * it.  A tile wider than MAX_POLYGON_DEGREES is cut into strips, so
+	 * no polygon wraps around to touch itself, and the top and bottom
+	 * edges get a vertex every MAX_EDGE_DEGREES so they follow the
+	 * parallels.
+	 */
+	public List<String> toPolygons() {
+		double ww = west();
+		double ee = east();
+		double nn = north();
+		double ss = south();
+		int nstrips = (int) Math.ceil((ee - ww) / MAX_POLYGON_DEGREES);
+		List<String> polygons = new ArrayList<String>(nstrips);
+		for (int ii = 0; ii < nstrips; ++ii) {
+			double sw = ww + (ee - ww) * ii / nstrips;
+			double se = ii == nstrips - 1 ? ee : ww + (ee - ww) * (ii + 1) / nstrips;
+			polygons.add(toPolygon(sw, ss, se, nn));
+		}
+		return polygons;
+	}
+
+	private static String toPolygon(double ww, double ss, double ee, double nn) {
+		int nsteps = (int) Math.ceil((ee - ww) / MAX_EDGE_DEGREES);
+		StringBuilder sb = new StringBuilder("{\"type\": \"Polygon\", \"coordinates\": [[");
+		for (int ii = 0; ii <= nsteps; ++ii) {
+			vertex(sb, ww + (ee - ww) * ii / nsteps, ss);
+		}
+		for (int ii = 0; ii <= nsteps; ++ii) {
+			vertex(sb, ee - (ee - ww) * ii / nsteps, nn);
+		}
+		vertex(sb, ww, ss);
+		sb.setLength(sb.length() - 2);
+		return sb.append("]]}").toString();
+	}
+
+	private static void vertex(StringBuilder sb, double lng, double lat) {
+		sb.append(String.format(Locale.ROOT, "[%.9f, %.9f], ", lng, lat));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Tile)) {
+			return false;
+		}
+		Tile other = (Tile) obj;
+		return z == other.z && x == other.x && y == other.y;
+	}
+
+	@Override
+	public int hashCode() {
+		return (z * 31 + x) * 31 + y;
+	}
+
+	@Override
+	public String toString() {
+		return z + "/" + x + "/" + y;
+	}
+}
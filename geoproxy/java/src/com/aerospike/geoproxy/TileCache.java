@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Rendered tiles, least recently used first out, bounded by their total
+ * size in bytes.
+ *
+ * Writes invalidate the tiles they touch at every zoom level.  A tile
+ * is only stored if it wasn't invalidated while it was rendered, so a
+ * render racing a write can't put stale data back; renders of other
+ * tiles are unaffected.
+ */
+public class TileCache {
+
+	// Renders of one tile in progress, and the invalidations of the
+	// tile since the first of them began.
+	private static class Renders {
+		int count = 0;
+		long invalidations = 0;
+	}
+
+	private final long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private final LinkedHashMap<Tile, byte[]> tiles =
+		new LinkedHashMap<Tile, byte[]>(1024, 0.75f, true);
+	private final Map<Tile, Renders> rendering = new HashMap<Tile, Renders>();
+
+	public TileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized byte[] get(Tile tile) {
+		byte[] body = tiles.get(tile);
+		if (body != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+		return body;
+	}
+
+	// Call before rendering a tile, and pass the result to end().
+	public synchronized long begin(Tile tile) {
+		Renders renders = rendering.get(tile);
+		if (renders == null) {
+			renders = new Renders();
+			rendering.put(tile, renders);
+		}
+		renders.count++;
+		return renders.invalidations;
+	}
+
+	/**
+	 * Ends a render begun with begin(), keeping the body unless it is
+	 * null or the tile was invalidated since.
+	 */
+	public synchronized void end(Tile tile, byte[] body, long stamp) {
+		Renders renders = rendering.get(tile);
+		if (--renders.count == 0) {
+			rendering.remove(tile);
+		}
+		if (body == null || renders.invalidations != stamp || body.length > maxBytes) {
+			return;
+		}
+		byte[] old = tiles.put(tile, body);
+		if (old != null) {
+			bytes -= old.length;
+		}
+		bytes += body.length;
+		Iterator<byte[]> it = tiles.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().length;
+			it.remove();
+		}
+	}
+
+	public synchronized void invalidatePoint(double lat, double lng) {
+		for (int z = 0; z <= Tile.MAX_ZOOM; ++z) {
+			Tile tile = Tile.containing(z, lat, lng);
+			byte[] old = tiles.remove(tile);
+			if (old != null) {
+				bytes -= old.length;
+			}
+			Renders renders = rendering.get(tile);
+			if (renders != null) {
+				renders.invalidations++;
+			}
+		}
+	}
+
+	public synchronized void invalidateBox(double south, double west,
+										   double north, double east) {
+		for (Map.Entry<Tile, Renders> ent : rendering.entrySet()) {
+			if (ent.getKey().intersects(south, west, north, east)) {
+				ent.getValue().invalidations++;
+			}
+		}
+		Iterator<Map.Entry<Tile, byte[]>> it = tiles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Tile, byte[]> ent = it.next();
+			if (ent.getKey().intersects(south, west, north, east)) {
+				bytes -= ent.getValue().length;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the tiles a GeoJSON value touches: the tiles containing
+	 * a Point, or those meeting the bounding box of anything else.
+	 */
+	public void invalidate(String geojson) {
+		JsonObject obj = new JsonParser().parse(geojson).getAsJsonObject();
+		String type = obj.get("type").getAsString();
+		JsonArray coords = obj.getAsJsonArray("coordinates");
+		if (type.equals("Point")) {
+			invalidatePoint(coords.get(1).getAsDouble(), coords.get(0).getAsDouble());
+			return;
+		}
+		double[] box = { 90.0, 180.0, -90.0, -180.0 };
+		if (type.equals("AeroCircle")) {
+			JsonArray center = coords.get(0).getAsJsonArray();
+			double lng = center.get(0).getAsDouble();
+			double lat = center.get(1).getAsDouble();
+			double dlat = Math.toDegrees(coords.get(1).getAsDouble() / 6371008.8);
+			double dlng = dlat / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+			extend(box, lat - dlat, lng - dlng);
+			extend(box, lat + dlat, lng + dlng);
+		}
+		else {
+			extend(box, coords);
+		}
+		invalidateBox(box[0], box[1], box[2], box[3]);
+	}
+
+	private static void extend(double[] box, double lat, double lng) {
+		box[0] = Math.min(box[0], lat);
+		box[1] = Math.min(box[1], lng);
+		box[2] = Math.max(box[2], lat);
+		box[3] = Math.max(box[3], lng);
+	}
+
+	// Walks nested coordinate arrays down to the positions.
+	private static void extend(double[] box, JsonArray arr) {
+		if (arr.size() >= 2 && arr.get(0).isJsonPrimitive()) {
+			extend(box, arr.get(1).getAsDouble(), arr.get(0).getAsDouble());
+			return;
+		}
+		for (JsonElement elem : arr) {
+			if (elem.isJsonArray()) {
+				extend(box, elem.getAsJsonArray());
+			}
+		}
+	}
+
+	public synchronized String stats() {
+		return String.format("{\"tiles\": %d, \"bytes\": %d, \"hits\": %d, \"misses\": %d}",
+							 tiles.size(), bytes, hits, misses);
+	}
+}
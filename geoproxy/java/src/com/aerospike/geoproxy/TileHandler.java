@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Serves /tiles/{z}/{x}/{y}: the records within a map tile or, below
+ * the cluster zoom, a grid of counts and centroids summarizing them.
+ *
+ * Rendered tiles are kept in a TileCache and sent with a Cache-Control
+ * header, so browsers and CDNs can keep them too.  /tiles/stats shows
+ * the cache's hit rate.
+ */
+public class TileHandler implements HttpHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Cells per tile side for clustered tiles.
+	private static final int GRID = 8;
+
+	private final Backend backend;
+	private final TileCache cache;
+	private final int clusterZoom;
+	private final int maxAge;
+
+	public TileHandler(Backend backend, TileCache cache, int clusterZoom, int maxAge) {
+		this.backend = backend;
+		this.cache = cache;
+		this.clusterZoom = clusterZoom;
+		this.maxAge = maxAge;
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				GeoProxy.error(exchange, 405, "GET a tile");
+				return;
+			}
+			String path = exchange.getRequestURI().getPath();
+			if (path.equals("/tiles/stats")) {
+				GeoProxy.respond(exchange, 200, "application/json",
+								 cache.stats().getBytes(UTF8));
+				return;
+			}
+			Tile tile;
+			try {
+				tile = parse(path);
+			}
+			catch (IllegalArgumentException ex) {
+				GeoProxy.error(exchange, 404, ex.getMessage());
+				return;
+			}
+
+			byte[] body = cache.get(tile);
+			String status = "HIT";
+			if (body == null) {
+				status = "MISS";
+				long stamp = cache.begin(tile);
+				try {
+					body = render(tile).getBytes(UTF8);
+				}
+				catch (Exception ex) {
+					GeoProxy.error(exchange, 500, ex.getMessage());
+					return;
+				}
+				finally {
+					cache.end(tile, body, stamp);
+				}
+			}
+			exchange.getResponseHeaders().set("Cache-Control", "public, max-age=" + maxAge);
+			exchange.getResponseHeaders().set("X-Tile-Cache", status);
+			GeoProxy.respond(exchange, 200, "application/json", body);
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	// "/tiles/12/655/1583" or "/tiles/12/655/1583.json"
+	static Tile parse(String path) {
+		String[] parts = path.substring("/tiles/".length()).split("/");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("expected /tiles/{z}/{x}/{y}");
+		}
+		String ys = parts[2].endsWith(".json")
+			? parts[2].substring(0, parts[2].length() - ".json".length())
+			: parts[2];
+		try {
+			return new Tile(Integer.parseInt(parts[0]),
+							Integer.parseInt(parts[1]),
+							Integer.parseInt(ys));
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("bad tile: " + path);
+		}
+	}
+
+	String render(final Tile tile) throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"tile\": \"").append(tile).append("\", ");
+		if (tile.z >= clusterZoom) {
+			sb.append("\"records\": [");
+			Backend.RecordSink sink = new Backend.RecordSink() {
+					String sep = "";
+					public void record(String val) {
+						sb.append(sep).append(val);
+						sep = ", ";
+					}
+				};
+			for (String polygon : tile.toPolygons()) {
+				backend.query(polygon, Backend.VALBIN, sink);
+			}
+			sb.append("]}");
+			return sb.toString();
+		}
+
+		final long[] counts = new long[GRID * GRID];
+		final double[] latSums = new double[GRID * GRID];
+		final double[] lngSums = new double[GRID * GRID];
+		final long[] total = { 0 };
+		final int z = tile.z + 3;	// GRID cells per side
+		// The loc bin, not the val's latitude and longitude, which a
+		// /geoput doesn't change.
+		Backend.RecordSink sink = new Backend.RecordSink() {
+				public void record(String loc) {
+					double[] lnglat = parsePoint(loc);
+					if (lnglat == null) {
+						return;
+					}
+					double lng = lnglat[0];
+					double lat = lnglat[1];
+					int cx = (int) Math.floor(Tile.tileX(z, lng)) - tile.x * GRID;
+					int cy = (int) Math.floor(Tile.tileY(z, lat)) - tile.y * GRID;
+					cx = Math.max(0, Math.min(GRID - 1, cx));
+					cy = Math.max(0, Math.min(GRID - 1, cy));
+					int cell = cy * GRID + cx;
+					counts[cell]++;
+					latSums[cell] += lat;
+					lngSums[cell] += lng;
+					total[0]++;
+				}
+			};
+		for (String polygon : tile.toPolygons()) {
+			backend.query(polygon, Backend.LOCBIN, sink);
+		}
+		sb.append("\"count\": ").append(total[0]).append(", \"clusters\": [");
+		String sep = "";
+		for (int cell = 0; cell < GRID * GRID; ++cell) {
+			if (counts[cell] == 0) {
+				continue;
+			}
+			sb.append(sep);
+			sb.append(String.format(Locale.ROOT, "{\"count\": %d, \"latitude\": %.7f, \"longitude\": %.7f}",
+									counts[cell], latSums[cell] / counts[cell],
+									lngSums[cell] / counts[cell]));
+			sep = ", ";
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	// The [longitude, latitude] of a GeoJSON Point, or null.
+	static double[] parsePoint(String geojson) {
+		if (geojson.indexOf("\"Point\"") < 0) {
+			return null;
+		}
+		int pos = geojson.indexOf("\"coordinates\"");
+		int open = pos < 0 ? -1 : geojson.indexOf('[', pos);
+		int comma = open < 0 ? -1 : geojson.indexOf(',', open);
+		int close = comma < 0 ? -1 : geojson.indexOf(']', comma);
+		if (close < 0) {
+			return null;
+		}
+		try {
+			return new double[] {
+				Double.parseDouble(geojson.substring(open + 1, comma).trim()),
+				Double.parseDouble(geojson.substring(comma + 1, close).trim()) };
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.geoproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs the proxy on an ephemeral port over a MemoryBackend and talks
+ * to it over HTTP.
+ */
+public class GeoProxyTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SET = "osm";
+	private static final int NPOINTS = 10;
+
+	// Counts the batches it is handed, and is slow enough that
+	// concurrent puts queue up behind one another.
+	static class SlowBackend extends MemoryBackend {
+		final AtomicInteger batches = new AtomicInteger();
+		final AtomicInteger puts = new AtomicInteger();
+		volatile CountDownLatch gate = null;
+
+		SlowBackend() {
+			super(SET);
+		}
+
+		@Override
+		public Exception[] put(List<GeoPut> batch) {
+			batches.incrementAndGet();
+			puts.addAndGet(batch.size());
+			try {
+				CountDownLatch latch = gate;
+				if (latch != null) {
+					latch.await();
+				}
+				Thread.sleep(50);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return super.put(batch);
+		}
+	}
+
+	private File seed;
+	private SlowBackend backend;
+	private GeoProxy proxy;
+
+	@Before
+	public void setUp() throws Exception {
+		seed = File.createTempFile("geoproxy", ".json");
+		PrintWriter pw = new PrintWriter(seed, "UTF-8");
+		for (int ii = 0; ii < NPOINTS; ++ii) {
+			pw.println("{\"name\": \"p" + ii + "\", \"latitude\": " + (37.42 + ii * 0.001)
+					   + ", \"longitude\": " + (-122.08 - ii * 0.001) + "}");
+		}
+		pw.close();
+		backend = new SlowBackend();
+		backend.seed(seed.getPath());
+		proxy = new GeoProxy(backend, SET, 0, seed.getParent(), 16, 256, 1L << 20, 12, 60);
+		proxy.start();
+	}
+
+	@After
+	public void tearDown() {
+		proxy.stop();
+		seed.delete();
+	}
+
+	@Test
+	public void queryStreamsTheRecordsAround() throws Exception {
+		HttpURLConnection conn = post("/query",
+			"{\"type\": \"AeroCircle\", \"coordinates\": [[-122.08, 37.42], 5000]}");
+		assertEquals(200, conn.getResponseCode());
+		assertEquals("chunked", conn.getHeaderField("Transfer-Encoding"));
+		JsonArray records = new JsonParser().parse(read(conn)).getAsJsonArray();
+		assertEquals(NPOINTS, records.size());
+
+		conn = post("/query",
+			"{\"type\": \"AeroCircle\", \"coordinates\": [[0.0, 0.0], 5000]}");
+		assertEquals(200, conn.getResponseCode());
+		assertEquals(0, new JsonParser().parse(read(conn)).getAsJsonArray().size());
+	}
+
+	@Test
+	public void concurrentPutsAreBatched() throws Exception {
+		// Hold the first batch until every request is queued behind it.
+		backend.gate = new CountDownLatch(1);
+		ExecutorService clients = Executors.newFixedThreadPool(NPOINTS);
+		List<Future<Integer>> statuses = new ArrayList<Future<Integer>>();
+		for (int ii = 0; ii < NPOINTS; ++ii) {
+			final String body = "{\"set\": \"" + SET + "\", \"key\": \"seed" + ii
+				+ "\", \"bin\": \"loc\", \"val\": {\"type\": \"Point\", \"coordinates\": [-100.0, 40.0]}}";
+			statuses.add(clients.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						HttpURLConnection conn = post("/geoput", body);
+						read(conn);
+						return conn.getResponseCode();
+					}
+				}));
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (backend.batches.get() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(200);
+		backend.gate.countDown();
+		for (Future<Integer> status : statuses) {
+			assertEquals(200, status.get(10, TimeUnit.SECONDS).intValue());
+		}
+		clients.shutdown();
+		assertEquals(NPOINTS, backend.puts.get());
+		assertTrue("batches: " + backend.batches.get(), backend.batches.get() < NPOINTS);
+
+		HttpURLConnection conn = post("/query",
+			"{\"type\": \"AeroCircle\", \"coordinates\": [[-100.0, 40.0], 1000]}");
+		assertEquals(NPOINTS, new JsonParser().parse(read(conn)).getAsJsonArray().size());
+	}
+
+	@Test
+	public void clusteredTileFollowsAMove() throws Exception {
+		JsonObject before = getTile("/tiles/0/0/0");
+		assertEquals(NPOINTS, before.get("count").getAsInt());
+		double lng = centroidLongitude(before);
+		assertTrue("" + lng, lng < -122.0);
+
+		for (int ii = 0; ii < NPOINTS; ++ii) {
+			HttpURLConnection conn = post("/geoput", "{\"set\": \"" + SET + "\", \"key\": \"seed" + ii
+				+ "\", \"bin\": \"loc\", \"val\": {\"type\": \"Point\", \"coordinates\": [-100.0, 40.0]}}");
+			assertEquals(200, conn.getResponseCode());
+		}
+		JsonObject after = getTile("/tiles/0/0/0");
+		assertEquals(NPOINTS, after.get("count").getAsInt());
+		assertEquals(-100.0, centroidLongitude(after), 1e-9);
+	}
+
+	@Test
+	public void closedBatcherFailsItsPuts() throws Exception {
+		SlowBackend slow = new SlowBackend();
+		slow.gate = new CountDownLatch(1);
+		PutBatcher batcher = new PutBatcher(slow, 1);
+		List<PutBatcher.Pending> pendings = new ArrayList<PutBatcher.Pending>();
+		for (int ii = 0; ii < 5; ++ii) {
+			pendings.add(batcher.submit(new GeoPut(SET, "k" + ii, "loc",
+												   "{\"type\": \"Point\", \"coordinates\": [0, 0]}")));
+		}
+		batcher.close();
+		for (PutBatcher.Pending pending : pendings) {
+			try {
+				pending.await(10, TimeUnit.SECONDS);
+			}
+			catch (IllegalStateException ex) {
+				// Queued behind the closing, so never written.
+			}
+		}
+		try {
+			batcher.submit(new GeoPut(SET, "late", "loc", "{\"type\": \"Point\", \"coordinates\": [0, 0]}"));
+			fail("submit after close");
+		}
+		catch (IllegalStateException ex) {
+		}
+	}
+
+	private JsonObject getTile(String path) throws IOException {
+		HttpURLConnection conn = open(path);
+		assertEquals(200, conn.getResponseCode());
+		return new JsonParser().parse(read(conn)).getAsJsonObject();
+	}
+
+	private static double centroidLongitude(JsonObject tile) {
+		double sum = 0.0;
+		long count = 0;
+		for (JsonElement elem : tile.getAsJsonArray("clusters")) {
+			JsonObject cluster = elem.getAsJsonObject();
+			long nn = cluster.get("count").getAsLong();
+			sum += cluster.get("longitude").getAsDouble() * nn;
+			count += nn;
+		}
+		return sum / count;
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = new URL("http://localhost:" + proxy.port() + path);
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setConnectTimeout(5000);
+		conn.setReadTimeout(10000);
+		return conn;
+	}
+
+	private HttpURLConnection post(String path, String body) throws IOException {
+		HttpURLConnection conn = open(path);
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		OutputStream out = conn.getOutputStream();
+		out.write(body.getBytes(UTF8));
+		out.close();
+		return conn;
+	}
+
+	private static String read(HttpURLConnection conn) throws IOException {
+		InputStream in = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream();
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		if (in != null) {
+			byte[] chunk = new byte[8192];
+			int nn;
+			while ((nn = in.read(chunk)) > 0) {
+				buf.write(chunk, 0, nn);
+			}
+			in.close();
+		}
+		return new String(buf.toByteArray(), UTF8);
+	}
+}
@@ -19,6 +19,18 @@ package com.aerospike.osm;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -40,11 +52,15 @@ import com.aerospike.client.query.Statement;
 import com.aerospike.client.Record;
 import com.aerospike.client.task.RegisterTask;
 import com.aerospike.client.Value;
+import com.aerospike.client.cluster.Node;
 
 public class Around {
 
 	private static Policy policy;
-	private static int count = 0;
+	private static QueryStats stats = new QueryStats();
+	private static Haversine center = null;
+	private static TopN nearest = null;
+	private static ClusterGrid clusters = null;
 	
 	static private class Parameters {
 		String host;
@@ -57,6 +73,18 @@ public class Around {
 		double lng;
 		double radius;
 		String amenity;
+		String sort;
+		int top;
+		String route;
+		int inflight;
+		boolean count;
+		boolean facets;
+		String locbin;
+		String indexFile;
+		double[] bbox;
+		boolean keysOnly;
+		double clusterGrid;
+		int clusterTop;
 
 		public Parameters() {
 			this.host = "localhost";
@@ -69,35 +97,137 @@ public class Around {
 			this.lng = 0.0;
 			this.radius = 2000.0;
 			this.amenity = null;
+			this.sort = null;
+			this.top = 10;
+			this.route = null;
+			this.inflight = 8;
+			this.count = false;
+			this.facets = false;
+			this.locbin = "loc";
+			this.indexFile = null;
+			this.bbox = null;
+			this.keysOnly = false;
+			this.clusterGrid = 0.0;
+			this.clusterTop = 3;
 		}
 	}
 
-	private static void queryCircle(Parameters params, AerospikeClient client) {
+	private static Statement makeStatement(Parameters params) {
+		return makeStatement(params, params.lat, params.lng, params.radius);
+	}
+
+	private static Statement makeStatement(Parameters params, double lat,
+										   double lng, double radius) {
 		String locbin = "loc";
 		String valbin = "val";
 		
 		String rgnstr =
 			String.format("{ \"type\": \"AeroCircle\", "
 						  + "\"coordinates\": [[%.8f, %.8f], %f] }",
-						  params.lng, params.lat, params.radius);
+						  lng, lat, radius);
 
 		Statement stmt = new Statement();
 		stmt.setNamespace(params.namespace);
 		stmt.setSetName(params.set);
-		stmt.setBinNames(valbin);
-		stmt.setFilters(Filter.geoWithin(locbin, rgnstr));
+		// When sorting by distance or clustering only the location is
+		// read while the results arrive; the winners' values are fetched
+		// at the end.
+		if ((params.sort != null || params.clusterGrid > 0.0) && params.amenity == null) {
+			stmt.setBinNames(locbin);
+		}
+		else {
+			stmt.setBinNames(valbin);
+		}
+		stmt.setFilters(Filter.geoWithin(params.locbin, rgnstr));
+		return stmt;
+	}
+
+	// Runs the circle query against a single node so we can see
+	// whether one slow node is holding up the whole result.
+	private static class NodeWorker implements Runnable {
+		private Parameters params;
+		private AerospikeClient client;
+		private Node node;
+		private Exception error = null;
+
+		NodeWorker(Parameters params, AerospikeClient client, Node node) {
+			this.params = params;
+			this.client = client;
+			this.node = node;
+		}
+
+		public void run() {
+			double[] lnglat = new double[2];
+			try {
+				RecordSet rs =
+					client.queryNode(null, makeStatement(params), node);
+				try {
+					while (rs.next()) {
+						Record record = rs.getRecord();
+						if (clusters != null) {
+							String loc = record.getGeoJSON("loc");
+							stats.record(node.getName(), loc);
+							if (Haversine.parsePoint(loc, lnglat)) {
+								clusters.add(lnglat[1], lnglat[0], null);
+							}
+						}
+						else if (nearest != null) {
+							String loc = record.getGeoJSON("loc");
+							stats.record(node.getName(), loc);
+							if (Haversine.parsePoint(loc, lnglat)) {
+								double dist =
+									center.distanceTo(lnglat[1], lnglat[0]);
+								nearest.offer(dist, rs.getKey(), null);
+							}
+						}
+						else {
+							String result = record.getString("val");
+							stats.record(node.getName(), result);
+							System.out.println(result);
+						}
+					}
+				}
+				finally {
+					rs.close();
+				}
+			}
+			catch (Exception ex) {
+				error = ex;
+			}
+			finally {
+				stats.nodeDone(node.getName());
+			}
+		}
+	}
 
+	private static void queryCircle(Parameters params, AerospikeClient client)
+		throws Exception {
 		if (params.amenity != null) {
+			Statement stmt = makeStatement(params);
 			stmt.setAggregateFunction("filter_by_amenity", "apply_filter",
 									  Value.get(params.amenity));
 
+			// Aggregations can't be issued per node, so there is no
+			// per-node breakdown for this path.
 			ResultSet rs = client.queryAggregate(null, stmt);
 
 			try {
 				while (rs.next()) {
 					Object result = rs.getObject();
-					System.out.println(result);
-					count++;
+					stats.record(null, result);
+					if (nearest != null) {
+						// The filter only returns the val bin, so the
+						// position has to come from there.
+						String val = result.toString();
+						double lat = Haversine.parseNumberField(val, "latitude");
+						double lng = Haversine.parseNumberField(val, "longitude");
+						if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
+							nearest.offer(center.distanceTo(lat, lng), null, val);
+						}
+					}
+					else {
+						System.out.println(result);
+					}
 				}
 			}
 			finally {
@@ -105,23 +235,343 @@ public class Around {
 			}
 		}
 		else {
-			RecordSet rs = client.query(null, stmt);
-		
+			Node[] nodes = client.getNodes();
+			NodeWorker[] workers = new NodeWorker[nodes.length];
+			Thread[] threads = new Thread[nodes.length];
+			for (int ii = 0; ii < nodes.length; ++ii) {
+				stats.addNode(nodes[ii].getName(),
+							  nodes[ii].getHost().toString());
+				workers[ii] = new NodeWorker(params, client, nodes[ii]);
+				threads[ii] = new Thread(workers[ii]);
+			}
+			for (int ii = 0; ii < nodes.length; ++ii) {
+				threads[ii].start();
+			}
+			for (int ii = 0; ii < nodes.length; ++ii) {
+				threads[ii].join();
+			}
+			for (int ii = 0; ii < nodes.length; ++ii) {
+				if (workers[ii].error != null) {
+					throw workers[ii].error;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Counts the records in the circle, or counts them per amenity,
+	 * with a server-side aggregation so that only the totals are sent.
+	 */
+	private static void queryCount(Parameters params, AerospikeClient client) {
+		Statement stmt = makeStatement(params);
+		String function = params.facets ? "count_by_amenity" : "count";
+		if (params.amenity != null) {
+			stmt.setAggregateFunction("filter_by_amenity", function,
+									  Value.get(params.amenity));
+		}
+		else {
+			stmt.setAggregateFunction("filter_by_amenity", function);
+		}
+
+		Object result = null;
+		ResultSet rs = client.queryAggregate(null, stmt);
+		try {
+			while (rs.next()) {
+				result = rs.getObject();
+				stats.record(null, result);
+			}
+		}
+		finally {
+			rs.close();
+		}
+
+		if (!params.facets) {
+			System.out.println(result == null ? 0 : result);
+		}
+		else if (result != null) {
+			List<Map.Entry<?, ?>> facets =
+				new ArrayList<Map.Entry<?, ?>>(((Map<?, ?>) result).entrySet());
+			Collections.sort(facets, new Comparator<Map.Entry<?, ?>>() {
+				public int compare(Map.Entry<?, ?> aa, Map.Entry<?, ?> bb) {
+					long na = ((Number) aa.getValue()).longValue();
+					long nb = ((Number) bb.getValue()).longValue();
+					return na < nb ? 1 : na > nb ? -1 : 0;
+				}
+			});
+			for (Map.Entry<?, ?> facet : facets) {
+				System.out.printf("%8d  %s\n", facet.getValue(), facet.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Aggregates the circle into params.clusterGrid cells and prints one
+	 * line per cell instead of one per record.  Without tags only the
+	 * location is read, over the per-node queries.  With them the
+	 * records go through the cluster_points UDF, which sends just the
+	 * position and amenity of each, since the client can't read part of
+	 * the map bin.
+	 */
+	private static void queryClusters(Parameters params, AerospikeClient client)
+		throws Exception {
+		clusters = new ClusterGrid(params.clusterGrid, params.clusterTop);
+		if (params.amenity == null && params.clusterTop == 0) {
+			queryCircle(params, client);
+		}
+		else {
+			Statement stmt = makeStatement(params);
+			if (params.amenity != null) {
+				stmt.setAggregateFunction("filter_by_amenity", "cluster_points",
+										  Value.get(params.amenity));
+			}
+			else {
+				stmt.setAggregateFunction("filter_by_amenity", "cluster_points");
+			}
+			ResultSet rs = client.queryAggregate(null, stmt);
 			try {
 				while (rs.next()) {
-					Key key = rs.getKey();
-					Record record = rs.getRecord();
-					String result = record.getString(valbin);
-					System.out.println(result);
-					count++;
+					Object result = rs.getObject();
+					stats.record(null, result);
+					Map<?, ?> point = (Map<?, ?>) result;
+					Object lat = point.get("lat");
+					Object lng = point.get("lng");
+					if (lat instanceof Number && lng instanceof Number) {
+						clusters.add(((Number) lat).doubleValue(),
+									 ((Number) lng).doubleValue(), point.get("tags"));
+					}
 				}
 			}
 			finally {
 				rs.close();
 			}
 		}
+		for (String line : clusters.toJSON()) {
+			System.out.println(line);
+		}
 	}
-	
+
+	private static class Hit {
+		Object id;
+		String val;
+
+		Hit(Object id, String val) {
+			this.id = id;
+			this.val = val;
+		}
+	}
+
+	// Queries one circle of a route and keeps what is inside the corridor.
+	private static class CircleTask implements Callable<List<Hit>> {
+		private Parameters params;
+		private AerospikeClient client;
+		private Route route;
+		private double[] center;
+
+		CircleTask(Parameters params, AerospikeClient client,
+				   Route route, double[] center) {
+			this.params = params;
+			this.client = client;
+			this.route = route;
+			this.center = center;
+		}
+
+		public List<Hit> call() throws Exception {
+			List<Hit> hits = new ArrayList<Hit>();
+			Statement stmt = makeStatement(params, center[0], center[1],
+										   Route.coverRadius(params.radius));
+			if (params.amenity != null) {
+				stmt.setAggregateFunction("filter_by_amenity", "apply_filter",
+										  Value.get(params.amenity));
+				ResultSet rs = client.queryAggregate(null, stmt);
+				try {
+					while (rs.next()) {
+						Object result = rs.getObject();
+						stats.record(null, result);
+						// No keys come back from the filter, the value
+						// itself identifies the record.
+						String val = result.toString();
+						double lat = Haversine.parseNumberField(val, "latitude");
+						double lng = Haversine.parseNumberField(val, "longitude");
+						if (route.distanceTo(lat, lng) <= params.radius) {
+							hits.add(new Hit(val, val));
+						}
+					}
+				}
+				finally {
+					rs.close();
+				}
+			}
+			else {
+				stmt.setBinNames("loc", "val");
+				double[] lnglat = new double[2];
+				RecordSet rs = client.query(null, stmt);
+				try {
+					while (rs.next()) {
+						Record record = rs.getRecord();
+						String val = record.getString("val");
+						stats.record(null, val);
+						if (Haversine.parsePoint(record.getGeoJSON("loc"), lnglat)
+							&& route.distanceTo(lnglat[1], lnglat[0]) <= params.radius) {
+							hits.add(new Hit(rs.getKey(), val));
+						}
+					}
+				}
+				finally {
+					rs.close();
+				}
+			}
+			return hits;
+		}
+	}
+
+	/**
+	 * Finds everything within params.radius of a route.  The covering
+	 * circles are queried concurrently, at most params.inflight at a
+	 * time, and their results are printed in route order with records
+	 * seen by an earlier circle dropped.
+	 */
+	private static void queryRoute(Parameters params, AerospikeClient client)
+		throws Exception {
+		Route route = Route.read(params.route);
+		List<double[]> centers = route.cover(params.radius);
+		ExecutorService executor = Executors.newFixedThreadPool(params.inflight);
+		LinkedList<Future<List<Hit>>> window = new LinkedList<Future<List<Hit>>>();
+		Set<Object> seen = new HashSet<Object>();
+		int unique = 0;
+		try {
+			int next = 0;
+			while (next < centers.size() || !window.isEmpty()) {
+				if (next < centers.size() && window.size() < params.inflight) {
+					window.add(executor.submit(
+						new CircleTask(params, client, route, centers.get(next++))));
+					continue;
+				}
+				for (Hit hit : window.removeFirst().get()) {
+					if (seen.add(hit.id)) {
+						System.out.println(hit.val);
+						++unique;
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		System.out.printf("route of %d circles found %d records within %.1f meters\n",
+						  centers.size(), unique, params.radius);
+	}
+
+	private static void printNearest(AerospikeClient client) {
+		nearest.sort();
+
+		// Fetch the values for the results we kept, and only those.
+		int nfetch = 0;
+		for (int ii = 0; ii < nearest.size(); ++ii) {
+			if (nearest.getValue(ii) == null) {
+				++nfetch;
+			}
+		}
+		if (nfetch > 0) {
+			Key[] keys = new Key[nfetch];
+			int[] slots = new int[nfetch];
+			int jj = 0;
+			for (int ii = 0; ii < nearest.size(); ++ii) {
+				if (nearest.getValue(ii) == null) {
+					keys[jj] = nearest.getKey(ii);
+					slots[jj] = ii;
+					++jj;
+				}
+			}
+			Record[] records = client.get(null, keys, "val");
+			for (jj = 0; jj < nfetch; ++jj) {
+				if (records[jj] != null) {
+					nearest.setValue(slots[jj], records[jj].getString("val"));
+				}
+			}
+		}
+
+		for (int ii = 0; ii < nearest.size(); ++ii) {
+			String result = nearest.getValue(ii);
+			if (result != null) {
+				System.out.println(result);
+			}
+		}
+	}
+
+	private static Key makeKey(Parameters params, Object userKey) {
+		if (userKey instanceof Long) {
+			return new Key(params.namespace, params.set, (Long) userKey);
+		}
+		return new Key(params.namespace, params.set, (String) userKey);
+	}
+
+	/**
+	 * Answers the query from a memory-mapped point index file instead of
+	 * the cluster's index.  Only the val bins of the results are read
+	 * from the cluster, with one batch read, and with --keys-only not
+	 * even those.
+	 */
+	private static void queryIndex(Parameters params) throws Exception {
+		PointIndex index = PointIndex.open(params.indexFile);
+		final List<Integer> entries = new ArrayList<Integer>();
+		PointIndex.Visitor collect = new PointIndex.Visitor() {
+				public void visit(int entry) {
+					entries.add(entry);
+				}
+			};
+
+		long t0 = System.nanoTime();
+		if (params.bbox != null) {
+			index.searchBox(params.bbox[0], params.bbox[1],
+							params.bbox[2], params.bbox[3], collect);
+		}
+		else if (params.sort != null) {
+			for (int entry : index.nearest(params.lat, params.lng,
+										   params.top, params.radius)) {
+				entries.add(entry);
+			}
+		}
+		else {
+			index.searchCircle(params.lat, params.lng, params.radius, collect);
+		}
+		long t1 = System.nanoTime();
+
+		if (params.count) {
+			System.out.println(entries.size());
+		}
+		else if (params.keysOnly) {
+			for (int entry : entries) {
+				Object key = index.key(entry);
+				String keystr = key instanceof Long ? key.toString()
+					: "\"" + key.toString().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+				System.out.printf("{\"key\": %s, \"latitude\": %.7f, \"longitude\": %.7f}\n",
+								  keystr, index.lat(entry), index.lng(entry));
+			}
+		}
+		else if (!entries.isEmpty()) {
+			AerospikeClient client = setupAerospike(params);
+			try {
+				Key[] keys = new Key[entries.size()];
+				for (int ii = 0; ii < keys.length; ++ii) {
+					keys[ii] = makeKey(params, index.key(entries.get(ii)));
+				}
+				Record[] records = client.get(null, keys, "val");
+				for (Record record : records) {
+					if (record != null) {
+						System.out.println(record.getString("val"));
+					}
+				}
+			}
+			finally {
+				cleanupAerospike(params, client);
+			}
+		}
+		long t2 = System.nanoTime();
+
+		System.out.printf("found %d records in %.3f milliseconds (index lookup %.3f)\n",
+						  entries.size(), (t2 - t0) / 1e6, (t1 - t0) / 1e6);
+	}
+
 	private static void registerUDF(Parameters params,
 									AerospikeClient client) throws Exception {
 		RegisterTask task =
@@ -168,6 +618,18 @@ public class Around {
 		options.addOption("s", "set", true, "Set name (default: osm)");
 		options.addOption("r", "radius", true, "Radius in meters (default: 2000.0)");
 		options.addOption("a", "amenity", true, "Filter by amenity");
+		options.addOption("S", "sort", true, "Sort results, only \"distance\" is supported");
+		options.addOption("t", "top", true, "Return the N nearest results (default: 10, implies --sort distance)");
+		options.addOption("R", "route", true, "Search along the route in this file, one \"lat lng\" per line");
+		options.addOption("i", "inflight", true, "Concurrent circle queries in route mode (default: 8)");
+		options.addOption("N", "count", false, "Only count the records, on the server");
+		options.addOption("F", "facets", false, "Only count the records per amenity, on the server");
+		options.addOption("L", "locbin", true, "Indexed location bin to query (default: loc)");
+		options.addOption("I", "index-file", true, "Answer from this point index file, written by Load --index-file");
+		options.addOption("B", "bbox", true, "Search the box \"south,west,north,east\" instead of a circle (needs --index-file)");
+		options.addOption("K", "keys-only", false, "Print keys and positions from the index file without reading the cluster");
+		options.addOption("G", "cluster-grid", true, "Print one centroid per grid cell this many meters across instead of every record");
+		options.addOption("T", "cluster-top", true, "Top amenity values per cell with --cluster-grid, 0 reads only the location (default: 3)");
 		options.addOption("u", "usage", false, "Print usage");
 
 		CommandLineParser parser = new PosixParser();
@@ -184,19 +646,133 @@ public class Around {
 		params.radius = Double.parseDouble(radiusString);
 		params.amenity = cl.getOptionValue("a");
 
+		params.sort = cl.getOptionValue("S");
+		if (cl.hasOption("t")) {
+			params.top = Integer.parseInt(cl.getOptionValue("t"));
+			if (params.top <= 0) {
+				System.out.println("--top must be positive");
+				usage(options);
+				System.exit(1);
+			}
+			if (params.sort == null) {
+				params.sort = "distance";
+			}
+		}
+
+		params.route = cl.getOptionValue("R");
+		params.count = cl.hasOption("N");
+		params.locbin = cl.getOptionValue("L", "loc");
+
+		// A location bin dedicated to the amenity already holds only
+		// the matching records, so the filter UDF isn't needed.
+		if (params.locbin.equals(params.amenity)) {
+			params.amenity = null;
+		}
+		params.facets = cl.hasOption("F");
+		params.indexFile = cl.getOptionValue("I");
+		params.keysOnly = cl.hasOption("K");
+		if (cl.hasOption("B")) {
+			String[] edges = cl.getOptionValue("B").split(",");
+			if (edges.length != 4) {
+				System.out.println("--bbox needs south,west,north,east");
+				usage(options);
+				System.exit(1);
+			}
+			params.bbox = new double[4];
+			for (int ii = 0; ii < 4; ++ii) {
+				params.bbox[ii] = Double.parseDouble(edges[ii].trim());
+			}
+		}
+		if (cl.hasOption("G")) {
+			params.clusterGrid = Double.parseDouble(cl.getOptionValue("G"));
+			if (params.clusterGrid <= 0.0) {
+				System.out.println("--cluster-grid must be positive");
+				usage(options);
+				System.exit(1);
+			}
+		}
+		params.clusterTop = Integer.parseInt(cl.getOptionValue("T", "3"));
+		String inflightString = cl.getOptionValue("i", "8");
+		params.inflight = Integer.parseInt(inflightString);
+
 		if (cl.hasOption("u")) {
 			usage(options);
 			System.exit(0);
 		}
 		
+		if (params.indexFile != null) {
+			if (params.amenity != null || params.facets || params.route != null) {
+				System.out.println("--index-file can't be used with --amenity, --facets or --route");
+				usage(options);
+				System.exit(1);
+			}
+		}
+		else if (params.bbox != null || params.keysOnly) {
+			System.out.println("--bbox and --keys-only need --index-file");
+			usage(options);
+			System.exit(1);
+		}
+		if (params.bbox != null && params.sort != null) {
+			System.out.println("--bbox can't be used with --sort");
+			usage(options);
+			System.exit(1);
+		}
+
 		String[] latlng = cl.getArgs();
-		if (latlng.length != 2) {
-			System.out.println("missing latitude and longitude parameters");
+		if (params.bbox != null) {
+			if (latlng.length != 0) {
+				System.out.println("latitude and longitude can't be used with --bbox");
+				usage(options);
+				System.exit(1);
+			}
+		}
+		else if (params.route != null) {
+			if (latlng.length != 0) {
+				System.out.println("latitude and longitude can't be used with --route");
+				usage(options);
+				System.exit(1);
+			}
+			if (params.sort != null) {
+				System.out.println("--sort can't be used with --route");
+				usage(options);
+				System.exit(1);
+			}
+			if (!(params.radius > 0.0)) {
+				System.out.println("--radius must be positive with --route");
+				usage(options);
+				System.exit(1);
+			}
+		}
+		else {
+			if (latlng.length != 2) {
+				System.out.println("missing latitude and longitude parameters");
+				usage(options);
+				System.exit(1);
+			}
+			params.lat = Double.parseDouble(latlng[0]);
+			params.lng = Double.parseDouble(latlng[1]);
+		}
+
+		if ((params.count || params.facets)
+			&& (params.sort != null || params.route != null)) {
+			System.out.println("--count and --facets can't be used with --sort or --route");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.clusterGrid > 0.0
+			&& (params.sort != null || params.route != null || params.count
+				|| params.facets || params.indexFile != null)) {
+			System.out.println("--cluster-grid can't be used with --sort, --route, --count, --facets or --index-file");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.sort != null && !params.sort.equals("distance")) {
+			System.out.println("unsupported sort order: " + params.sort);
 			usage(options);
 			System.exit(1);
 		}
-		params.lat = Double.parseDouble(latlng[0]);
-		params.lng = Double.parseDouble(latlng[1]);
 
 		return params;
 	}
@@ -204,19 +780,56 @@ public class Around {
 	private static void run(String[] args) throws Exception {
 		Parameters params = parseParameters(args);
 
+		if (params.indexFile != null) {
+			queryIndex(params);
+			return;
+		}
+
 		AerospikeClient client = setupAerospike(params);
 
 		try {
-			if (params.amenity != null) {
+			if (params.amenity != null || params.count || params.facets
+				|| (params.clusterGrid > 0.0 && params.clusterTop > 0)) {
 				registerUDF(params, client);
 			}
 
-			long t0 = System.nanoTime();
-			queryCircle(params, client);
-			long t1 = System.nanoTime();
+			if (params.sort != null) {
+				center = new Haversine(params.lat, params.lng);
+				nearest = new TopN(params.top);
+			}
+
+			stats.start();
+			if (params.route != null) {
+				queryRoute(params, client);
+			}
+			else if (params.count || params.facets) {
+				queryCount(params, client);
+			}
+			else if (params.clusterGrid > 0.0) {
+				queryClusters(params, client);
+			}
+			else {
+				queryCircle(params, client);
+			}
+			if (nearest != null) {
+				printNearest(client);
+			}
+			stats.finish();
 
-			System.out.printf("found %d records in %.3f milliseconds\n",
-							  count, (t1 - t0) / 1e6);
+			if (params.count || params.facets) {
+				System.out.printf("counted in %.3f milliseconds\n",
+								  stats.getElapsedMillis());
+			}
+			else if (clusters != null) {
+				System.out.printf("clustered %d records into %d cells in %.3f milliseconds\n",
+								  stats.getRecords(), clusters.size(),
+								  stats.getElapsedMillis());
+			}
+			else {
+				System.out.printf("found %d records in %.3f milliseconds\n",
+								  stats.getRecords(), stats.getElapsedMillis());
+			}
+			System.out.println(stats.toJSON());
 		}
 		finally {
 			cleanupAerospike(params, client);
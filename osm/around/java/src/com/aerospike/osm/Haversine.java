@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.osm;
+
+/**
+ * Great-circle distance from a fixed center point.
+ *
+ * The center's trigonometry is computed once, so distanceTo() does no
+ * allocation and only one cosine per call.
+ */
+public class Haversine {
+
+	// Mean earth radius in meters.
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	private final double lat0;
+	private final double lng0;
+	private final double cosLat0;
+
+	public Haversine(double lat, double lng) {
+		this.lat0 = Math.toRadians(lat);
+		this.lng0 = Math.toRadians(lng);
+		this.cosLat0 = Math.cos(lat0);
+	}
+
+	// Distance in meters from the center to the given point.
+	public double distanceTo(double lat, double lng) {
+		return toMeters(haversineTo(lat, lng));
+	}
+
+	/**
+	 * The haversine of the angle between the center and the given
+	 * point.  It orders points the same way distanceTo() does but
+	 * without the arcsine, which is slow.
+	 */
+	public double haversineTo(double lat, double lng) {
+		double lat1 = Math.toRadians(lat);
+		double sdlat = Math.sin((lat1 - lat0) / 2);
+		double sdlng = Math.sin((Math.toRadians(lng) - lng0) / 2);
+		return sdlat * sdlat + cosLat0 * Math.cos(lat1) * sdlng * sdlng;
+	}
+
+	// Converts a haversineTo() value to meters, and back.
+	public static double toMeters(double hav) {
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(hav)));
+	}
+
+	public static double toHaversine(double meters) {
+		double half = Math.sin(Math.min(Math.PI, meters / EARTH_RADIUS) / 2);
+		return half * half;
+	}
+
+	/**
+	 * Parses the coordinates of a GeoJSON Point into lnglat[0] and
+	 * lnglat[1].  This is just enough of a parser for the "loc" bin;
+	 * it returns false for anything that isn't a two element position.
+	 */
+	public static boolean parsePoint(String geojson, double[] lnglat) {
+		if (geojson == null) {
+			return false;
+		}
+		int pos = geojson.indexOf("\"coordinates\"");
+		if (pos < 0) {
+			return false;
+		}
+		pos = geojson.indexOf('[', pos);
+		if (pos < 0 || geojson.charAt(skipSpace(geojson, pos + 1)) == '[') {
+			// Nested arrays are regions, not points.
+			return false;
+		}
+		int comma = geojson.indexOf(',', pos);
+		int close = geojson.indexOf(']', pos);
+		if (comma < 0 || close < 0 || close < comma) {
+			return false;
+		}
+		try {
+			lnglat[0] = Double.parseDouble(geojson.substring(pos + 1, comma).trim());
+			lnglat[1] = Double.parseDouble(geojson.substring(comma + 1, close).trim());
+		}
+		catch (NumberFormatException ex) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the numeric value of a top-level field of a JSON object,
+	 * eg. "latitude" in a val bin, or NaN if it isn't there.
+	 */
+	public static double parseNumberField(String json, String field) {
+		if (json == null) {
+			return Double.NaN;
+		}
+		int pos = json.indexOf("\"" + field + "\"");
+		if (pos < 0) {
+			return Double.NaN;
+		}
+		pos = json.indexOf(':', pos);
+		if (pos < 0) {
+			return Double.NaN;
+		}
+		int beg = skipSpace(json, pos + 1);
+		int end = beg;
+		while (end < json.length() && "+-.0123456789eE".indexOf(json.charAt(end)) >= 0) {
+			++end;
+		}
+		try {
+			return Double.parseDouble(json.substring(beg, end));
+		}
+		catch (NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+
+	private static int skipSpace(String str, int pos) {
+		while (pos < str.length() - 1 && Character.isWhitespace(str.charAt(pos))) {
+			++pos;
+		}
+		return pos;
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.osm;
+
+import com.aerospike.client.Key;
+
+/**
+ * Keeps the N nearest results seen so far in a bounded max-heap.
+ *
+ * The heap lives in parallel arrays sized up front, so offering a
+ * result that doesn't make the cut costs one comparison.  A result is
+ * either a key (the value is fetched later) or an already-known value.
+ */
+public class TopN {
+
+	private final int capacity;
+	private int size = 0;
+	private final double[] distances;
+	private final Key[] keys;
+	private final String[] values;
+
+	public TopN(int capacity) {
+		this.capacity = capacity;
+		this.distances = new double[capacity];
+		this.keys = new Key[capacity];
+		this.values = new String[capacity];
+	}
+
+	public synchronized void offer(double distance, Key key, String value) {
+		if (capacity == 0) {
+			return;
+		}
+		if (size < capacity) {
+			set(size, distance, key, value);
+			siftUp(size++);
+		}
+		else if (distance < distances[0]) {
+			set(0, distance, key, value);
+			siftDown(0, size);
+		}
+	}
+
+	/**
+	 * Sorts the heap contents nearest first.  The accessors below
+	 * index the sorted order afterwards.
+	 */
+	public synchronized void sort() {
+		for (int end = size - 1; end > 0; --end) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized double getDistance(int ii) {
+		return distances[ii];
+	}
+
+	public synchronized Key getKey(int ii) {
+		return keys[ii];
+	}
+
+	public synchronized String getValue(int ii) {
+		return values[ii];
+	}
+
+	public synchronized void setValue(int ii, String value) {
+		values[ii] = value;
+	}
+
+	private void set(int ii, double distance, Key key, String value) {
+		distances[ii] = distance;
+		keys[ii] = key;
+		values[ii] = value;
+	}
+
+	private void siftUp(int ii) {
+		while (ii > 0) {
+			int parent = (ii - 1) / 2;
+			if (distances[parent] >= distances[ii]) {
+				break;
+			}
+			swap(parent, ii);
+			ii = parent;
+		}
+	}
+
+	private void siftDown(int ii, int end) {
+		while (true) {
+			int largest = ii;
+			int left = 2 * ii + 1;
+			int right = left + 1;
+			if (left < end && distances[left] > distances[largest]) {
+				largest = left;
+			}
+			if (right < end && distances[right] > distances[largest]) {
+				largest = right;
+			}
+			if (largest == ii) {
+				return;
+			}
+			swap(ii, largest);
+			ii = largest;
+		}
+	}
+
+	private void swap(int aa, int bb) {
+		double dd = distances[aa];
+		distances[aa] = distances[bb];
+		distances[bb] = dd;
+		Key kk = keys[aa];
+		keys[aa] = keys[bb];
+		keys[bb] = kk;
+		String vv = values[aa];
+		values[aa] = values[bb];
+		values[bb] = vv;
+	}
+}
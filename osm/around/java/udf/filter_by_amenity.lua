@@ -9,3 +9,58 @@ function apply_filter(stream, amen)
   end
   return stream : filter(match_amenity) : map(select_value)
 end
+
+-- Counting: only the totals cross the network.
+
+local function one(rec)
+  return 1
+end
+
+local function add(a, b)
+  return a + b
+end
+
+local function tally_amenity(counts, rec)
+  local amenity = rec.map.amenity
+  if amenity then
+    counts[amenity] = (counts[amenity] or 0) + 1
+  end
+  return counts
+end
+
+local function merge_counts(a, b)
+  return map.merge(a, b, add)
+end
+
+local function maybe_filter(stream, amen)
+  if amen then
+    local function match_amenity(rec)
+      return rec.map.amenity and rec.map.amenity == amen
+    end
+    return stream : filter(match_amenity)
+  end
+  return stream
+end
+
+function count(stream, amen)
+  return maybe_filter(stream, amen) : map(one) : reduce(add)
+end
+
+function count_by_amenity(stream, amen)
+  return maybe_filter(stream, amen)
+    : aggregate(map(), tally_amenity) : reduce(merge_counts)
+end
+
+-- Clustering: only the position and amenity of each record are sent.
+
+local function locate(rec)
+  local point = map()
+  point.lat = rec.map.latitude
+  point.lng = rec.map.longitude
+  point.tags = rec.map.amenity
+  return point
+end
+
+function cluster_points(stream, amen)
+  return maybe_filter(stream, amen) : map(locate)
+end
@@ -26,6 +26,7 @@
 #include <iomanip>
 #include <iostream>
 #include <map>
+#include <set>
 #include <stdexcept>
 #include <vector>
 
@@ -70,6 +71,10 @@ char const *        g_mapbin = "map";
 char const *        g_hshbin = "hash";
 string	g_locndx;
 string	g_hshndx;	
+
+// Amenities which also get their location in a bin of their own.
+typedef map<string, string> AmenityBinMap;
+AmenityBinMap g_amenbins;
 	
 size_t g_npoints = 0;
 
@@ -90,11 +95,12 @@ handle_node(void const * user_data, readosm_node const * node)
 
 	// First scan the tags to see if there is a name.
     char const * name = NULL;
+    char const * amenity = NULL;
     for (int ii = 0; ii < node->tag_count; ++ii) {
-        if (strcmp(node->tags[ii].key, "name") == 0) {
+        if (strcmp(node->tags[ii].key, "name") == 0)
             name = node->tags[ii].value;
-            break;
-        }
+        else if (strcmp(node->tags[ii].key, "amenity") == 0)
+            amenity = node->tags[ii].value;
     }
     if (!name)
         return READOSM_OK;
@@ -148,7 +154,16 @@ handle_node(void const * user_data, readosm_node const * node)
     as_key key;
     as_key_init_int64(&key, g_namespace.c_str(), g_set.c_str(), node->id);
 
-    uint16_t nbins = 4;
+    // Selected amenities also get their location in a bin of their
+    // own, so a query on its index needs no filter.
+    char const * amenbin = NULL;
+    if (amenity) {
+        AmenityBinMap::const_iterator pos = g_amenbins.find(amenity);
+        if (pos != g_amenbins.end())
+            amenbin = pos->second.c_str();
+    }
+
+    uint16_t nbins = amenbin ? 5 : 4;
     
 	as_record rec;
 	as_record_inita(&rec, nbins);
@@ -156,6 +171,8 @@ handle_node(void const * user_data, readosm_node const * node)
 	as_record_set_str(&rec, g_valbin, valstr);
 	as_record_set_map(&rec, g_mapbin, asmap);
 	as_record_set_int64(&rec, g_hshbin, hshval);
+	if (amenbin)
+		as_record_set_geojson_str(&rec, amenbin, locstr);
     
 	as_error err;
 	as_status rv = aerospike_key_put(asp, &err, NULL, &key, &rec);
@@ -230,6 +247,60 @@ create_indexes(aerospike * asp)
         // Wait for the system metadata to spread to all nodes.
         aerospike_index_create_wait(&err, &task, 0);
     }
+
+    set<string> amenbins;
+    for (AmenityBinMap::const_iterator it = g_amenbins.begin();
+         it != g_amenbins.end(); ++it)
+        amenbins.insert(it->second);
+
+    for (set<string>::const_iterator it = amenbins.begin();
+         it != amenbins.end(); ++it) {
+        string ndxname = g_set + "-" + *it + "-index";
+        as_error err;
+        as_index_task task;
+        if (aerospike_index_create(asp, &err, &task, NULL,
+                                   g_namespace.c_str(), g_set.c_str(),
+								   it->c_str(), ndxname.c_str(),
+                                   AS_INDEX_GEO2DSPHERE) != AEROSPIKE_OK)
+            throwstream(runtime_error, "aerospike_index_create() returned "
+                        << err.code << " - " << err.message);
+
+        // Wait for the system metadata to spread to all nodes.
+        aerospike_index_create_wait(&err, &task, 0);
+    }
+}
+
+// Parses "cafe,food=fast_food+restaurant" into g_amenbins.
+void
+parse_amenity_bins(string const & spec)
+{
+	size_t beg = 0;
+	while (beg <= spec.size()) {
+		size_t end = spec.find(',', beg);
+		if (end == string::npos)
+			end = spec.size();
+		string item = spec.substr(beg, end - beg);
+		beg = end + 1;
+
+		string binname = item;
+		string amenities = item;
+		size_t eq = item.find('=');
+		if (eq != string::npos) {
+			binname = item.substr(0, eq);
+			amenities = item.substr(eq + 1);
+		}
+		if (binname.empty() || binname.size() > 14)
+			throwstream(runtime_error, "invalid bin name: " << binname);
+
+		size_t abeg = 0;
+		while (abeg <= amenities.size()) {
+			size_t aend = amenities.find('+', abeg);
+			if (aend == string::npos)
+				aend = amenities.size();
+			g_amenbins[amenities.substr(abeg, aend - abeg)] = binname;
+			abeg = aend + 1;
+		}
+	}
 }
 
 void
@@ -255,6 +326,8 @@ usage(int & argc, char ** & argv)
 		 << "    -P, --password=PASSWORD     	password                [<none>]" << endl
 		 << "    -n, --namespace=NAMESPACE   	query namespace         [" << DEF_NAMESPACE << "]" << endl
 		 << "    -s, --set=SET               	query set               [" << DEF_SET << "]" << endl
+		 << "    -a, --amenity-bins=LIST     	per-amenity loc bins    [<none>]" << endl
+		 << "                                	eg. cafe,food=fast_food+restaurant" << endl
 		;
 }
 
@@ -272,13 +345,14 @@ parse_arguments(int & argc, char ** & argv)
 			{"password",                required_argument,  0, 'P'},
 			{"namespace",               required_argument,  0, 'n'},
 			{"set",                     required_argument,  0, 's'},
+			{"amenity-bins",            required_argument,  0, 'a'},
 			{0, 0, 0, 0}
 		};
 
 	while (true)
 	{
 		int optndx = 0;
-		int opt = getopt_long(argc, argv, "uh:p:U:P:n:s:",
+		int opt = getopt_long(argc, argv, "uh:p:U:P:n:s:a:",
 							  long_options, &optndx);
 
 		// Are we done processing arguments?
@@ -317,6 +391,10 @@ parse_arguments(int & argc, char ** & argv)
 			g_set = optarg;
 			break;
 
+		case 'a':
+			parse_amenity_bins(optarg);
+			break;
+
 		case'?':
 			// getopt_long already printed an error message
 			usage(argc, argv);
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.osm;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.google.gson.Gson;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.async.MaxCommandAction;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.task.IndexTask;
+
+/**
+ * Loads the named nodes of an OSM PBF file, with the same record layout
+ * as the Python and C++ loaders.
+ *
+ * The file is read sequentially, one blob at a time, and each blob is
+ * inflated and decoded on a pool with a thread per core.  Decoded nodes
+ * are written with the async client, whose command limit blocks the
+ * decoders when the server falls behind, so memory stays bounded.
+ */
+public class Load {
+
+	private static final Gson gson = new Gson();
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		String infile;
+		String locbin;
+		String valbin;
+		String mapbin;
+		String hshbin;
+		String locndx;
+		String hshndx;
+		Map<String, String> amenbins;	// amenity -> extra location bin
+		int threads;
+		int writes;
+		String indexFile;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "osm";
+			this.infile = null;
+			this.locbin = "loc";
+			this.valbin = "val";
+			this.mapbin = "map";
+			this.hshbin = "hash";
+			this.locndx = null;
+			this.hshndx = null;
+			this.amenbins = new HashMap<String, String>();
+			this.threads = Runtime.getRuntime().availableProcessors();
+			this.writes = 256;
+			this.indexFile = null;
+		}
+	}
+
+	private static final ThreadLocal<MessageDigest> sha256 =
+		new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance("SHA-256");
+				}
+				catch (NoSuchAlgorithmException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+
+	// Same hash as the Python loader: SHA-256 of the big-endian id.
+	private static long idToHash(long id) {
+		byte[] digest =
+			sha256.get().digest(ByteBuffer.allocate(8).putLong(id).array());
+		return ByteBuffer.wrap(digest).getLong() & 0x7fffffffffffffffL;
+	}
+
+	/**
+	 * Counts completed writes and lets run() wait for the last ones.
+	 */
+	private static class WriteTracker implements WriteListener {
+		final AtomicLong pending = new AtomicLong();
+		final AtomicLong written = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+
+		public void onSuccess(Key key) {
+			if (written.incrementAndGet() % 1000 == 0) {
+				System.err.write('.');
+				System.err.flush();
+			}
+			pending.decrementAndGet();
+		}
+
+		public void onFailure(AerospikeException ex) {
+			if (failed.incrementAndGet() <= 10) {
+				System.err.println("write failed: " + ex.getMessage());
+			}
+			pending.decrementAndGet();
+		}
+
+		void drain() throws InterruptedException {
+			while (pending.get() > 0) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private static class NodeWriter implements BlockDecoder.Handler {
+		private final Parameters params;
+		private final AsyncClient client;
+		private final WritePolicy policy;
+		private final WriteTracker tracker;
+		private final PointIndexWriter pointIndex;
+
+		NodeWriter(Parameters params, AsyncClient client, WriteTracker tracker,
+				   PointIndexWriter pointIndex) {
+			this.params = params;
+			this.client = client;
+			this.tracker = tracker;
+			this.pointIndex = pointIndex;
+			this.policy = new WritePolicy();
+			this.policy.timeout = 10 * 1000;
+			this.policy.maxRetries = 10;
+		}
+
+		public void node(long osmid, double lat, double lng,
+						 Map<String, String> tags) {
+			// Build a synthetic value by copying the tags and adding
+			// osmid, latitude and longitude.
+			Map<String, Object> valobj = new LinkedHashMap<String, Object>(tags);
+			valobj.put("osmid", osmid);
+			valobj.put("latitude", lat);
+			valobj.put("longitude", lng);
+			String valstr = gson.toJson(valobj);
+
+			String locstr = "{\"type\": \"Point\", \"coordinates\": ["
+				+ lng + ", " + lat + "]}";
+
+			Key key = new Key(params.namespace, params.set, osmid);
+			Bin valbin = new Bin(params.valbin, valstr);
+			Bin locbin = Bin.asGeoJSON(params.locbin, locstr);
+			Bin mapbin = new Bin(params.mapbin, valobj);
+			Bin hshbin = new Bin(params.hshbin, idToHash(osmid));
+
+			if (pointIndex != null) {
+				pointIndex.add(lat, lng, osmid);
+			}
+
+			tracker.pending.incrementAndGet();
+			try {
+				// Selected amenities also get their location in a bin of
+				// their own, so a query on its index needs no filter.
+				String amenbin = params.amenbins.get(tags.get("amenity"));
+				if (amenbin != null) {
+					client.put(policy, tracker, key, valbin, locbin, mapbin,
+							   hshbin, Bin.asGeoJSON(amenbin, locstr));
+				}
+				else {
+					client.put(policy, tracker, key, valbin, locbin, mapbin,
+							   hshbin);
+				}
+			}
+			catch (AerospikeException ex) {
+				tracker.onFailure(ex);
+			}
+		}
+	}
+
+	private static void createIndexes(Parameters params,
+									  AsyncClient client) throws Exception {
+		Policy policy = new Policy();
+		policy.timeout = 0; // Do not timeout on index create.
+		IndexTask task =
+			client.createIndex(policy, params.namespace, params.set,
+							   params.locndx, params.locbin,
+							   IndexType.GEO2DSPHERE);
+		task.waitTillComplete();
+		task = client.createIndex(policy, params.namespace, params.set,
+								  params.hshndx, params.hshbin,
+								  IndexType.NUMERIC);
+		task.waitTillComplete();
+		for (String amenbin : new TreeSet<String>(params.amenbins.values())) {
+			task = client.createIndex(policy, params.namespace, params.set,
+									  params.set + "-" + amenbin + "-index",
+									  amenbin, IndexType.GEO2DSPHERE);
+			task.waitTillComplete();
+		}
+	}
+
+	private static AsyncClient setupAerospike(Parameters params) throws Exception {
+		AsyncClientPolicy clipolicy = new AsyncClientPolicy();
+		clipolicy.user = params.user;
+		clipolicy.password = params.password;
+		clipolicy.failIfNotConnected = true;
+		clipolicy.asyncMaxCommands = params.writes;
+		clipolicy.asyncMaxCommandAction = MaxCommandAction.BLOCK;
+
+		return new AsyncClient(clipolicy, params.host, params.port);
+	}
+
+	private static void cleanupAerospike(Parameters params,
+										 AsyncClient client) throws Exception {
+		client.close();
+	}
+
+	// Parses "cafe,food=fast_food+restaurant" into an amenity -> bin map.
+	private static Map<String, String> parseAmenityBins(String spec)
+		throws ParseException {
+		Map<String, String> amenbins = new HashMap<String, String>();
+		if (spec == null) {
+			return amenbins;
+		}
+		for (String item : spec.split(",")) {
+			String binname = item;
+			String amenities = item;
+			int eq = item.indexOf('=');
+			if (eq >= 0) {
+				binname = item.substring(0, eq);
+				amenities = item.substring(eq + 1);
+			}
+			if (binname.length() == 0 || binname.length() > 14) {
+				throw new ParseException("invalid bin name: " + binname);
+			}
+			for (String amenity : amenities.split("\\+")) {
+				amenbins.put(amenity, binname);
+			}
+		}
+		return amenbins;
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + Load.class.getName()
+			+ " [<options>] <infile>";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: osm)");
+		options.addOption("a", "amenity-bins", true,
+						  "Also index these amenities in their own location bins, "
+						  + "eg. cafe,food=fast_food+restaurant");
+		options.addOption("t", "threads", true,
+						  "Decoding threads (default: number of cores)");
+		options.addOption("w", "writes", true,
+						  "Maximum writes in flight (default: 256)");
+		options.addOption("i", "index-file", true,
+						  "Also write the points to this point index file, for Around --index-file");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "osm");
+		params.amenbins = parseAmenityBins(cl.getOptionValue("a"));
+		if (cl.hasOption("t")) {
+			params.threads = Integer.parseInt(cl.getOptionValue("t"));
+		}
+		params.writes = Integer.parseInt(cl.getOptionValue("w", "256"));
+		params.indexFile = cl.getOptionValue("i");
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		String[] remargs = cl.getArgs();
+		if (remargs.length != 1) {
+			System.out.println("missing infile parameter");
+			usage(options);
+			System.exit(1);
+		}
+
+		params.infile = remargs[0];
+
+		return params;
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		// Open the file early to make sure we can.
+		PbfReader reader = new PbfReader(params.infile);
+
+		AsyncClient client = setupAerospike(params);
+
+		params.locndx = params.set + "-loc-index";
+		params.hshndx = params.set + "-hsh-index";
+
+		createIndexes(params, client);
+
+		WriteTracker tracker = new WriteTracker();
+		PointIndexWriter pointIndex =
+			params.indexFile == null ? null : new PointIndexWriter(true);
+		final NodeWriter writer = new NodeWriter(params, client, tracker, pointIndex);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		// At most two blobs per thread are read ahead of the decoders.
+		final Semaphore readahead = new Semaphore(2 * params.threads);
+		ExecutorService decoders = Executors.newFixedThreadPool(params.threads);
+
+		try {
+			long t0 = System.nanoTime();
+			PbfReader.Blob blob;
+			while (failure.get() == null && (blob = reader.next()) != null) {
+				if (!blob.getType().equals("OSMData")) {
+					continue;
+				}
+				readahead.acquire();
+				final PbfReader.Blob data = blob;
+				decoders.execute(new Runnable() {
+						public void run() {
+							try {
+								new BlockDecoder(writer).decode(data.inflate());
+							}
+							catch (Exception ex) {
+								failure.compareAndSet(null, ex);
+							}
+							finally {
+								readahead.release();
+							}
+						}
+					});
+			}
+			decoders.shutdown();
+			decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			tracker.drain();
+			long t1 = System.nanoTime();
+
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+			System.err.write('\n');
+			System.out.printf("loaded %d points in %.3f seconds (%d failed)\n",
+							  tracker.written.get(), (t1 - t0) / 1e9,
+							  tracker.failed.get());
+
+			if (pointIndex != null) {
+				pointIndex.write(params.indexFile);
+				System.out.printf("wrote %d points to %s in %.3f seconds\n",
+								  pointIndex.size(), params.indexFile,
+								  (System.nanoTime() - t1) / 1e9);
+			}
+		}
+		finally {
+			decoders.shutdownNow();
+			reader.close();
+			cleanupAerospike(params, client);
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.osm;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads protocol buffer wire format from a byte array.
+ *
+ * Only what the OSM PBF messages use is supported: varints, zigzag
+ * varints, length delimited fields and skipping the fixed width ones.
+ * Sub-messages share the underlying array, so nothing is copied.
+ */
+public class ProtoReader {
+
+	public static final int VARINT = 0;
+	public static final int FIXED64 = 1;
+	public static final int DELIMITED = 2;
+	public static final int FIXED32 = 5;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final byte[] buf;
+	private int pos;
+	private final int limit;
+
+	public ProtoReader(byte[] buf, int offset, int length) {
+		this.buf = buf;
+		this.pos = offset;
+		this.limit = offset + length;
+	}
+
+	public boolean hasMore() {
+		return pos < limit;
+	}
+
+	// Returns the next field key; its number is key >>> 3, its wire type key & 7.
+	public int readKey() throws IOException {
+		return (int) readVarint();
+	}
+
+	public long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (pos >= limit) {
+				throw new IOException("truncated varint");
+			}
+			byte bb = buf[pos++];
+			value |= (long) (bb & 0x7f) << shift;
+			if (bb >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	public long readSignedVarint() throws IOException {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	// Returns a reader over the next length delimited field and skips it.
+	public ProtoReader readMessage() throws IOException {
+		int length = readLength();
+		ProtoReader sub = new ProtoReader(buf, pos, length);
+		pos += length;
+		return sub;
+	}
+
+	public String readString() throws IOException {
+		int length = readLength();
+		String str = new String(buf, pos, length, UTF8);
+		pos += length;
+		return str;
+	}
+
+	public byte[] readBytes() throws IOException {
+		int length = readLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(buf, pos, bytes, 0, length);
+		pos += length;
+		return bytes;
+	}
+
+	public void skip(int wireType) throws IOException {
+		switch (wireType) {
+		case VARINT:
+			readVarint();
+			break;
+		case FIXED64:
+			advance(8);
+			break;
+		case DELIMITED:
+			advance(readLength());
+			break;
+		case FIXED32:
+			advance(4);
+			break;
+		default:
+			throw new IOException("unsupported wire type " + wireType);
+		}
+	}
+
+	private int readLength() throws IOException {
+		long length = readVarint();
+		if (length < 0 || length > limit - pos) {
+			throw new IOException("truncated field");
+		}
+		return (int) length;
+	}
+
+	private void advance(int count) throws IOException {
+		if (count > limit - pos) {
+			throw new IOException("truncated field");
+		}
+		pos += count;
+	}
+}
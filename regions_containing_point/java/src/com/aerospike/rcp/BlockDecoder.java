@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the named nodes of an inflated OSM PrimitiveBlock.
+ *
+ * Both plain and dense nodes are handled; ways and relations are
+ * skipped.  Nodes without a "name" tag are dropped before their tags
+ * are looked up, which is most of them.
+ */
+public class BlockDecoder {
+
+	public interface Handler {
+		void node(long osmid, double lat, double lng, Map<String, String> tags);
+	}
+
+	private final Handler handler;
+	private String[] strings;
+	private int nameIndex;
+	private long granularity;
+	private long latOffset;
+	private long lonOffset;
+
+	public BlockDecoder(Handler handler) {
+		this.handler = handler;
+	}
+
+	public void decode(byte[] block) throws IOException {
+		// The string table and the coordinate scaling follow the groups
+		// in the encoding, so find everything before decoding any nodes.
+		List<ProtoReader> groups = new ArrayList<ProtoReader>();
+		strings = new String[0];
+		granularity = 100;
+		latOffset = 0;
+		lonOffset = 0;
+		ProtoReader pr = new ProtoReader(block, 0, block.length);
+		while (pr.hasMore()) {
+			int key = pr.readKey();
+			switch (key >>> 3) {
+			case 1:
+				strings = readStringTable(pr.readMessage());
+				break;
+			case 2:
+				groups.add(pr.readMessage());
+				break;
+			case 17:
+				granularity = pr.readVarint();
+				break;
+			case 19:
+				latOffset = pr.readVarint();
+				break;
+			case 20:
+				lonOffset = pr.readVarint();
+				break;
+			default:
+				pr.skip(key & 7);
+				break;
+			}
+		}
+
+		nameIndex = -1;
+		for (int ii = 1; ii < strings.length; ++ii) {
+			if (strings[ii].equals("name")) {
+				nameIndex = ii;
+				break;
+			}
+		}
+		if (nameIndex < 0) {
+			return;
+		}
+
+		for (ProtoReader group : groups) {
+			while (group.hasMore()) {
+				int key = group.readKey();
+				switch (key >>> 3) {
+				case 1:
+					decodeNode(group.readMessage());
+					break;
+				case 2:
+					decodeDense(group.readMessage());
+					break;
+				default:
+					group.skip(key & 7);
+					break;
+				}
+			}
+		}
+	}
+
+	private static String[] readStringTable(ProtoReader pr) throws IOException {
+		List<String> strs = new ArrayList<String>();
+		while (pr.hasMore()) {
+			int key = pr.readKey();
+			if ((key >>> 3) == 1) {
+				strs.add(pr.readString());
+			}
+			else {
+				pr.skip(key & 7);
+			}
+		}
+		return strs.toArray(new String[strs.size()]);
+	}
+
+	private double lat(long raw) {
+		return (latOffset + granularity * raw) / 1e9;
+	}
+
+	private double lng(long raw) {
+		return (lonOffset + granularity * raw) / 1e9;
+	}
+
+	private String string(long index) throws IOException {
+		if (index < 0 || index >= strings.length) {
+			throw new IOException("bad string index: " + index);
+		}
+		return strings[(int) index];
+	}
+
+	private void decodeNode(ProtoReader pr) throws IOException {
+		long id = 0;
+		long rawLat = 0;
+		long rawLon = 0;
+		List<Long> keys = new ArrayList<Long>();
+		List<Long> vals = new ArrayList<Long>();
+		while (pr.hasMore()) {
+			int key = pr.readKey();
+			switch (key >>> 3) {
+			case 1:
+				id = pr.readSignedVarint();
+				break;
+			case 2:
+				readIndexes(pr, key & 7, keys);
+				break;
+			case 3:
+				readIndexes(pr, key & 7, vals);
+				break;
+			case 8:
+				rawLat = pr.readSignedVarint();
+				break;
+			case 9:
+				rawLon = pr.readSignedVarint();
+				break;
+			default:
+				pr.skip(key & 7);
+				break;
+			}
+		}
+		if (!keys.contains(Long.valueOf(nameIndex))) {
+			return;
+		}
+		if (keys.size() != vals.size()) {
+			throw new IOException("node " + id + " has unpaired tags");
+		}
+		Map<String, String> tags = new LinkedHashMap<String, String>();
+		for (int ii = 0; ii < keys.size(); ++ii) {
+			tags.put(string(keys.get(ii)), string(vals.get(ii)));
+		}
+		handler.node(id, lat(rawLat), lng(rawLon), tags);
+	}
+
+	// Repeated fields may be packed or not.
+	private static void readIndexes(ProtoReader pr, int wireType, List<Long> out)
+		throws IOException {
+		if (wireType == ProtoReader.DELIMITED) {
+			ProtoReader packed = pr.readMessage();
+			while (packed.hasMore()) {
+				out.add(packed.readVarint());
+			}
+		}
+		else {
+			out.add(pr.readVarint());
+		}
+	}
+
+	private void decodeDense(ProtoReader pr) throws IOException {
+		ProtoReader ids = null;
+		ProtoReader lats = null;
+		ProtoReader lons = null;
+		ProtoReader keysVals = null;
+		while (pr.hasMore()) {
+			int key = pr.readKey();
+			int field = key >>> 3;
+			if ((key & 7) == ProtoReader.DELIMITED
+				&& (field == 1 || field == 8 || field == 9 || field == 10)) {
+				ProtoReader packed = pr.readMessage();
+				switch (field) {
+				case 1:
+					ids = packed;
+					break;
+				case 8:
+					lats = packed;
+					break;
+				case 9:
+					lons = packed;
+					break;
+				default:
+					keysVals = packed;
+					break;
+				}
+			}
+			else {
+				pr.skip(key & 7);
+			}
+		}
+		if (ids == null || lats == null || lons == null || keysVals == null) {
+			// Without tags there can't be any names.
+			return;
+		}
+
+		// Ids and coordinates are delta coded; the tags of each node are
+		// key/value string indexes terminated by a zero.
+		long id = 0;
+		long rawLat = 0;
+		long rawLon = 0;
+		long[] kv = new long[64];
+		while (ids.hasMore()) {
+			id += ids.readSignedVarint();
+			rawLat += lats.readSignedVarint();
+			rawLon += lons.readSignedVarint();
+
+			int nkv = 0;
+			boolean named = false;
+			while (keysVals.hasMore()) {
+				long index = keysVals.readVarint();
+				if (index == 0) {
+					break;
+				}
+				if (nkv == kv.length) {
+					long[] bigger = new long[kv.length * 2];
+					System.arraycopy(kv, 0, bigger, 0, nkv);
+					kv = bigger;
+				}
+				if (nkv % 2 == 0 && index == nameIndex) {
+					named = true;
+				}
+				kv[nkv++] = index;
+			}
+			if (!named) {
+				continue;
+			}
+			if (nkv % 2 != 0) {
+				throw new IOException("node " + id + " has unpaired tags");
+			}
+			Map<String, String> tags = new LinkedHashMap<String, String>();
+			for (int ii = 0; ii < nkv; ii += 2) {
+				tags.put(string(kv[ii]), string(kv[ii + 1]));
+			}
+			handler.node(id, lat(rawLat), lng(rawLon), tags);
+		}
+	}
+}
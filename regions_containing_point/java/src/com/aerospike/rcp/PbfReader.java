@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Splits an OSM PBF file into its blobs.
+ *
+ * The file is a sequence of (length, BlobHeader, Blob) frames and every
+ * blob is compressed on its own, so reading the frames is cheap and
+ * sequential while inflating and decoding them can be spread over as
+ * many threads as there are cores.
+ */
+public class PbfReader implements Closeable {
+
+	// Limits from the PBF specification.
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * One still compressed blob.  inflate() may be called on any thread.
+	 */
+	public static class Blob {
+		private final String type;
+		private final byte[] data;
+
+		Blob(String type, byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		// "OSMHeader" or "OSMData"
+		public String getType() {
+			return type;
+		}
+
+		public byte[] inflate() throws IOException {
+			ProtoReader pr = new ProtoReader(data, 0, data.length);
+			byte[] raw = null;
+			byte[] zlib = null;
+			int rawSize = -1;
+			while (pr.hasMore()) {
+				int key = pr.readKey();
+				switch (key >>> 3) {
+				case 1:
+					raw = pr.readBytes();
+					break;
+				case 2:
+					rawSize = (int) pr.readVarint();
+					break;
+				case 3:
+					zlib = pr.readBytes();
+					break;
+				default:
+					if ((key >>> 3) >= 4 && (key >>> 3) <= 8) {
+						throw new IOException("unsupported blob compression");
+					}
+					pr.skip(key & 7);
+					break;
+				}
+			}
+			if (raw != null) {
+				return raw;
+			}
+			if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+				throw new IOException("malformed blob");
+			}
+			byte[] out = new byte[rawSize];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(zlib);
+				int nn = 0;
+				while (nn < rawSize && !inflater.finished()) {
+					int got = inflater.inflate(out, nn, rawSize - nn);
+					if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					nn += got;
+				}
+				if (nn != rawSize) {
+					throw new IOException("short blob: " + nn + " of " + rawSize);
+				}
+			}
+			catch (DataFormatException ex) {
+				throw new IOException("corrupt blob", ex);
+			}
+			finally {
+				inflater.end();
+			}
+			return out;
+		}
+	}
+
+	private final DataInputStream in;
+
+	public PbfReader(String path) throws IOException {
+		this.in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(path), 1 << 20));
+	}
+
+	// Returns the next blob, or null at the end of the file.
+	public Blob next() throws IOException {
+		int headerSize;
+		try {
+			headerSize = in.readInt();
+		}
+		catch (EOFException ex) {
+			return null;
+		}
+		if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+			throw new IOException("bad blob header size: " + headerSize);
+		}
+		byte[] header = new byte[headerSize];
+		in.readFully(header);
+
+		String type = null;
+		int dataSize = -1;
+		ProtoReader pr = new ProtoReader(header, 0, header.length);
+		while (pr.hasMore()) {
+			int key = pr.readKey();
+			switch (key >>> 3) {
+			case 1:
+				type = pr.readString();
+				break;
+			case 3:
+				dataSize = (int) pr.readVarint();
+				break;
+			default:
+				pr.skip(key & 7);
+				break;
+			}
+		}
+		if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+			throw new IOException("malformed blob header");
+		}
+		byte[] data = new byte[dataSize];
+		in.readFully(data);
+		return new Blob(type, data);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
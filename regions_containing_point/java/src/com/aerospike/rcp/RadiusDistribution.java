@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+/**
+ * The radius, in meters, of the region built around each matching point.
+ *
+ * A distribution is given as one of:
+ *
+ *   500                  every region is 500 meters
+ *   uniform:100:1000     uniformly between 100 and 1000 meters
+ *   lognormal:500:0.5    log-normal with a median of 500 meters and
+ *                        a sigma of 0.5, for a few very large regions
+ *
+ * The radius of a point depends only on its id, so loading the same
+ * data twice builds the same regions.
+ */
+public class RadiusDistribution {
+
+	private enum Kind { FIXED, UNIFORM, LOGNORMAL }
+
+	private final Kind kind;
+	private final double p1;
+	private final double p2;
+
+	private RadiusDistribution(Kind kind, double p1, double p2) {
+		this.kind = kind;
+		this.p1 = p1;
+		this.p2 = p2;
+	}
+
+	public static RadiusDistribution parse(String spec) {
+		String[] fields = spec.split(":");
+		try {
+			if (fields.length == 1) {
+				return checked(new RadiusDistribution(
+					Kind.FIXED, Double.parseDouble(fields[0]), 0.0), spec);
+			}
+			if (fields.length == 3 && fields[0].equals("uniform")) {
+				double min = Double.parseDouble(fields[1]);
+				double max = Double.parseDouble(fields[2]);
+				if (max < min) {
+					throw new IllegalArgumentException(
+						"invalid radius distribution: " + spec);
+				}
+				return checked(new RadiusDistribution(Kind.UNIFORM, min, max), spec);
+			}
+			if (fields.length == 3 && fields[0].equals("lognormal")) {
+				return checked(new RadiusDistribution(
+					Kind.LOGNORMAL,
+					Double.parseDouble(fields[1]),
+					Double.parseDouble(fields[2])), spec);
+			}
+		}
+		catch (NumberFormatException ex) {
+			// Fall through.
+		}
+		throw new IllegalArgumentException("invalid radius distribution: " + spec);
+	}
+
+	private static RadiusDistribution checked(RadiusDistribution rd, String spec) {
+		if (!(rd.p1 > 0.0) || rd.p2 < 0.0) {
+			throw new IllegalArgumentException(
+				"invalid radius distribution: " + spec);
+		}
+		return rd;
+	}
+
+	public double radius(long osmid) {
+		switch (kind) {
+		case UNIFORM:
+			return p1 + uniform(osmid, 0) * (p2 - p1);
+		case LOGNORMAL:
+			return p1 * Math.exp(p2 * gaussian(osmid));
+		default:
+			return p1;
+		}
+	}
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * A uniform variate in [0, 1) for an id.  The id goes through the
+	 * SplitMix64 finalizer first: seeding a Random with it directly gives
+	 * nearly the same first value for neighboring ids.
+	 */
+	private static double uniform(long osmid, int stream) {
+		long zz = osmid + (stream + 1) * GOLDEN_GAMMA;
+		zz = (zz ^ (zz >>> 30)) * 0xbf58476d1ce4e5b9L;
+		zz = (zz ^ (zz >>> 27)) * 0x94d049bb133111ebL;
+		zz = zz ^ (zz >>> 31);
+		return (zz >>> 11) * 0x1.0p-53;
+	}
+
+	// A standard normal variate for an id, by Box-Muller.
+	private static double gaussian(long osmid) {
+		double u1 = 1.0 - uniform(osmid, 0);	// (0, 1], for the log
+		double u2 = uniform(osmid, 1);
+		return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+	}
+
+	@Override
+	public String toString() {
+		switch (kind) {
+		case UNIFORM:
+			return "uniform:" + p1 + ":" + p2;
+		case LOGNORMAL:
+			return "lognormal:" + p1 + ":" + p2;
+		default:
+			return Double.toString(p1);
+		}
+	}
+}
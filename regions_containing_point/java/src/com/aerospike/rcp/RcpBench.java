@@ -0,0 +1,477 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Record;
+import com.aerospike.client.policy.ClientPolicy;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.Statement;
+
+/**
+ * Regions-containing-point benchmark, the Java version of rcpbench.cpp.
+ *
+ * A deterministic set of loaded points is sampled with a range query on
+ * the hash bin.  Worker threads then ask for the regions containing
+ * each point with Filter.geoContains and record the latency until the
+ * first and until all results, by result size.
+ *
+ * With a target rate every query has an intended start time on a fixed
+ * schedule and latency is measured from that time, so a stalled server
+ * also charges the queries that should have been issued meanwhile
+ * (no coordinated omission).
+ */
+public class RcpBench {
+
+	private static final String IDBIN = "id";
+	private static final String LOCBIN = "loc";
+	private static final String RGNBIN = "rgn";
+	private static final String HSHBIN = "hash";
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		int numinst;
+		int numthreads;
+		long totalpoints;
+		int nsamples;
+		long sampleoff;
+		double duration;	// seconds, 0 runs through the samples once
+		double warmup;		// seconds
+		double qps;			// 0 is unthrottled
+		String csvfile;
+		String jsonfile;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "osm";
+			this.numinst = 4;
+			this.numthreads = 80;
+			this.totalpoints = 11269358;
+			this.nsamples = 10000;
+			this.sampleoff = 0;
+			this.duration = 0.0;
+			this.warmup = 0.0;
+			this.qps = 0.0;
+			this.csvfile = null;
+			this.jsonfile = null;
+		}
+	}
+
+	private static class SamplePoint {
+		final long hash;
+		final String geojson;
+
+		SamplePoint(long hash, double lat, double lng) {
+			this.hash = hash;
+			this.geojson = String.format(
+				"{ \"type\": \"Point\", \"coordinates\": [%.8f, %.8f] }", lng, lat);
+		}
+	}
+
+	private static List<SamplePoint> collectSamplePoints(Parameters params,
+														 AerospikeClient client) {
+		// All records have a hash value which is uniformly distributed
+		// between 0 and 2^63.  We ask for 10% extra ...
+		double factor = Math.pow(2, 63) / (double) params.totalpoints;
+		long minval = (long) (params.sampleoff * factor);
+		long maxval = minval + (long) (params.nsamples * 1.1 * factor);
+
+		Statement stmt = new Statement();
+		stmt.setNamespace(params.namespace);
+		stmt.setSetName(params.set);
+		stmt.setBinNames(HSHBIN, LOCBIN);
+		stmt.setFilters(Filter.range(HSHBIN, minval, maxval));
+
+		List<SamplePoint> points = new ArrayList<SamplePoint>();
+		JsonParser parser = new JsonParser();
+		RecordSet rs = client.query(null, stmt);
+		try {
+			while (rs.next()) {
+				Record rec = rs.getRecord();
+				String locstr = rec.getGeoJSON(LOCBIN);
+				if (locstr == null) {
+					continue;
+				}
+				JsonElement coords =
+					parser.parse(locstr).getAsJsonObject().get("coordinates");
+				if (coords == null || !coords.isJsonArray()) {
+					continue;
+				}
+				JsonArray arr = coords.getAsJsonArray();
+				if (arr.size() != 2 || !arr.get(0).isJsonPrimitive()) {
+					// This is not a point (likely a region), skip it.
+					continue;
+				}
+				points.add(new SamplePoint(rec.getLong(HSHBIN),
+										   arr.get(1).getAsDouble(),
+										   arr.get(0).getAsDouble()));
+			}
+		}
+		finally {
+			rs.close();
+		}
+
+		// We'd like to have a deterministic set of points.  They will have
+		// arrived in random order.  By sorting and then trimming we get
+		// the same set each time ...
+		System.err.println("found " + points.size() + " candidate samples");
+		if (points.size() < params.nsamples) {
+			throw new IllegalStateException("not enough candidate samples: "
+											+ points.size());
+		}
+		Collections.sort(points, new Comparator<SamplePoint>() {
+				public int compare(SamplePoint p0, SamplePoint p1) {
+					return p0.hash < p1.hash ? -1 : p0.hash > p1.hash ? 1 : 0;
+				}
+			});
+		return new ArrayList<SamplePoint>(points.subList(0, params.nsamples));
+	}
+
+	/**
+	 * The shared query schedule.  Queries are numbered in issue order;
+	 * query N is intended to start at start + N * interval.
+	 */
+	private static class Schedule {
+		final long start;
+		final long interval;	// nanoseconds, 0 when unthrottled
+		final long warmupEnd;
+		final long end;			// Long.MAX_VALUE for a single pass
+		final int npoints;
+		final AtomicLong next = new AtomicLong();
+
+		Schedule(Parameters params, int npoints) {
+			this.start = System.nanoTime();
+			this.interval = params.qps > 0.0 ? (long) (1e9 / params.qps) : 0;
+			this.warmupEnd = start + (long) (params.warmup * 1e9);
+			this.end = params.duration > 0.0
+				? warmupEnd + (long) (params.duration * 1e9)
+				: Long.MAX_VALUE;
+			this.npoints = npoints;
+		}
+	}
+
+	private static class QueryWorker implements Runnable {
+		private final Parameters params;
+		private final AerospikeClient client;
+		private final List<SamplePoint> points;
+		private final Schedule sched;
+		private final AtomicReference<Exception> failure;
+		final ResultSizeTable table = new ResultSizeTable();
+		long measuredEnd = 0;
+
+		QueryWorker(Parameters params, AerospikeClient client,
+					List<SamplePoint> points, Schedule sched,
+					AtomicReference<Exception> failure) {
+			this.params = params;
+			this.client = client;
+			this.points = points;
+			this.sched = sched;
+			this.failure = failure;
+		}
+
+		public void run() {
+			try {
+				while (failure.get() == null) {
+					long seq = sched.next.getAndIncrement();
+					if (sched.end == Long.MAX_VALUE && seq >= sched.npoints) {
+						break;
+					}
+
+					long t0 = System.nanoTime();
+					if (sched.interval > 0) {
+						long intended = sched.start + seq * sched.interval;
+						while (t0 < intended) {
+							LockSupport.parkNanos(intended - t0);
+							t0 = System.nanoTime();
+						}
+						// Charge any lateness to the query.
+						t0 = intended;
+					}
+					if (t0 >= sched.end) {
+						break;
+					}
+
+					SamplePoint pt = points.get((int) (seq % sched.npoints));
+					long[] result = query(pt);
+
+					if (t0 >= sched.warmupEnd) {
+						table.record(result[0], (result[1] - t0) / 1000,
+									 (result[2] - t0) / 1000);
+						measuredEnd = Math.max(measuredEnd, result[2]);
+					}
+				}
+			}
+			catch (Exception ex) {
+				failure.compareAndSet(null, ex);
+			}
+		}
+
+		// Returns { records, first result time, completion time }.
+		private long[] query(SamplePoint pt) {
+			Statement stmt = new Statement();
+			stmt.setNamespace(params.namespace);
+			stmt.setSetName(params.set);
+			stmt.setBinNames(IDBIN);
+			stmt.setFilters(Filter.geoContains(RGNBIN, pt.geojson));
+
+			long nrecs = 0;
+			long first = 0;
+			RecordSet rs = client.query(null, stmt);
+			try {
+				while (true) {
+					boolean more = rs.next();
+					if (first == 0) {
+						first = System.nanoTime();
+					}
+					if (!more) {
+						break;
+					}
+					++nrecs;
+				}
+			}
+			finally {
+				rs.close();
+			}
+			return new long[] { nrecs, first, System.nanoTime() };
+		}
+	}
+
+	private static AerospikeClient setupAerospike(Parameters params) throws Exception {
+		ClientPolicy clipolicy = new ClientPolicy();
+		clipolicy.user = params.user;
+		clipolicy.password = params.password;
+		clipolicy.failIfNotConnected = true;
+		clipolicy.maxThreads = params.numthreads;
+		return new AerospikeClient(clipolicy, params.host, params.port);
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + RcpBench.class.getName() + " [<options>]";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: osm)");
+		options.addOption("i", "num-inst", true, "Number of client instances (default: 4)");
+		options.addOption("t", "num-threads", true, "Number of query threads (default: 80)");
+		options.addOption("T", "total-points", true,
+						  "Total points in the database (default: 11269358)");
+		options.addOption("z", "num-samples", true, "Sample set size (default: 10000)");
+		options.addOption("o", "sample-offset", true, "Sample set offset (default: 0)");
+		options.addOption("d", "duration", true,
+						  "Seconds to run, cycling through the samples "
+						  + "(default: one pass over the samples)");
+		options.addOption("w", "warmup", true,
+						  "Seconds of queries to run before recording (default: 0)");
+		options.addOption("q", "qps", true,
+						  "Target queries per second (default: unthrottled)");
+		options.addOption("c", "csv", true, "Write the latency table as CSV to this file");
+		options.addOption("j", "json", true, "Write the latency table as JSON to this file");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "osm");
+		params.numinst = Integer.parseInt(cl.getOptionValue("i", "4"));
+		params.numthreads = Integer.parseInt(cl.getOptionValue("t", "80"));
+		params.totalpoints = Long.parseLong(cl.getOptionValue("T", "11269358"));
+		params.nsamples = Integer.parseInt(cl.getOptionValue("z", "10000"));
+		params.sampleoff = Long.parseLong(cl.getOptionValue("o", "0"));
+		params.duration = Double.parseDouble(cl.getOptionValue("d", "0"));
+		params.warmup = Double.parseDouble(cl.getOptionValue("w", "0"));
+		params.qps = Double.parseDouble(cl.getOptionValue("q", "0"));
+		params.csvfile = cl.getOptionValue("c");
+		params.jsonfile = cl.getOptionValue("j");
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		if (cl.getArgs().length != 0) {
+			System.out.println("unrecognized command line arguments");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.numinst < 1 || params.numthreads < 1 || params.nsamples < 1) {
+			throw new ParseException("num-inst, num-threads and num-samples must be positive");
+		}
+
+		return params;
+	}
+
+	private static void writeFile(String path, ResultSizeTable table, boolean csv)
+		throws IOException {
+		PrintStream out = path.equals("-")
+			? System.out
+			: new PrintStream(new FileOutputStream(path));
+		try {
+			if (csv) {
+				table.writeCSV(out);
+			}
+			else {
+				table.writeJSON(out);
+			}
+		}
+		finally {
+			out.flush();
+			if (out != System.out) {
+				out.close();
+			}
+		}
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		System.err.println("host: " + params.host);
+		System.err.println("port: " + params.port);
+		System.err.println("namespace: " + params.namespace);
+		System.err.println("set: " + params.set);
+		System.err.println("num-inst: " + params.numinst);
+		System.err.println("num-threads: " + params.numthreads);
+		System.err.println("total-points: " + params.totalpoints);
+		System.err.println("num-samples: " + params.nsamples);
+		System.err.println("sample-offset: " + params.sampleoff);
+		System.err.println("duration: " + params.duration);
+		System.err.println("warmup: " + params.warmup);
+		System.err.println("qps: " + params.qps);
+
+		// Create multiple aerospike clients.
+		AerospikeClient[] clients = new AerospikeClient[params.numinst];
+		for (int ii = 0; ii < params.numinst; ++ii) {
+			clients[ii] = setupAerospike(params);
+		}
+
+		try {
+			List<SamplePoint> points = collectSamplePoints(params, clients[0]);
+
+			AtomicReference<Exception> failure = new AtomicReference<Exception>();
+			Schedule sched = new Schedule(params, points.size());
+			QueryWorker[] workers = new QueryWorker[params.numthreads];
+			Thread[] threads = new Thread[params.numthreads];
+			for (int ii = 0; ii < params.numthreads; ++ii) {
+				// Round-robin the threads onto the available clients.
+				workers[ii] = new QueryWorker(params, clients[ii % params.numinst],
+											  points, sched, failure);
+				threads[ii] = new Thread(workers[ii]);
+				threads[ii].start();
+			}
+			ResultSizeTable table = new ResultSizeTable();
+			long measuredEnd = sched.warmupEnd;
+			for (int ii = 0; ii < params.numthreads; ++ii) {
+				threads[ii].join();
+				table.merge(workers[ii].table);
+				measuredEnd = Math.max(measuredEnd, workers[ii].measuredEnd);
+			}
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+
+			double secs = (measuredEnd - sched.warmupEnd) / 1e9;
+			table.print(System.err);
+			System.err.println("Average return "
+							   + (double) table.getRecords() / table.getQueries()
+							   + " regions/query");
+			System.err.println("Query throughput "
+							   + table.getQueries() / secs + " queries/sec");
+			System.err.println("Result throughput "
+							   + table.getRecords() / secs + " regions/sec");
+			System.err.println("Network throughput "
+							   + table.getRecords() * 8 * 8 / secs / 1e6
+							   + " Mbits/sec");
+
+			if (params.csvfile != null) {
+				writeFile(params.csvfile, table, true);
+			}
+			if (params.jsonfile != null) {
+				writeFile(params.jsonfile, table, false);
+			}
+		}
+		finally {
+			for (AerospikeClient client : clients) {
+				client.close();
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
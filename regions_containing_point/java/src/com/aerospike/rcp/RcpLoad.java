@@ -0,0 +1,446 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.google.gson.Gson;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.async.MaxCommandAction;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.task.IndexTask;
+
+/**
+ * Loads OSM points for the regions-containing-point benchmark, like
+ * rcpload.cpp: every named node gets the usual bins plus id, amenity
+ * and cuisine, and the nodes of the selected amenity also get a circular
+ * region in the rgn bin.
+ *
+ * As in the OSM loader, blobs are decoded in parallel and written with
+ * the async client, which blocks the decoders when too many writes are
+ * in flight.
+ */
+public class RcpLoad {
+
+	private static final Gson gson = new Gson();
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		String infile;
+		String amenity;
+		RadiusDistribution radius;
+		int threads;
+		int writes;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "osm";
+			this.infile = null;
+			this.amenity = "restaurant";
+			this.radius = RadiusDistribution.parse("500");
+			this.threads = Runtime.getRuntime().availableProcessors();
+			this.writes = 256;
+		}
+	}
+
+	private static final String VALBIN = "val";
+	private static final String LOCBIN = "loc";
+	private static final String MAPBIN = "map";
+	private static final String HSHBIN = "hash";
+	private static final String AMENBIN = "amenity";
+	private static final String CUISBIN = "cuisine";
+	private static final String RGNBIN = "rgn";
+	private static final String IDBIN = "id";
+
+	private static final ThreadLocal<MessageDigest> sha256 =
+		new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance("SHA-256");
+				}
+				catch (NoSuchAlgorithmException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+
+	// Same hash as rcpload.cpp, which hashes the id in host (little
+	// endian) byte order.
+	private static long idToHash(long id) {
+		byte[] idbytes = ByteBuffer.allocate(8)
+			.order(ByteOrder.LITTLE_ENDIAN).putLong(id).array();
+		return ByteBuffer.wrap(sha256.get().digest(idbytes))
+			.order(ByteOrder.LITTLE_ENDIAN).getLong() & 0x7fffffffffffffffL;
+	}
+
+	private static final ConcurrentMap<String, AtomicInteger> amenityCounts =
+		new ConcurrentHashMap<String, AtomicInteger>();
+	private static final ConcurrentMap<String, AtomicInteger> cuisineCounts =
+		new ConcurrentHashMap<String, AtomicInteger>();
+
+	private static void count(ConcurrentMap<String, AtomicInteger> counts,
+							  String value) {
+		AtomicInteger cnt = counts.get(value);
+		if (cnt == null) {
+			AtomicInteger fresh = new AtomicInteger();
+			cnt = counts.putIfAbsent(value, fresh);
+			if (cnt == null) {
+				cnt = fresh;
+			}
+		}
+		cnt.incrementAndGet();
+	}
+
+	private static void printCounts(Map<String, AtomicInteger> counts) {
+		List<Map.Entry<String, AtomicInteger>> entries =
+			new ArrayList<Map.Entry<String, AtomicInteger>>(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, AtomicInteger>>() {
+				public int compare(Map.Entry<String, AtomicInteger> e0,
+								   Map.Entry<String, AtomicInteger> e1) {
+					return e1.getValue().get() - e0.getValue().get();
+				}
+			});
+		for (Map.Entry<String, AtomicInteger> ent : entries) {
+			System.out.printf("%d\t%s\n", ent.getValue().get(), ent.getKey());
+		}
+	}
+
+	/**
+	 * Counts completed writes and lets run() wait for the last ones.
+	 */
+	private static class WriteTracker implements WriteListener {
+		final AtomicLong pending = new AtomicLong();
+		final AtomicLong written = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+
+		public void onSuccess(Key key) {
+			if (written.incrementAndGet() % 1000 == 0) {
+				System.err.write('.');
+				System.err.flush();
+			}
+			pending.decrementAndGet();
+		}
+
+		public void onFailure(AerospikeException ex) {
+			if (failed.incrementAndGet() <= 10) {
+				System.err.println("write failed: " + ex.getMessage());
+			}
+			pending.decrementAndGet();
+		}
+
+		void drain() throws InterruptedException {
+			while (pending.get() > 0) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private static class NodeWriter implements BlockDecoder.Handler {
+		private final Parameters params;
+		private final AsyncClient client;
+		private final WritePolicy policy;
+		private final WriteTracker tracker;
+
+		NodeWriter(Parameters params, AsyncClient client, WriteTracker tracker) {
+			this.params = params;
+			this.client = client;
+			this.tracker = tracker;
+			this.policy = new WritePolicy();
+			this.policy.timeout = 10 * 1000;
+		}
+
+		public void node(long osmid, double lat, double lng,
+						 Map<String, String> tags) {
+			String amenity = tags.get("amenity");
+			String cuisine = tags.get("cuisine");
+			if (amenity != null) {
+				count(amenityCounts, amenity);
+			}
+			if (cuisine != null) {
+				count(cuisineCounts, cuisine);
+			}
+
+			// The tags + osmid, lat and long.
+			Map<String, Object> valobj = new LinkedHashMap<String, Object>(tags);
+			valobj.put("osmid", osmid);
+			valobj.put("latitude", lat);
+			valobj.put("longitude", lng);
+
+			String locstr = "{\"type\": \"Point\", \"coordinates\": ["
+				+ lng + ", " + lat + "]}";
+
+			List<Bin> bins = new ArrayList<Bin>(8);
+			bins.add(new Bin(IDBIN, osmid));
+			bins.add(Bin.asGeoJSON(LOCBIN, locstr));
+			bins.add(new Bin(VALBIN, gson.toJson(valobj)));
+			bins.add(new Bin(MAPBIN, valobj));
+			bins.add(new Bin(HSHBIN, idToHash(osmid)));
+			if (amenity != null) {
+				bins.add(new Bin(AMENBIN, amenity));
+			}
+			if (cuisine != null) {
+				bins.add(new Bin(CUISBIN, cuisine));
+			}
+			if (params.amenity.equals(amenity)) {
+				String rgnstr = "{\"type\": \"AeroCircle\", \"coordinates\": [["
+					+ lng + ", " + lat + "], " + params.radius.radius(osmid) + "]}";
+				bins.add(Bin.asGeoJSON(RGNBIN, rgnstr));
+			}
+
+			tracker.pending.incrementAndGet();
+			try {
+				client.put(policy, tracker, new Key(params.namespace, params.set, osmid),
+						   bins.toArray(new Bin[bins.size()]));
+			}
+			catch (AerospikeException ex) {
+				tracker.onFailure(ex);
+			}
+		}
+	}
+
+	private static void createIndex(AsyncClient client, Parameters params,
+									String bin, String suffix,
+									IndexType type) throws Exception {
+		Policy policy = new Policy();
+		policy.timeout = 0; // Do not timeout on index create.
+		IndexTask task =
+			client.createIndex(policy, params.namespace, params.set,
+							   params.set + "-" + suffix + "-index", bin, type);
+		task.waitTillComplete();
+	}
+
+	private static void createIndexes(Parameters params,
+									  AsyncClient client) throws Exception {
+		createIndex(client, params, LOCBIN, "loc", IndexType.GEO2DSPHERE);
+		createIndex(client, params, HSHBIN, "hsh", IndexType.NUMERIC);
+		createIndex(client, params, AMENBIN, "amen", IndexType.STRING);
+		createIndex(client, params, CUISBIN, "cuis", IndexType.STRING);
+		createIndex(client, params, RGNBIN, "rgn", IndexType.GEO2DSPHERE);
+	}
+
+	private static AsyncClient setupAerospike(Parameters params) throws Exception {
+		AsyncClientPolicy clipolicy = new AsyncClientPolicy();
+		clipolicy.user = params.user;
+		clipolicy.password = params.password;
+		clipolicy.failIfNotConnected = true;
+		clipolicy.asyncMaxCommands = params.writes;
+		clipolicy.asyncMaxCommandAction = MaxCommandAction.BLOCK;
+
+		return new AsyncClient(clipolicy, params.host, params.port);
+	}
+
+	private static void cleanupAerospike(Parameters params,
+										 AsyncClient client) throws Exception {
+		client.close();
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + RcpLoad.class.getName()
+			+ " [<options>] <infile>";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: osm)");
+		options.addOption("a", "amenity", true, "Region amenity (default: restaurant)");
+		options.addOption("r", "radius", true,
+						  "Region radius in meters: RADIUS, uniform:MIN:MAX or "
+						  + "lognormal:MEDIAN:SIGMA (default: 500)");
+		options.addOption("t", "threads", true,
+						  "Decoding threads (default: number of cores)");
+		options.addOption("w", "writes", true,
+						  "Maximum writes in flight (default: 256)");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "osm");
+		params.amenity = cl.getOptionValue("a", "restaurant");
+		try {
+			params.radius = RadiusDistribution.parse(cl.getOptionValue("r", "500"));
+		}
+		catch (IllegalArgumentException ex) {
+			throw new ParseException(ex.getMessage());
+		}
+		if (cl.hasOption("t")) {
+			params.threads = Integer.parseInt(cl.getOptionValue("t"));
+		}
+		params.writes = Integer.parseInt(cl.getOptionValue("w", "256"));
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		String[] remargs = cl.getArgs();
+		if (remargs.length != 1) {
+			System.out.println("missing infile parameter");
+			usage(options);
+			System.exit(1);
+		}
+
+		params.infile = remargs[0];
+
+		return params;
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		// Open the file early to make sure we can.
+		PbfReader reader = new PbfReader(params.infile);
+
+		AsyncClient client = setupAerospike(params);
+
+		createIndexes(params, client);
+
+		WriteTracker tracker = new WriteTracker();
+		final NodeWriter writer = new NodeWriter(params, client, tracker);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		// At most two blobs per thread are read ahead of the decoders.
+		final Semaphore readahead = new Semaphore(2 * params.threads);
+		ExecutorService decoders = Executors.newFixedThreadPool(params.threads);
+
+		try {
+			long t0 = System.nanoTime();
+			PbfReader.Blob blob;
+			while (failure.get() == null && (blob = reader.next()) != null) {
+				if (!blob.getType().equals("OSMData")) {
+					continue;
+				}
+				readahead.acquire();
+				final PbfReader.Blob data = blob;
+				decoders.execute(new Runnable() {
+						public void run() {
+							try {
+								new BlockDecoder(writer).decode(data.inflate());
+							}
+							catch (Exception ex) {
+								failure.compareAndSet(null, ex);
+							}
+							finally {
+								readahead.release();
+							}
+						}
+					});
+			}
+			decoders.shutdown();
+			decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			tracker.drain();
+			long t1 = System.nanoTime();
+
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+
+			// rcpbench needs the total, pass it with -T.
+			double secs = (t1 - t0) / 1e9;
+			System.err.write('\n');
+			System.err.printf("Loaded %d points in %.3f seconds (%.0f points/sec, %d failed)\n",
+							  tracker.written.get(), secs,
+							  tracker.written.get() / secs, tracker.failed.get());
+
+			System.out.println("Amenities:");
+			printCounts(amenityCounts);
+			System.out.println();
+			System.out.println();
+			System.out.println("Cuisines:");
+			printCounts(cuisineCounts);
+		}
+		finally {
+			decoders.shutdownNow();
+			reader.close();
+			cleanupAerospike(params, client);
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
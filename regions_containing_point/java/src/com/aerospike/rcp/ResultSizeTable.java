@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.rcp;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Query latencies by the number of records returned, in the same
+ * 1-2-5 buckets rcpbench.cpp uses.  For every bucket the latency until
+ * the first result and until all results are kept as histograms.
+ */
+public class ResultSizeTable {
+
+	private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+	private static class Row {
+		final LatencyHistogram first = new LatencyHistogram();
+		final LatencyHistogram all = new LatencyHistogram();
+	}
+
+	private final Map<Integer, Row> rows = new TreeMap<Integer, Row>();
+	private long queries = 0;
+	private long records = 0;
+
+	//                      log10
+	//     [0]:     0
+	// (0 - 1]:     1       0.00
+	// (1 - 2]:     2       0.30103
+	// (2 - 5]:     3       0.70757
+	// (5 - 10]:    4       1.00
+	// (10 - 20]:   5       1.30103
+	// (20 - 50]:   6       1.70757
+	// (50 - 100]:  7
+	public static int bucketize(long size) {
+		if (size == 0) {
+			return 0;
+		}
+		double lsz = Math.log10(size);
+		double n1 = Math.floor(lsz);
+		double n2 = lsz - n1;
+		int i1 = (int) n1 * 3;
+		if (n2 == 0.0) {
+			return i1 + 1;
+		}
+		else if (n2 < 0.30103) {
+			return i1 + 2;
+		}
+		else if (n2 < 0.70757) {
+			return i1 + 3;
+		}
+		else {
+			return i1 + 4;
+		}
+	}
+
+	private static int bound(int ndx) {
+		int scale = (int) Math.pow(10.0, ndx / 3);
+		int step = ndx % 3;
+		return scale * (step == 0 ? 1 : step == 1 ? 2 : 5);
+	}
+
+	public static String bucketLabel(int ndx) {
+		if (ndx == 0) {
+			return "[0]";
+		}
+		if (ndx == 1) {
+			return "[1]";
+		}
+		return "(" + bound(ndx - 2) + " - " + bound(ndx - 1) + "]";
+	}
+
+	public void record(long nrecs, long firstMicros, long allMicros) {
+		Integer ndx = bucketize(nrecs);
+		Row row = rows.get(ndx);
+		if (row == null) {
+			row = new Row();
+			rows.put(ndx, row);
+		}
+		row.first.record(firstMicros);
+		row.all.record(allMicros);
+		queries++;
+		records += nrecs;
+	}
+
+	public void merge(ResultSizeTable other) {
+		for (Map.Entry<Integer, Row> ent : other.rows.entrySet()) {
+			Row row = rows.get(ent.getKey());
+			if (row == null) {
+				row = new Row();
+				rows.put(ent.getKey(), row);
+			}
+			row.first.merge(ent.getValue().first);
+			row.all.merge(ent.getValue().all);
+		}
+		queries += other.queries;
+		records += other.records;
+	}
+
+	public long getQueries() {
+		return queries;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	// The rcpbench table, with mean latencies.
+	public void print(PrintStream out) {
+		out.println("Query latency (mSec) by return size:");
+		out.println("               retsz    count    first      all      p99");
+		for (Map.Entry<Integer, Row> ent : rows.entrySet()) {
+			Row row = ent.getValue();
+			out.printf("%20s %8d %8.2f %8.2f %8.2f\n",
+					   bucketLabel(ent.getKey()), row.all.getCount(),
+					   row.first.getMeanMillis(), row.all.getMeanMillis(),
+					   row.all.percentileMillis(99.0));
+		}
+		out.println("--------------------------------------------------------");
+		out.printf("               Total %8d\n", queries);
+	}
+
+	public void writeCSV(PrintStream out) {
+		StringBuilder hdr = new StringBuilder("retsz,count");
+		for (String which : new String[] { "first", "all" }) {
+			hdr.append(',').append(which).append("_mean_ms");
+			for (double pct : PERCENTILES) {
+				hdr.append(',').append(which).append("_p").append(label(pct)).append("_ms");
+			}
+			hdr.append(',').append(which).append("_max_ms");
+		}
+		out.println(hdr);
+		for (Map.Entry<Integer, Row> ent : rows.entrySet()) {
+			Row row = ent.getValue();
+			StringBuilder sb = new StringBuilder();
+			sb.append('"').append(bucketLabel(ent.getKey())).append('"');
+			sb.append(',').append(row.all.getCount());
+			for (LatencyHistogram hist : new LatencyHistogram[] { row.first, row.all }) {
+				sb.append(String.format(",%.3f", hist.getMeanMillis()));
+				for (double pct : PERCENTILES) {
+					sb.append(String.format(",%.3f", hist.percentileMillis(pct)));
+				}
+				sb.append(String.format(",%.3f", hist.getMaxMillis()));
+			}
+			out.println(sb);
+		}
+	}
+
+	public void writeJSON(PrintStream out) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("{\"queries\": %d, \"records\": %d, \"buckets\": [",
+								queries, records));
+		String sep = "";
+		for (Map.Entry<Integer, Row> ent : rows.entrySet()) {
+			Row row = ent.getValue();
+			sb.append(sep);
+			sb.append(String.format("{\"retsz\": \"%s\", \"count\": %d, \"first\": %s, \"all\": %s}",
+									bucketLabel(ent.getKey()), row.all.getCount(),
+									toJSON(row.first), toJSON(row.all)));
+			sep = ", ";
+		}
+		sb.append("]}");
+		out.println(sb);
+	}
+
+	private static String toJSON(LatencyHistogram hist) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("{\"mean_ms\": %.3f", hist.getMeanMillis()));
+		for (double pct : PERCENTILES) {
+			sb.append(String.format(", \"p%s_ms\": %.3f",
+									label(pct), hist.percentileMillis(pct)));
+		}
+		sb.append(String.format(", \"max_ms\": %.3f}", hist.getMaxMillis()));
+		return sb.toString();
+	}
+
+	// 99.9 -> "999", 50.0 -> "50"
+	private static String label(double pct) {
+		return pct == Math.floor(pct)
+			? Integer.toString((int) pct)
+			: Double.toString(pct).replace(".", "");
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates points into grid cells as they arrive, for views zoomed
+ * out too far to show every record.
+ *
+ * Rows are cellMeters tall and each row is cut into columns about
+ * cellMeters wide at its middle latitude.  The grid is anchored at
+ * 0, 0 rather than at the query, so overlapping queries put the same
+ * records in the same cells.  Each cell keeps a count, the sums for
+ * its centroid and, if asked to, a tally of its records' tags.
+ */
+public class ClusterGrid {
+
+	private static class Cell {
+		long count = 0;
+		double sumLat = 0.0;
+		double sumLng = 0.0;
+		Map<String, Integer> tags = null;
+	}
+
+	private final double cellLat;		// row height in degrees
+	private final int top;
+	private final Map<Long, Cell> cells = new HashMap<Long, Cell>();
+
+	/**
+	 * @param cellMeters	cell size in meters
+	 * @param top			tags to report per cell, 0 for none
+	 */
+	public ClusterGrid(double cellMeters, int top) {
+		this.cellLat = Math.toDegrees(cellMeters / Haversine.EARTH_RADIUS);
+		this.top = top;
+	}
+
+	/**
+	 * Adds a point.  tags may be null, a String or a List of them, as
+	 * the records store them.
+	 */
+	public synchronized void add(double lat, double lng, Object tags) {
+		long row = (long) Math.floor(lat / cellLat);
+		double middle = Math.toRadians((row + 0.5) * cellLat);
+		double cellLng = cellLat / Math.max(1e-6, Math.cos(middle));
+		long col = (long) Math.floor((lng + 180.0) / cellLng);
+		Long key = (row << 32) | col;
+
+		Cell cell = cells.get(key);
+		if (cell == null) {
+			cell = new Cell();
+			cells.put(key, cell);
+		}
+		cell.count++;
+		cell.sumLat += lat;
+		cell.sumLng += lng;
+		if (top > 0 && tags != null) {
+			if (cell.tags == null) {
+				cell.tags = new HashMap<String, Integer>();
+			}
+			if (tags instanceof List) {
+				for (Object tag : (List<?>) tags) {
+					tally(cell.tags, tag);
+				}
+			}
+			else {
+				tally(cell.tags, tags);
+			}
+		}
+	}
+
+	private static void tally(Map<String, Integer> tags, Object tag) {
+		if (tag != null) {
+			String name = tag.toString();
+			Integer count = tags.get(name);
+			tags.put(name, count == null ? 1 : count + 1);
+		}
+	}
+
+	public synchronized int size() {
+		return cells.size();
+	}
+
+	/**
+	 * One line of JSON per cell, largest first:
+	 *
+	 *   {"lat": 40.44, "lng": -80.00, "count": 312,
+	 *    "top": [["cafe", 21], ["bench", 17]]}
+	 */
+	public synchronized List<String> toJSON() {
+		List<Cell> sorted = new ArrayList<Cell>(cells.values());
+		Collections.sort(sorted, new Comparator<Cell>() {
+			public int compare(Cell aa, Cell bb) {
+				return aa.count < bb.count ? 1 : aa.count > bb.count ? -1 : 0;
+			}
+		});
+		List<String> lines = new ArrayList<String>(sorted.size());
+		for (Cell cell : sorted) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("{\"lat\": %.7f, \"lng\": %.7f, \"count\": %d",
+									cell.sumLat / cell.count,
+									cell.sumLng / cell.count, cell.count));
+			if (top > 0) {
+				sb.append(", \"top\": [");
+				String sep = "";
+				for (Map.Entry<String, Integer> tag : topTags(cell)) {
+					sb.append(sep);
+					sb.append("[");
+					quote(sb, tag.getKey());
+					sb.append(", ").append(tag.getValue()).append("]");
+					sep = ", ";
+				}
+				sb.append("]");
+			}
+			sb.append("}");
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+
+	private List<Map.Entry<String, Integer>> topTags(Cell cell) {
+		if (cell.tags == null) {
+			return Collections.emptyList();
+		}
+		List<Map.Entry<String, Integer>> tags =
+			new ArrayList<Map.Entry<String, Integer>>(cell.tags.entrySet());
+		Collections.sort(tags, new Comparator<Map.Entry<String, Integer>>() {
+			public int compare(Map.Entry<String, Integer> aa, Map.Entry<String, Integer> bb) {
+				int cmp = bb.getValue().compareTo(aa.getValue());
+				return cmp != 0 ? cmp : aa.getKey().compareTo(bb.getKey());
+			}
+		});
+		return tags.subList(0, Math.min(top, tags.size()));
+	}
+
+	private static void quote(StringBuilder sb, String str) {
+		sb.append('"');
+		for (int ii = 0; ii < str.length(); ++ii) {
+			char cc = str.charAt(ii);
+			if (cc == '"' || cc == '\\') {
+				sb.append('\\').append(cc);
+			}
+			else if (cc < 0x20) {
+				sb.append(String.format("\\u%04x", (int) cc));
+			}
+			else {
+				sb.append(cc);
+			}
+		}
+		sb.append('"');
+	}
+}
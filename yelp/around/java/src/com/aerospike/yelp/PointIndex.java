@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A point index file written by the loaders' --index-file, memory-mapped
+ * read-only.  Queries walk the packed R-tree straight out of the mapping
+ * without copying or decoding anything but the matching entries, so
+ * lookups don't need the cluster at all.
+ *
+ * Entries are numbered in the file's Hilbert order; lat(), lng() and
+ * key() read one.  See the loaders' PointIndexWriter for the layout.
+ * The mapping limits the file to 2 GB, about 130 million points.
+ */
+public class PointIndex {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = "AEROPIX1".getBytes(Charset.forName("US-ASCII"));
+	private static final int HEADER_SIZE = 64;
+	private static final int POINT_SIZE = 16;
+	private static final int BOX_SIZE = 16;
+
+	public interface Visitor {
+		void visit(int entry);
+	}
+
+	private final MappedByteBuffer buf;
+	private final int count;
+	private final int nodeSize;
+	private final boolean integerKeys;
+	private final int boxesOffset;
+	private final int keysOffset;
+	// Index of each level's first box, leaves first.
+	private final int[] levelStart;
+
+	private PointIndex(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		byte[] magic = new byte[MAGIC.length];
+		buf.duplicate().get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("not a point index file");
+		}
+		int version = buf.getInt(8);
+		if (version != 1) {
+			throw new IOException("unsupported point index version " + version);
+		}
+		this.nodeSize = buf.getInt(12);
+		this.count = (int) buf.getLong(16);
+		this.integerKeys = buf.getInt(24) == 1;
+		this.boxesOffset = (int) buf.getLong(28);
+		this.keysOffset = (int) buf.getLong(36);
+
+		List<Integer> starts = new ArrayList<Integer>();
+		int start = 0;
+		for (int nn = (count + nodeSize - 1) / nodeSize; nn > 0; nn = (nn + nodeSize - 1) / nodeSize) {
+			starts.add(start);
+			start += nn;
+			if (nn == 1) {
+				break;
+			}
+		}
+		levelStart = new int[starts.size() + 1];
+		for (int ii = 0; ii < starts.size(); ++ii) {
+			levelStart[ii] = starts.get(ii);
+		}
+		levelStart[starts.size()] = start;
+	}
+
+	public static PointIndex open(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// The mapping stays valid after the channel is closed.
+			return new PointIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean hasIntegerKeys() {
+		return integerKeys;
+	}
+
+	public double lat(int entry) {
+		return buf.getInt(HEADER_SIZE + entry * POINT_SIZE) / 1e7;
+	}
+
+	public double lng(int entry) {
+		return buf.getInt(HEADER_SIZE + entry * POINT_SIZE + 4) / 1e7;
+	}
+
+	// The record's user key, a Long or a String.
+	public Object key(int entry) {
+		long ref = buf.getLong(HEADER_SIZE + entry * POINT_SIZE + 8);
+		if (integerKeys) {
+			return ref;
+		}
+		int pos = keysOffset + (int) ref;
+		int len = buf.getShort(pos);
+		byte[] bytes = new byte[len];
+		ByteBuffer dup = buf.duplicate();
+		dup.position(pos + 2);
+		dup.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private int levels() {
+		return levelStart.length - 1;
+	}
+
+	private int box(int level, int node, int field) {
+		return buf.getInt(boxesOffset + (levelStart[level] + node) * BOX_SIZE + field * 4);
+	}
+
+	private int levelSize(int level) {
+		return levelStart[level + 1] - levelStart[level];
+	}
+
+	/**
+	 * Visits the entries within a box given in degrees.  The box mustn't
+	 * cross the antimeridian; split it in two if it does.
+	 */
+	public void searchBox(double south, double west, double north, double east,
+						  Visitor visitor) {
+		if (count == 0) {
+			return;
+		}
+		int ss = (int) Math.floor(south * 1e7);
+		int ww = (int) Math.floor(west * 1e7);
+		int nn = (int) Math.ceil(north * 1e7);
+		int ee = (int) Math.ceil(east * 1e7);
+
+		// Explicit stack of (level, node), starting at the root; each
+		// level down adds at most one node's children.
+		int[] stack = new int[2 * nodeSize * levels() + 2];
+		int top = 0;
+		stack[top++] = levels() - 1;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			int level = stack[--top];
+			if (box(level, node, 0) > nn || box(level, node, 2) < ss
+				|| box(level, node, 1) > ee || box(level, node, 3) < ww) {
+				continue;
+			}
+			int first = node * nodeSize;
+			if (level == 0) {
+				int last = Math.min(count, first + nodeSize);
+				for (int entry = first; entry < last; ++entry) {
+					int pp = HEADER_SIZE + entry * POINT_SIZE;
+					int lat = buf.getInt(pp);
+					int lng = buf.getInt(pp + 4);
+					if (lat >= ss && lat <= nn && lng >= ww && lng <= ee) {
+						visitor.visit(entry);
+					}
+				}
+			}
+			else {
+				int last = Math.min(levelSize(level - 1), first + nodeSize);
+				for (int child = last - 1; child >= first; --child) {
+					stack[top++] = level - 1;
+					stack[top++] = child;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Visits the entries within radius meters of a point.
+	 */
+	public void searchCircle(double lat, double lng, final double radius,
+							 final Visitor visitor) {
+		final Haversine center = new Haversine(lat, lng);
+		double angle = radius / Haversine.EARTH_RADIUS;
+		double dlat = Math.toDegrees(angle);
+		double south = Math.max(-90.0, lat - dlat);
+		double north = Math.min(90.0, lat + dlat);
+		// The circle's widest longitude extent; all of them if it
+		// covers a pole.
+		double sinlng = Math.sin(angle) / Math.cos(Math.toRadians(lat));
+		double dlng = (south == -90.0 || north == 90.0 || sinlng >= 1.0)
+			? 180.0 : Math.toDegrees(Math.asin(sinlng));
+
+		Visitor filter = new Visitor() {
+				public void visit(int entry) {
+					if (center.distanceTo(lat(entry), lng(entry)) <= radius) {
+						visitor.visit(entry);
+					}
+				}
+			};
+		if (dlng >= 180.0) {
+			searchBox(south, -180.0, north, 180.0, filter);
+		}
+		else if (lng - dlng < -180.0) {
+			searchBox(south, lng - dlng + 360.0, north, 180.0, filter);
+			searchBox(south, -180.0, north, lng + dlng, filter);
+		}
+		else if (lng + dlng > 180.0) {
+			searchBox(south, lng - dlng, north, 180.0, filter);
+			searchBox(south, -180.0, north, lng + dlng - 360.0, filter);
+		}
+		else {
+			searchBox(south, lng - dlng, north, lng + dlng, filter);
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		final double dist;	// as a Haversine.haversineTo() value
+		final int level;	// -1 for an entry
+		final int index;
+
+		Candidate(double dist, int level, int index) {
+			this.dist = dist;
+			this.level = level;
+			this.index = index;
+		}
+
+		public int compareTo(Candidate other) {
+			return Double.compare(dist, other.dist);
+		}
+	}
+
+	/**
+	 * The k entries nearest to a point and within maxDist meters,
+	 * nearest first.  Nodes are opened best first by a lower bound on
+	 * the distance to anything inside them, so only the nodes near the
+	 * answer are touched.  Distances are compared as haversines, which
+	 * saves an arcsine per entry.
+	 */
+	public int[] nearest(double lat, double lng, int k, double maxDist) {
+		List<Integer> found = new ArrayList<Integer>();
+		if (count > 0 && k > 0) {
+			Haversine center = new Haversine(lat, lng);
+			double coslat = Math.cos(Math.toRadians(lat));
+			double maxHav = Haversine.toHaversine(maxDist);
+			PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+			queue.add(new Candidate(0.0, levels() - 1, 0));
+			while (!queue.isEmpty() && found.size() < k) {
+				Candidate cand = queue.poll();
+				if (cand.dist > maxHav) {
+					break;
+				}
+				if (cand.level < 0) {
+					found.add(cand.index);
+					continue;
+				}
+				int first = cand.index * nodeSize;
+				if (cand.level == 0) {
+					int last = Math.min(count, first + nodeSize);
+					for (int entry = first; entry < last; ++entry) {
+						queue.add(new Candidate(center.haversineTo(lat(entry), lng(entry)),
+												-1, entry));
+					}
+				}
+				else {
+					int level = cand.level - 1;
+					int last = Math.min(levelSize(level), first + nodeSize);
+					for (int child = first; child < last; ++child) {
+						queue.add(new Candidate(lowerBound(lat, coslat, lng, level, child),
+												level, child));
+					}
+				}
+			}
+		}
+		int[] result = new int[found.size()];
+		for (int ii = 0; ii < result.length; ++ii) {
+			result[ii] = found.get(ii);
+		}
+		return result;
+	}
+
+	/**
+	 * A haversine no larger than that of the angle from a point to
+	 * anything in a box.  The angle is the larger of the latitude gap
+	 * and the gap to the great circle of the nearest edge meridian.  The
+	 * latter is asin(sin(dlng) * cos(lat)), but asin(x) >= x, so the
+	 * sine alone will do.
+	 */
+	private double lowerBound(double lat, double coslat, double lng, int level, int node) {
+		double south = box(level, node, 0) / 1e7;
+		double west = box(level, node, 1) / 1e7;
+		double north = box(level, node, 2) / 1e7;
+		double east = box(level, node, 3) / 1e7;
+
+		double dlat = lat < south ? south - lat : lat > north ? lat - north : 0.0;
+		double bound = Math.toRadians(dlat);
+		if (lng < west || lng > east) {
+			double dlng = Math.min(angle(lng, west), angle(lng, east));
+			if (dlng < 90.0) {
+				bound = Math.max(bound, Math.sin(Math.toRadians(dlng)) * coslat);
+			}
+		}
+		double half = Math.sin(Math.min(Math.PI, bound) / 2);
+		return half * half;
+	}
+
+	// Longitude difference in degrees, 0 to 180.
+	private static double angle(double lng0, double lng1) {
+		double dd = Math.abs(lng0 - lng1) % 360.0;
+		return dd > 180.0 ? 360.0 - dd : dd;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.aerospike.client.Value;
+
+/**
+ * Timing and volume of a single query, overall and per server node.
+ *
+ * Results may arrive on several threads at once (one per node), so
+ * everything is synchronized.  The summary is a single JSON line, in
+ * the spirit of the first/all latency columns rcpbench reports.
+ */
+public class QueryStats {
+
+	private static class NodeStats {
+		String host;
+		long records = 0;
+		long bytes = 0;
+		long first = 0;
+		long done = 0;
+	}
+
+	private long t0;
+	private long t1;
+	private long first = 0;
+	private long last = 0;
+	private long records = 0;
+	private long bytes = 0;
+	private long gapMin = Long.MAX_VALUE;
+	private long gapMax = 0;
+	private long gapSum = 0;
+	private final Map<String, NodeStats> nodes =
+		new LinkedHashMap<String, NodeStats>();
+
+	public synchronized void start() {
+		t0 = System.nanoTime();
+	}
+
+	public synchronized void finish() {
+		t1 = System.nanoTime();
+	}
+
+	public synchronized void addNode(String name, String host) {
+		NodeStats ns = new NodeStats();
+		ns.host = host;
+		nodes.put(name, ns);
+	}
+
+	// Called once for every record (or aggregate result) received.
+	public synchronized void record(String node, Object value) {
+		long now = System.nanoTime();
+		int size = value == null ? 0 : Value.get(value).estimateSize();
+
+		if (first == 0) {
+			first = now;
+		}
+		else {
+			long gap = now - last;
+			gapMin = Math.min(gapMin, gap);
+			gapMax = Math.max(gapMax, gap);
+			gapSum += gap;
+		}
+		last = now;
+		records++;
+		bytes += size;
+
+		NodeStats ns = nodes.get(node);
+		if (ns != null) {
+			if (ns.first == 0) {
+				ns.first = now;
+			}
+			ns.records++;
+			ns.bytes += size;
+		}
+	}
+
+	public synchronized void nodeDone(String node) {
+		NodeStats ns = nodes.get(node);
+		if (ns != null) {
+			ns.done = System.nanoTime();
+		}
+	}
+
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	public synchronized double getElapsedMillis() {
+		return millis(t1);
+	}
+
+	private double millis(long t) {
+		return t == 0 ? 0.0 : (t - t0) / 1e6;
+	}
+
+	public synchronized String toJSON() {
+		long ngaps = records > 1 ? records - 1 : 0;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "{\"records\": %d, \"bytes\": %d, "
+								+ "\"first_ms\": %.3f, \"total_ms\": %.3f, "
+								+ "\"gap_ms\": {\"min\": %.3f, "
+								+ "\"mean\": %.3f, \"max\": %.3f}, "
+								+ "\"nodes\": [",
+								records, bytes, millis(first), millis(t1),
+								ngaps == 0 ? 0.0 : gapMin / 1e6,
+								ngaps == 0 ? 0.0 : gapSum / 1e6 / ngaps,
+								gapMax / 1e6));
+		String sep = "";
+		for (Map.Entry<String, NodeStats> ent : nodes.entrySet()) {
+			NodeStats ns = ent.getValue();
+			sb.append(sep);
+			sb.append(String.format(Locale.ROOT, "{\"node\": \"%s\", \"host\": \"%s\", "
+									+ "\"records\": %d, \"bytes\": %d, "
+									+ "\"first_ms\": %.3f, \"done_ms\": %.3f}",
+									ent.getKey(), ns.host, ns.records,
+									ns.bytes, millis(ns.first),
+									millis(ns.done)));
+			sep = ", ";
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+}
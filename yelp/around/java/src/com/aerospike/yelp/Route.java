@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A polyline of latitude/longitude points and the corridor around it.
+ *
+ * The corridor of half-width w is covered by circles of radius w*sqrt(2)
+ * centered on every vertex and spaced at most 2w apart along each
+ * segment; every point within w of the route falls inside at least one
+ * of them.  Along a segment that is the square between two centers;
+ * around a bend, the vertex's own circle covers the outside of the
+ * corner.  The circles also catch some points outside the corridor,
+ * which distanceTo() weeds out.
+ */
+public class Route {
+
+	private final double[] lats;
+	private final double[] lngs;
+
+	public Route(double[] lats, double[] lngs) {
+		this.lats = lats;
+		this.lngs = lngs;
+	}
+
+	/**
+	 * Reads a route with one "latitude longitude" point per line.
+	 * Commas may be used as separators and '#' starts a comment.
+	 */
+	public static Route read(String path) throws IOException {
+		List<double[]> points = new ArrayList<double[]>();
+		BufferedReader br = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int hash = line.indexOf('#');
+				if (hash >= 0) {
+					line = line.substring(0, hash);
+				}
+				line = line.trim();
+				if (line.length() == 0) {
+					continue;
+				}
+				String[] fields = line.split("[\\s,]+");
+				if (fields.length != 2) {
+					throw new IOException("bad route point: " + line);
+				}
+				points.add(new double[] { Double.parseDouble(fields[0]),
+										  Double.parseDouble(fields[1]) });
+			}
+		}
+		finally {
+			br.close();
+		}
+		if (points.isEmpty()) {
+			throw new IOException("empty route: " + path);
+		}
+		double[] lats = new double[points.size()];
+		double[] lngs = new double[points.size()];
+		for (int ii = 0; ii < points.size(); ++ii) {
+			lats[ii] = points.get(ii)[0];
+			lngs[ii] = points.get(ii)[1];
+		}
+		return new Route(lats, lngs);
+	}
+
+	public static double coverRadius(double width) {
+		return width * Math.sqrt(2.0);
+	}
+
+	// Circle centers, as { lat, lng }, in route order.
+	public List<double[]> cover(double width) {
+		if (!(width > 0.0)) {
+			throw new IllegalArgumentException("corridor width must be positive: " + width);
+		}
+		double step = 2 * width;
+		List<double[]> centers = new ArrayList<double[]>();
+		centers.add(new double[] { lats[0], lngs[0] });
+		for (int ii = 1; ii < lats.length; ++ii) {
+			double seglen = new Haversine(lats[ii - 1], lngs[ii - 1])
+				.distanceTo(lats[ii], lngs[ii]);
+			if (seglen == 0.0) {
+				continue;
+			}
+			// Evenly spaced, ending on the vertex.
+			int nsteps = (int) Math.ceil(seglen / step);
+			for (int kk = 1; kk <= nsteps; ++kk) {
+				double frac = (double) kk / nsteps;
+				centers.add(new double[] {
+						lats[ii - 1] + frac * (lats[ii] - lats[ii - 1]),
+						lngs[ii - 1] + frac * (lngs[ii] - lngs[ii - 1]) });
+			}
+		}
+		return centers;
+	}
+
+	// Distance in meters from a point to the nearest part of the route.
+	public double distanceTo(double lat, double lng) {
+		if (lats.length == 1) {
+			return new Haversine(lat, lng).distanceTo(lats[0], lngs[0]);
+		}
+		// Project onto a local plane around the point; fine at
+		// corridor scales.
+		double mlat = Math.toRadians(1.0) * Haversine.EARTH_RADIUS;
+		double mlng = mlat * Math.cos(Math.toRadians(lat));
+		double best = Double.MAX_VALUE;
+		for (int ii = 1; ii < lats.length; ++ii) {
+			double ax = (lngs[ii - 1] - lng) * mlng;
+			double ay = (lats[ii - 1] - lat) * mlat;
+			double bx = (lngs[ii] - lng) * mlng;
+			double by = (lats[ii] - lat) * mlat;
+			double dx = bx - ax;
+			double dy = by - ay;
+			double len2 = dx * dx + dy * dy;
+			double tt = len2 == 0.0 ? 0.0 : -(ax * dx + ay * dy) / len2;
+			tt = Math.max(0.0, Math.min(1.0, tt));
+			double px = ax + tt * dx;
+			double py = ay + tt * dy;
+			best = Math.min(best, px * px + py * py);
+		}
+		return Math.sqrt(best);
+	}
+}
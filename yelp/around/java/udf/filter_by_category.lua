@@ -14,3 +14,65 @@ function apply_filter(stream, cat)
   end
   return stream : filter(contains_category) : map(select_value)
 end
+
+-- Counting: only the totals cross the network.
+
+local function one(rec)
+  return 1
+end
+
+local function add(a, b)
+  return a + b
+end
+
+local function tally_categories(counts, rec)
+  local categories = rec.map.categories
+  if categories then
+    for item in list.iterator(categories) do
+      counts[item] = (counts[item] or 0) + 1
+    end
+  end
+  return counts
+end
+
+local function merge_counts(a, b)
+  return map.merge(a, b, add)
+end
+
+local function maybe_filter(stream, cat)
+  if cat then
+    local function contains_category(rec)
+      for item in list.iterator(rec.map.categories) do
+        if item == cat then
+          return true
+        end
+      end
+      return false
+    end
+    return stream : filter(contains_category)
+  end
+  return stream
+end
+
+function count(stream, cat)
+  return maybe_filter(stream, cat) : map(one) : reduce(add)
+end
+
+function count_by_category(stream, cat)
+  return maybe_filter(stream, cat)
+    : aggregate(map(), tally_categories) : reduce(merge_counts)
+end
+
+-- Clustering: only the position and categories of each record are sent.
+
+local function locate(rec)
+  local point = map()
+  point.lat = rec.map.latitude
+  point.lng = rec.map.longitude
+  point.tags = rec.map.categories
+  return point
+end
+
+function cluster_points(stream, cat)
+  return maybe_filter(stream, cat) : map(locate)
+end
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ScanCallback;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.async.MaxCommandAction;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.ScanPolicy;
+import com.aerospike.client.policy.WritePolicy;
+
+/**
+ * Computes, for every record, how many other records lie within a
+ * radius of it, and writes the count back as a numeric bin.
+ *
+ * Instead of a circle query per record, the set is scanned once for
+ * its locations, the points go into a PointGrid, and the counts are
+ * computed by a fork-join self-join over the grid's cells.  The counts
+ * are then written with a bounded number of async writes in flight.
+ */
+public class Density {
+
+	static private class Parameters {
+		String host;
+		int port;
+		String user;
+		String password;
+		String namespace;
+		String set;
+		String locbin;
+		String densitybin;
+		double radius;
+		int threads;
+		int writes;
+		boolean dryRun;
+
+		public Parameters() {
+			this.host = "localhost";
+			this.port = 3000;
+			this.user = "";
+			this.password = "";
+			this.namespace = "test";
+			this.set = "yelp";
+			this.locbin = "loc";
+			this.densitybin = "density";
+			this.radius = 500.0;
+			this.threads = Runtime.getRuntime().availableProcessors();
+			this.writes = 256;
+			this.dryRun = false;
+		}
+	}
+
+	/**
+	 * The scanned points: positions and record digests in flat arrays,
+	 * so tens of millions of them fit.
+	 */
+	private static class Points {
+		int count = 0;
+		double[] lats = new double[1024];
+		double[] lngs = new double[1024];
+		byte[] digests = new byte[1024 * 20];
+
+		synchronized void add(byte[] digest, double lat, double lng) {
+			if (count == lats.length) {
+				lats = Arrays.copyOf(lats, count * 2);
+				lngs = Arrays.copyOf(lngs, count * 2);
+				digests = Arrays.copyOf(digests, count * 2 * 20);
+			}
+			lats[count] = lat;
+			lngs[count] = lng;
+			System.arraycopy(digest, 0, digests, count * 20, 20);
+			++count;
+		}
+
+		byte[] digest(int ii) {
+			return Arrays.copyOfRange(digests, ii * 20, ii * 20 + 20);
+		}
+	}
+
+	/**
+	 * Parses the coordinates of a GeoJSON Point into lnglat.  Returns
+	 * false for anything else, such as regions.
+	 */
+	static boolean parsePoint(String geojson, double[] lnglat) {
+		if (geojson == null || geojson.indexOf("\"Point\"") < 0) {
+			return false;
+		}
+		int pos = geojson.indexOf("\"coordinates\"");
+		int open = pos < 0 ? -1 : geojson.indexOf('[', pos);
+		int close = open < 0 ? -1 : geojson.indexOf(']', open);
+		if (close < 0) {
+			return false;
+		}
+		String[] parts = geojson.substring(open + 1, close).split(",");
+		if (parts.length != 2) {
+			return false;
+		}
+		try {
+			lnglat[0] = Double.parseDouble(parts[0].trim());
+			lnglat[1] = Double.parseDouble(parts[1].trim());
+		}
+		catch (NumberFormatException ex) {
+			return false;
+		}
+		return true;
+	}
+
+	private static Points scanPoints(final Parameters params, AsyncClient client) {
+		final Points points = new Points();
+		ScanPolicy policy = new ScanPolicy();
+		policy.concurrentNodes = true;
+		client.scanAll(policy, params.namespace, params.set, new ScanCallback() {
+				public void scanCallback(Key key, Record record) throws AerospikeException {
+					double[] lnglat = new double[2];
+					if (parsePoint(record.getGeoJSON(params.locbin), lnglat)) {
+						points.add(key.digest, lnglat[1], lnglat[0]);
+					}
+				}
+			}, params.locbin);
+		return points;
+	}
+
+	/**
+	 * Counts neighbors for a range of grid positions, splitting it until
+	 * the pieces are small enough.  Neighboring positions are in the
+	 * same or nearby cells, so each task's reads stay local.
+	 */
+	private static class JoinTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int LEAF = 1024;
+
+		private final PointGrid grid;
+		private final int[] counts;
+		private final int lo;
+		private final int hi;
+
+		JoinTask(PointGrid grid, int[] counts, int lo, int hi) {
+			this.grid = grid;
+			this.counts = counts;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= LEAF) {
+				for (int pos = lo; pos < hi; ++pos) {
+					counts[grid.id(pos)] = grid.countNeighbors(pos);
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new JoinTask(grid, counts, lo, mid),
+					  new JoinTask(grid, counts, mid, hi));
+		}
+	}
+
+	/**
+	 * Counts completed writes and lets run() wait for the last ones.
+	 */
+	private static class WriteTracker implements WriteListener {
+		final AtomicLong pending = new AtomicLong();
+		final AtomicLong written = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+
+		public void onSuccess(Key key) {
+			written.incrementAndGet();
+			pending.decrementAndGet();
+		}
+
+		public void onFailure(AerospikeException ex) {
+			failed.incrementAndGet();
+			pending.decrementAndGet();
+		}
+
+		void drain() throws InterruptedException {
+			while (pending.get() > 0) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private static WriteTracker writeCounts(Parameters params, AsyncClient client,
+											Points points, int[] counts)
+		throws InterruptedException {
+		WritePolicy policy = new WritePolicy();
+		policy.timeout = 10 * 1000;
+		policy.maxRetries = 10;
+		// Records deleted since the scan stay deleted.
+		policy.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+
+		WriteTracker tracker = new WriteTracker();
+		for (int ii = 0; ii < points.count; ++ii) {
+			Key key = new Key(params.namespace, points.digest(ii), params.set, null);
+			tracker.pending.incrementAndGet();
+			try {
+				client.put(policy, tracker, key, new Bin(params.densitybin, counts[ii]));
+			}
+			catch (AerospikeException ex) {
+				tracker.onFailure(ex);
+			}
+		}
+		tracker.drain();
+		return tracker;
+	}
+
+	private static double usedHeapMB() {
+		Runtime rt = Runtime.getRuntime();
+		return (rt.totalMemory() - rt.freeMemory()) / 1048576.0;
+	}
+
+	private static AsyncClient setupAerospike(Parameters params) throws Exception {
+		AsyncClientPolicy clipolicy = new AsyncClientPolicy();
+		clipolicy.user = params.user;
+		clipolicy.password = params.password;
+		clipolicy.failIfNotConnected = true;
+		clipolicy.asyncMaxCommands = params.writes;
+		clipolicy.asyncMaxCommandAction = MaxCommandAction.BLOCK;
+
+		return new AsyncClient(clipolicy, params.host, params.port);
+	}
+
+	private static void cleanupAerospike(Parameters params,
+										 AsyncClient client) throws Exception {
+		client.close();
+	}
+
+	private static void usage(Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		String syntax = "usage: " + Density.class.getName() + " [<options>]";
+		formatter.printHelp(pw, 100, syntax, "options:", options, 0, 2, null);
+		System.out.println(sw.toString());
+	}
+
+	private static Parameters parseParameters(String[] args) throws ParseException {
+		Parameters params = new Parameters();
+
+		Options options = new Options();
+		options.addOption("h", "host", true, "Server hostname (default: localhost)");
+		options.addOption("p", "port", true, "Server port (default: 3000)");
+		options.addOption("U", "user", true, "User name");
+		options.addOption("P", "password", true, "Password");
+		options.addOption("n", "namespace", true, "Namespace (default: test)");
+		options.addOption("s", "set", true, "Set name (default: yelp)");
+		options.addOption("L", "locbin", true, "Location bin (default: loc)");
+		options.addOption("b", "bin", true, "Bin to write the counts to (default: density)");
+		options.addOption("r", "radius", true, "Radius in meters (default: 500.0)");
+		options.addOption("t", "threads", true,
+						  "Join threads (default: number of cores)");
+		options.addOption("w", "writes", true,
+						  "Maximum writes in flight (default: 256)");
+		options.addOption("x", "dry-run", false, "Compute and report the counts, don't write them");
+		options.addOption("u", "usage", false, "Print usage");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cl = parser.parse(options, args, false);
+
+		params.host = cl.getOptionValue("h", "localhost");
+		String portString = cl.getOptionValue("p", "3000");
+		params.port = Integer.parseInt(portString);
+		params.user = cl.getOptionValue("U");
+		params.password = cl.getOptionValue("P");
+		params.namespace = cl.getOptionValue("n","test");
+		params.set = cl.getOptionValue("s", "yelp");
+		params.locbin = cl.getOptionValue("L", "loc");
+		params.densitybin = cl.getOptionValue("b", "density");
+		params.radius = Double.parseDouble(cl.getOptionValue("r", "500"));
+		if (cl.hasOption("t")) {
+			params.threads = Integer.parseInt(cl.getOptionValue("t"));
+		}
+		params.writes = Integer.parseInt(cl.getOptionValue("w", "256"));
+		params.dryRun = cl.hasOption("x");
+
+		if (cl.hasOption("u")) {
+			usage(options);
+			System.exit(0);
+		}
+
+		if (cl.getArgs().length != 0) {
+			System.out.println("unrecognized command line arguments");
+			usage(options);
+			System.exit(1);
+		}
+
+		if (params.radius <= 0.0 || params.threads < 1) {
+			throw new ParseException("radius and threads must be positive");
+		}
+
+		return params;
+	}
+
+	private static void run(String[] args) throws Exception {
+		Parameters params = parseParameters(args);
+
+		AsyncClient client = setupAerospike(params);
+
+		try {
+			long t0 = System.nanoTime();
+			Points points = scanPoints(params, client);
+			long t1 = System.nanoTime();
+			System.out.printf("scanned %d points in %.3f seconds (%.0f points/sec)\n",
+							  points.count, (t1 - t0) / 1e9, points.count / ((t1 - t0) / 1e9));
+
+			PointGrid grid = new PointGrid(points.lats, points.lngs, points.count,
+										   params.radius);
+			long t2 = System.nanoTime();
+			System.out.printf("built a grid of %d cells in %.3f seconds, %.1f MB\n",
+							  grid.numCells(), (t2 - t1) / 1e9,
+							  grid.sizeInBytes() / 1048576.0);
+
+			int[] counts = new int[points.count];
+			ForkJoinPool pool = new ForkJoinPool(params.threads);
+			try {
+				pool.invoke(new JoinTask(grid, counts, 0, grid.size()));
+			}
+			finally {
+				pool.shutdown();
+			}
+			long t3 = System.nanoTime();
+			System.out.printf("counted neighbors within %.1f meters in %.3f seconds "
+							  + "(%.0f points/sec on %d threads)\n",
+							  params.radius, (t3 - t2) / 1e9,
+							  points.count / ((t3 - t2) / 1e9), params.threads);
+
+			if (points.count > 0) {
+				int[] sorted = Arrays.copyOf(counts, counts.length);
+				Arrays.sort(sorted);
+				long total = 0;
+				for (int count : sorted) {
+					total += count;
+				}
+				System.out.printf("neighbors: mean %.1f, median %d, p99 %d, max %d\n",
+								  (double) total / sorted.length,
+								  sorted[sorted.length / 2],
+								  sorted[(int) Math.min(sorted.length - 1, sorted.length * 0.99)],
+								  sorted[sorted.length - 1]);
+			}
+			System.out.printf("heap in use %.1f MB\n", usedHeapMB());
+
+			if (!params.dryRun) {
+				WriteTracker tracker = writeCounts(params, client, points, counts);
+				long t4 = System.nanoTime();
+				System.out.printf("wrote %d %s bins in %.3f seconds (%.0f writes/sec, %d failed)\n",
+								  tracker.written.get(), params.densitybin, (t4 - t3) / 1e9,
+								  tracker.written.get() / ((t4 - t3) / 1e9),
+								  tracker.failed.get());
+			}
+		}
+		finally {
+			cleanupAerospike(params, client);
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			run(args);
+		}
+		catch (Exception ex) {
+			System.out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-radius neighbor grid over points, in flat primitive arrays.
+ *
+ * Rows are radius tall; each row is cut into columns at least radius
+ * wide along its poleward edge, so everything within radius of a point
+ * lies in the cells of the three rows around it.  Cells are numbered
+ * in (row, column) order and the points are stored sorted by cell, so
+ * a cell's points are adjacent in memory.
+ *
+ * Distances are compared as haversines, which needs no arcsine.
+ */
+public class PointGrid {
+
+	private static final double EARTH_RADIUS = 6371008.8;
+
+	private final double radius;
+	private final double cellLat;		// row height in degrees
+	private final int nrows;
+	private final double maxHav;		// haversine of radius
+
+	// Sorted cell keys, row * 2^32 + column, and where each cell's
+	// points start; cellStart[cells.length] is the number of points.
+	private final long[] cells;
+	private final int[] cellStart;
+
+	// Points in cell order, with their original indexes.
+	private final double[] lats;
+	private final double[] lngs;
+	private final double[] coslats;
+	private final int[] ids;
+
+	public PointGrid(double[] lat, double[] lng, int npoints, double radius) {
+		this.radius = radius;
+		this.cellLat = Math.toDegrees(radius / EARTH_RADIUS);
+		this.nrows = (int) Math.ceil(180.0 / cellLat);
+		double half = Math.sin(radius / EARTH_RADIUS / 2);
+		this.maxHav = half * half;
+
+		long[] keys = new long[npoints];
+		for (int ii = 0; ii < npoints; ++ii) {
+			keys[ii] = cellKey(lat[ii], lng[ii]);
+		}
+
+		// The distinct keys are the cells.
+		long[] sorted = Arrays.copyOf(keys, npoints);
+		Arrays.sort(sorted);
+		int ncells = 0;
+		for (int ii = 0; ii < npoints; ++ii) {
+			if (ii == 0 || sorted[ii] != sorted[ii - 1]) {
+				sorted[ncells++] = sorted[ii];
+			}
+		}
+		cells = Arrays.copyOf(sorted, ncells);
+
+		// Counting sort of the points by cell.
+		int[] cellOf = new int[npoints];
+		cellStart = new int[ncells + 1];
+		for (int ii = 0; ii < npoints; ++ii) {
+			cellOf[ii] = Arrays.binarySearch(cells, keys[ii]);
+			cellStart[cellOf[ii] + 1]++;
+		}
+		for (int cc = 0; cc < ncells; ++cc) {
+			cellStart[cc + 1] += cellStart[cc];
+		}
+		int[] fill = Arrays.copyOf(cellStart, ncells);
+		lats = new double[npoints];
+		lngs = new double[npoints];
+		coslats = new double[npoints];
+		ids = new int[npoints];
+		for (int ii = 0; ii < npoints; ++ii) {
+			int pos = fill[cellOf[ii]]++;
+			lats[pos] = lat[ii];
+			lngs[pos] = lng[ii];
+			coslats[pos] = Math.cos(Math.toRadians(lat[ii]));
+			ids[pos] = ii;
+		}
+	}
+
+	public int size() {
+		return lats.length;
+	}
+
+	public int numCells() {
+		return cells.length;
+	}
+
+	// Bytes held by the grid's arrays.
+	public long sizeInBytes() {
+		return cells.length * 8L + cellStart.length * 4L
+			+ lats.length * (8L + 8L + 8L + 4L);
+	}
+
+	// The original index of the point at a position in cell order.
+	public int id(int pos) {
+		return ids[pos];
+	}
+
+	private int row(double lat) {
+		return Math.max(0, Math.min(nrows - 1, (int) Math.floor((lat + 90.0) / cellLat)));
+	}
+
+	// Columns in a row: as many as fit while each is at least radius
+	// wide at the row's poleward edge.  They split 360 degrees evenly,
+	// so column numbers wrap cleanly at the antimeridian.
+	private int columns(int row) {
+		double south = row * cellLat - 90.0;
+		double edge = Math.max(Math.abs(south), Math.abs(south + cellLat));
+		double cos = Math.cos(Math.toRadians(Math.min(90.0, edge)));
+		return Math.max(1, (int) Math.floor(360.0 * cos / cellLat));
+	}
+
+	private int column(int row, double lng) {
+		int ncols = columns(row);
+		return Math.min(ncols - 1, (int) Math.floor((lng + 180.0) * ncols / 360.0));
+	}
+
+	private long cellKey(double lat, double lng) {
+		int row = row(lat);
+		return ((long) row << 32) | column(row, lng);
+	}
+
+	/**
+	 * The number of other points within radius of the point at pos, in
+	 * cell order.
+	 */
+	public int countNeighbors(int pos) {
+		double lat = lats[pos];
+		double lng = lngs[pos];
+		double rlat = Math.toRadians(lat);
+		double coslat = coslats[pos];
+
+		// Half the circle's width in longitude, all of it near a pole.
+		double sinlng = Math.sin(radius / EARTH_RADIUS) / Math.max(1e-12, coslat);
+		double dlng = sinlng >= 1.0 ? 180.0 : Math.toDegrees(Math.asin(sinlng));
+
+		int count = 0;
+		int row = row(lat);
+		for (int rr = Math.max(0, row - 1); rr <= Math.min(nrows - 1, row + 1); ++rr) {
+			int ncols = columns(rr);
+			double width = 360.0 / ncols;
+			int first;
+			int last;
+			if (dlng >= 180.0 || 2 * dlng + width >= 360.0) {
+				first = 0;
+				last = ncols - 1;
+			}
+			else {
+				first = (int) Math.floor((lng - dlng + 180.0) / width);
+				last = (int) Math.floor((lng + dlng + 180.0) / width);
+			}
+			for (int col = first; col <= last; ++col) {
+				// Wrap around the antimeridian.
+				int cc = ((col % ncols) + ncols) % ncols;
+				int cell = Arrays.binarySearch(cells, ((long) rr << 32) | cc);
+				if (cell < 0) {
+					continue;
+				}
+				for (int pp = cellStart[cell]; pp < cellStart[cell + 1]; ++pp) {
+					if (pp == pos) {
+						continue;
+					}
+					double dlat = Math.toRadians(lats[pp]) - rlat;
+					double sdlat = Math.sin(dlat / 2);
+					double aa = sdlat * sdlat;
+					if (aa > maxHav) {
+						continue;
+					}
+					double sdlng = Math.sin(Math.toRadians(lngs[pp] - lng) / 2);
+					aa += coslat * coslats[pp] * sdlng * sdlng;
+					if (aa <= maxHav) {
+						++count;
+					}
+				}
+			}
+		}
+		return count;
+	}
+}
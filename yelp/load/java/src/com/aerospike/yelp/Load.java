@@ -57,6 +57,7 @@ public class Load {
 
 	private static Policy policy;
 	private static int count = 0;
+	private static PointIndexWriter pointIndex = null;
 	
 	static private class Parameters {
 		String host;
@@ -70,6 +71,7 @@ public class Load {
 		String valbin;
 		String mapbin;
 		String locndx;
+		String indexFile;
 
 		public Parameters() {
 			this.host = "localhost";
@@ -83,6 +85,7 @@ public class Load {
 			this.valbin = "val";
 			this.mapbin = "map";
 			this.locndx = null;
+			this.indexFile = null;
 		}
 	}
 
@@ -133,6 +136,10 @@ public class Load {
 			Bin valbin = new Bin(params.valbin, line);
 			Bin mapbin = new Bin(params.mapbin, mapval);
 			client.put(policy, key, locbin, valbin, mapbin);
+
+			if (pointIndex != null) {
+				pointIndex.add(latitude, longitude, busid);
+			}
 		
 			if (++count % 1000 == 0) {
 				System.err.write('.');
@@ -204,6 +211,8 @@ public class Load {
 		options.addOption("P", "password", true, "Password");
 		options.addOption("n", "namespace", true, "Namespace (default: test)");
 		options.addOption("s", "set", true, "Set name (default: yelp)");
+		options.addOption("i", "index-file", true,
+						  "Also write the points to this point index file, for Around --index-file");
 		options.addOption("u", "usage", false, "Print usage");
 
 		CommandLineParser parser = new PosixParser();
@@ -216,6 +225,7 @@ public class Load {
 		params.password = cl.getOptionValue("P");
 		params.namespace = cl.getOptionValue("n","test");
 		params.set = cl.getOptionValue("s", "yelp");
+		params.indexFile = cl.getOptionValue("i");
 
 		if (cl.hasOption("u")) {
 			usage(options);
@@ -247,6 +257,10 @@ public class Load {
 
 		createIndexes(params, client);
 
+		if (params.indexFile != null) {
+			pointIndex = new PointIndexWriter(false);
+		}
+
 		try {
 			long t0 = System.nanoTime();
 			int nthreads = 100;
@@ -262,6 +276,13 @@ public class Load {
 			System.err.write('\n');
 			System.out.printf("loaded %d points in %.3f seconds\n",
 							  count, (t1 - t0) / 1e9);
+
+			if (pointIndex != null) {
+				pointIndex.write(params.indexFile);
+				System.out.printf("wrote %d points to %s in %.3f seconds\n",
+								  pointIndex.size(), params.indexFile,
+								  (System.nanoTime() - t1) / 1e9);
+			}
 		}
 		finally {
 			br.close();
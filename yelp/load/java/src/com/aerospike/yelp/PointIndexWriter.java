@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Aerospike, Inc.
+ *
+ * Portions may be licensed to Aerospike, Inc. under one or more contributor
+ * license agreements WHICH ARE COMPATIBLE WITH THE APACHE LICENSE, VERSION 2.0.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.aerospike.yelp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Collects the points a loader writes and saves them as a packed point
+ * index file, which Around can memory-map with --index-file.
+ *
+ * The file is immutable and all big-endian:
+ *
+ *   header   64 bytes: "AEROPIX1", int version, int node size, long
+ *            count, int key type (0 string, 1 integer), long boxes
+ *            offset, long keys offset, zero padding
+ *   points   count x 16 bytes, in Hilbert order: int lat * 1e7,
+ *            int lng * 1e7, long key (the integer key, or the offset
+ *            of the string key in the key heap)
+ *   boxes    the levels of a packed R-tree, leaves first, each node
+ *            16 bytes: int south, west, north, east * 1e7; node j of a
+ *            level covers entries j * node size up to (j + 1) * node
+ *            size of the level below
+ *   keys     string keys as a short length and UTF-8 bytes
+ *
+ * The level sizes follow from count and node size, so they aren't
+ * stored.  Positions are kept to 1e-7 degrees, about a centimeter.
+ */
+public class PointIndexWriter {
+
+	public static final byte[] MAGIC = "AEROPIX1".getBytes(Charset.forName("US-ASCII"));
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int POINT_SIZE = 16;
+	public static final int BOX_SIZE = 16;
+	public static final int NODE_SIZE = 16;
+	public static final int STRING_KEYS = 0;
+	public static final int INTEGER_KEYS = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int HILBERT_ORDER = 16;
+
+	private final boolean integerKeys;
+	private int count = 0;
+	private int[] lats = new int[1024];
+	private int[] lngs = new int[1024];
+	private long[] keys = new long[1024];
+	private final ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+	public PointIndexWriter(boolean integerKeys) {
+		this.integerKeys = integerKeys;
+	}
+
+	public synchronized void add(double lat, double lng, long key) {
+		if (!integerKeys) {
+			throw new IllegalStateException("this index has string keys");
+		}
+		append(lat, lng, key);
+	}
+
+	public synchronized void add(double lat, double lng, String key) {
+		if (integerKeys) {
+			throw new IllegalStateException("this index has integer keys");
+		}
+		byte[] bytes = key.getBytes(UTF8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("key too long for the index: " + key);
+		}
+		long offset = heap.size();
+		heap.write(bytes.length >> 8);
+		heap.write(bytes.length);
+		heap.write(bytes, 0, bytes.length);
+		append(lat, lng, offset);
+	}
+
+	private void append(double lat, double lng, long key) {
+		if (count == lats.length) {
+			lats = Arrays.copyOf(lats, count * 2);
+			lngs = Arrays.copyOf(lngs, count * 2);
+			keys = Arrays.copyOf(keys, count * 2);
+		}
+		lats[count] = (int) Math.round(lat * 1e7);
+		lngs[count] = (int) Math.round(lng * 1e7);
+		keys[count] = key;
+		++count;
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	public synchronized void write(String path) throws IOException {
+		// Hilbert value (shifted to be signed) in the high half,
+		// position in the low half, so one primitive sort gives the order.
+		long[] order = new long[count];
+		for (int ii = 0; ii < count; ++ii) {
+			order[ii] = ((hilbert(lats[ii], lngs[ii]) - (1L << 31)) << 32) | ii;
+		}
+		Arrays.sort(order);
+
+		// Leaf boxes first, then each level up to the root.
+		int nlevels = 0;
+		int nboxes = 0;
+		for (int nn = count; nn > 1 || nlevels == 0; nn = (nn + NODE_SIZE - 1) / NODE_SIZE) {
+			nboxes += (nn + NODE_SIZE - 1) / NODE_SIZE;
+			++nlevels;
+		}
+		int[] boxes = new int[nboxes * 4];
+		for (int bb = 0; bb < boxes.length; bb += 4) {
+			boxes[bb] = Integer.MAX_VALUE;
+			boxes[bb + 1] = Integer.MAX_VALUE;
+			boxes[bb + 2] = Integer.MIN_VALUE;
+			boxes[bb + 3] = Integer.MIN_VALUE;
+		}
+		for (int ii = 0; ii < count; ++ii) {
+			int pp = (int) order[ii];
+			extend(boxes, ii / NODE_SIZE, lats[pp], lngs[pp], lats[pp], lngs[pp]);
+		}
+		int below = 0;
+		int belowSize = (count + NODE_SIZE - 1) / NODE_SIZE;
+		int start = belowSize;
+		while (belowSize > 1) {
+			for (int ii = 0; ii < belowSize; ++ii) {
+				int bb = (below + ii) * 4;
+				extend(boxes, start + ii / NODE_SIZE,
+					   boxes[bb], boxes[bb + 1], boxes[bb + 2], boxes[bb + 3]);
+			}
+			below = start;
+			belowSize = (belowSize + NODE_SIZE - 1) / NODE_SIZE;
+			start += belowSize;
+		}
+
+		long boxesOffset = HEADER_SIZE + (long) count * POINT_SIZE;
+		long keysOffset = boxesOffset + (long) nboxes * BOX_SIZE;
+
+		DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+		try {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(NODE_SIZE);
+			out.writeLong(count);
+			out.writeInt(integerKeys ? INTEGER_KEYS : STRING_KEYS);
+			out.writeLong(boxesOffset);
+			out.writeLong(keysOffset);
+			out.write(new byte[HEADER_SIZE - out.size()]);
+
+			for (int ii = 0; ii < count; ++ii) {
+				int pp = (int) order[ii];
+				out.writeInt(lats[pp]);
+				out.writeInt(lngs[pp]);
+				out.writeLong(keys[pp]);
+			}
+			for (int ii = 0; ii < boxes.length; ++ii) {
+				out.writeInt(boxes[ii]);
+			}
+			heap.writeTo(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void extend(int[] boxes, int box, int south, int west,
+							   int north, int east) {
+		int bb = box * 4;
+		boxes[bb] = Math.min(boxes[bb], south);
+		boxes[bb + 1] = Math.min(boxes[bb + 1], west);
+		boxes[bb + 2] = Math.max(boxes[bb + 2], north);
+		boxes[bb + 3] = Math.max(boxes[bb + 3], east);
+	}
+
+	// Position along a Hilbert curve over a 2^16 x 2^16 lat/lng grid.
+	static long hilbert(int lat7, int lng7) {
+		int side = 1 << HILBERT_ORDER;
+		int xx = (int) ((lng7 + 1800000000L) * (side - 1) / 3600000000L);
+		int yy = (int) ((lat7 + 900000000L) * (side - 1) / 1800000000L);
+		long dd = 0;
+		for (int ss = side / 2; ss > 0; ss /= 2) {
+			int rx = (xx & ss) > 0 ? 1 : 0;
+			int ry = (yy & ss) > 0 ? 1 : 0;
+			dd += (long) ss * ss * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					xx = side - 1 - xx;
+					yy = side - 1 - yy;
+				}
+				int tt = xx;
+				xx = yy;
+				yy = tt;
+			}
+		}
+		return dd;
+	}
+}